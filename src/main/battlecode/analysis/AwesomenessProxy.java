@@ -0,0 +1,286 @@
+package battlecode.analysis;
+
+import battlecode.engine.signal.Signal;
+import battlecode.serial.MatchFooter;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundKeyframe;
+import battlecode.serial.RoundStats;
+import battlecode.server.proxy.Proxy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * Adds an {@link AwesomenessSignal} to every round on its way to another
+ * proxy, so that live viewers get the same camera hints as an analyzed match
+ * file while the match is still running.
+ * <p/>
+ * Each round is scored as it arrives, and then smoothed the way the
+ * {@link AwesomenessAnalyzer} smooths it, except that only a fixed number of
+ * later rounds can be taken into account. Rounds are therefore held back by
+ * that many rounds before they are passed on. Everything else written to the
+ * proxy is held back with them, so the order of the data does not change.
+ * The analyzer's final jitter reduction needs the whole match, so it is left
+ * out, and relative awesomeness is measured against the average so far
+ * rather than the average of the whole match.
+ * <p/>
+ * The rounds passed on are copies, since the same rounds also go to the
+ * other proxies.
+ */
+public class AwesomenessProxy extends Proxy {
+
+    private static final int CHANNELS = 4;
+
+    private static final float DECAY = .95f;
+
+    private static final float NORM = (1.f - DECAY) / 2.f;
+
+    /**
+     * One pass of the analyzer's exponential smoothing, in which each round
+     * gets the sum of the rounds before and after it, with weights that decay
+     * by {@link #DECAY} per round. Only a fixed number of later rounds are
+     * used, so a round can be passed on as soon as they are known.
+     */
+    private static class Smoother {
+
+        private final int lookahead;
+
+        /**
+         * The rounds that have been pushed but not popped, indexed by round
+         * modulo the window size.
+         */
+        private final float[][] window;
+
+        private final float[] forward = new float[CHANNELS];
+
+        private int pushed;
+
+        private int popped;
+
+        Smoother(int lookahead) {
+            this.lookahead = lookahead;
+            window = new float[CHANNELS][lookahead + 1];
+        }
+
+        void reset() {
+            pushed = popped = 0;
+            for (int c = 0; c < CHANNELS; c++)
+                forward[c] = 0;
+        }
+
+        void push(float[] values) {
+            int slot = pushed++ % window[0].length;
+            for (int c = 0; c < CHANNELS; c++)
+                window[c][slot] = values[c];
+        }
+
+        /**
+         * @param end whether the match is over, so that no more rounds will
+         *            be pushed
+         */
+        boolean ready(boolean end) {
+            return pushed - popped > (end ? 0 : lookahead);
+        }
+
+        void pop(float[] out) {
+            int size = window[0].length;
+            int later = Math.min(lookahead, pushed - popped - 1);
+            for (int c = 0; c < CHANNELS; c++) {
+                float[] w = window[c];
+                forward[c] = forward[c] * DECAY + w[popped % size] * NORM;
+                float backward = 0;
+                for (int k = later; k >= 0; k--)
+                    backward = backward * DECAY + w[(popped + k) % size] * NORM;
+                out[c] = forward[c] + backward;
+            }
+            popped++;
+        }
+    }
+
+    private final Proxy next;
+
+    // Two passes, as in the analyzer.
+    private final Smoother first;
+
+    private final Smoother second;
+
+    private final float[] values = new float[CHANNELS];
+
+    /**
+     * Rounds and anything written after them, waiting to be passed on.
+     */
+    private final Queue<Object> pending = new LinkedList<Object>();
+
+    private AwesomenessScorer scorer;
+
+    private int scored;
+
+    private float xOffset;
+
+    private float yOffset;
+
+    private double awesomenessSum;
+
+    private int released;
+
+    /**
+     * @param next the proxy to pass the match data on to
+     * @param lag  how many rounds to hold each round back; the more rounds,
+     *             the closer the scores are to those of the analyzer
+     */
+    public AwesomenessProxy(Proxy next, int lag) {
+        this.next = next;
+        lag = Math.max(lag, 0);
+        first = new Smoother(lag / 2);
+        second = new Smoother(lag - lag / 2);
+    }
+
+    protected OutputStream getOutputStream() throws IOException {
+        return null;
+    }
+
+    public void open() throws IOException {
+        next.open();
+    }
+
+    public void close() throws IOException {
+        finishMatch();
+        next.close();
+    }
+
+    public void writeHeader(MatchHeader header) throws IOException {
+        finishMatch();
+        scorer = new AwesomenessScorer(header);
+        scored = 0;
+        awesomenessSum = 0;
+        released = 0;
+        first.reset();
+        second.reset();
+        next.writeHeader(header);
+    }
+
+    public void writeRound(RoundDelta round) throws IOException {
+        if (scorer == null) {
+            next.writeRound(round);
+            return;
+        }
+
+        AwesomenessSignal s = scorer.score(round);
+        if (scored < AwesomenessScorer.WAKE_DELAY)
+            scorer.wake(s, scored);
+        if (scored++ == 0) {
+            xOffset = s.centerX;
+            yOffset = s.centerY;
+        }
+
+        // convert from awesomeness stats to sums, as the analyzer does
+        float dx = s.centerX - xOffset;
+        float dy = s.centerY - yOffset;
+        float stdev = s.radius / AwesomenessScorer.RADIUS_IN_STDEVS;
+        values[0] = s.totalAwesomeness;
+        values[1] = dx * s.totalAwesomeness;
+        values[2] = dy * s.totalAwesomeness;
+        values[3] = s.totalAwesomeness * (stdev * stdev + dx * dx + dy * dy);
+        first.push(values);
+
+        pending.add(round);
+        drain(false);
+    }
+
+    public void writeStats(RoundStats stats) throws IOException {
+        if (pending.isEmpty())
+            next.writeStats(stats);
+        else
+            pending.add(stats);
+    }
+
+    public void writeKeyframe(RoundKeyframe keyframe) throws IOException {
+        if (pending.isEmpty())
+            next.writeKeyframe(keyframe);
+        else
+            pending.add(keyframe);
+    }
+
+    public void writeObject(Object o) throws IOException {
+        if (pending.isEmpty())
+            next.writeObject(o);
+        else
+            pending.add(o);
+    }
+
+    public void writeFooter(MatchFooter footer) throws IOException {
+        finishMatch();
+        next.writeFooter(footer);
+    }
+
+    public boolean isLive() {
+        return next.isLive();
+    }
+
+    public boolean needsKeyframes() {
+        return next.needsKeyframes();
+    }
+
+    /**
+     * Passes on every round that has enough later rounds to be smoothed, or
+     * all of them at the end of the match.
+     */
+    private void drain(boolean end) throws IOException {
+        while (first.ready(end)) {
+            first.pop(values);
+            second.push(values);
+        }
+        while (second.ready(end)) {
+            second.pop(values);
+            release();
+        }
+    }
+
+    private void finishMatch() throws IOException {
+        if (scorer == null)
+            return;
+        drain(true);
+        scorer = null;
+    }
+
+    /**
+     * Passes on the oldest round with the smoothed awesomeness in values,
+     * along with whatever was written after it.
+     */
+    private void release() throws IOException {
+        float total = values[0];
+        AwesomenessSignal s;
+        if (total > 0) {
+            s = new AwesomenessSignal(total, values[1] / total + xOffset, values[2] / total + yOffset,
+                    AwesomenessScorer.RADIUS_IN_STDEVS * (float) Math.sqrt(
+                            Math.max(values[3] - (values[1] * values[1] + values[2] * values[2]) / total, 0) / total));
+        } else
+            s = new AwesomenessSignal(0, scorer.centerX, scorer.centerY, scorer.radius);
+        awesomenessSum += total;
+        released++;
+        if (awesomenessSum > 0)
+            s.renormalize((float) (awesomenessSum / released));
+
+        RoundDelta round = (RoundDelta) pending.remove();
+        Signal[] signals = round.getSignals();
+        Signal[] annotated = new Signal[signals.length + 1];
+        annotated[0] = s;
+        System.arraycopy(signals, 0, annotated, 1, signals.length);
+        RoundDelta copy = new RoundDelta();
+        copy.setSignals(annotated);
+        next.writeRound(copy);
+
+        while (!pending.isEmpty() && !(pending.peek() instanceof RoundDelta)) {
+            Object o = pending.remove();
+            if (o instanceof RoundStats)
+                next.writeStats((RoundStats) o);
+            else if (o instanceof RoundKeyframe)
+                next.writeKeyframe((RoundKeyframe) o);
+            else
+                next.writeObject(o);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package battlecode.analysis;
+
+import battlecode.common.MapLocation;
+import battlecode.common.RobotType;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+import battlecode.world.GameMap;
+import battlecode.world.signal.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Works out the raw awesomeness of each round of a match, and where the
+ * camera should look, from the events of that round alone. Both the
+ * {@link AwesomenessAnalyzer} and the live {@link AwesomenessProxy} smooth
+ * these scores afterwards.
+ * <p/>
+ * Rounds must be scored in order, since the scorer keeps track of where the
+ * robots are and which of them are active.
+ */
+class AwesomenessScorer {
+    static final float TOWER_AWESOMENESS = 500;
+    static final float ARCHON_DEATH_AWESOMENESS = 250;
+    static final float ARCHON_AWESOMENESS = 100;
+    static final float DEATH_AWESOMENESS = 50;
+    static final float ATTACK_AWESOMENESS = 10;
+    static final float SPAWN_AWESOMENESS = 5;
+    static final float EQUIP_AWESOMENESS = 1;
+    static final float EVOLVE_AWESOMENESS = 5;
+    static final float ACTIVE_AWESOMENESS = 1;
+
+    static final float ARCHON_AWESOMENESS_MULTIPLIER = 2.f;
+    static final float WOUT_AWESOMENESS_MULTIPLIER = .3f;
+
+    static final float RADIUS_IN_STDEVS = 1.4f;
+
+    /**
+     * How many rounds the camera takes to move in from the whole map.
+     */
+    static final int WAKE_DELAY = 400;
+
+    private static class RobotStat {
+        public static final int COUNTDOWN = 20;
+
+        public MapLocation location;
+        public int idleCountdown;
+        public float robotAwesomeness;
+        public RobotType type;
+
+        public RobotStat(MapLocation location, RobotType type) {
+            this.location = location;
+            idleCountdown = COUNTDOWN;
+            transform(type);
+        }
+
+        // TODO this needs to be recoded
+        // TODO CORY FIX IT
+        public void transform(RobotType type) {
+            this.type = type;
+//            if (type.equals(RobotType.ARCHON))
+//                robotAwesomeness = ARCHON_AWESOMENESS_MULTIPLIER;
+//                //else if(type.equals(RobotType.WOUT))
+//                //	robotAwesomeness=WOUT_AWESOMENESS_MULTIPLIER;
+//            else
+                robotAwesomeness = 1.f;
+        }
+
+        public void resetCountDown() {
+            idleCountdown = COUNTDOWN;
+        }
+    }
+
+    // The view of the whole map, used when nothing is happening.
+    final float centerX;
+    final float centerY;
+    final float radius;
+
+    // Maps robotID to location
+    private final HashMap<Integer, RobotStat> robots = new HashMap<Integer, RobotStat>();
+
+    // The events of the current round. They are kept in arrays rather than
+    // objects, since a busy round can have hundreds of them.
+    private float[] eventAwesomeness = new float[64];
+    private float[] eventX = new float[64];
+    private float[] eventY = new float[64];
+    private int events;
+
+    AwesomenessScorer(MatchHeader header) {
+        final GameMap map = (GameMap) header.getMap();
+        final float halfWidth = ((float) map.getWidth()) / 2.0f;
+        final float halfHeight = ((float) map.getHeight()) / 2.0f;
+        final MapLocation origin = map.getMapOrigin();
+
+        centerX = origin.x + halfWidth;
+        centerY = origin.y + halfHeight;
+        radius = (float) Math.sqrt(halfWidth * halfWidth + halfHeight * halfHeight);
+    }
+
+    private void addEvent(float awesomeness, MapLocation location) {
+        if (events == eventAwesomeness.length) {
+            eventAwesomeness = Arrays.copyOf(eventAwesomeness, events * 2);
+            eventX = Arrays.copyOf(eventX, events * 2);
+            eventY = Arrays.copyOf(eventY, events * 2);
+        }
+        eventAwesomeness[events] = awesomeness;
+        eventX[events] = location.x + 0.5f; // Center of square
+        eventY[events] = location.y + 0.5f; // Center of square
+        events++;
+    }
+
+    /**
+     * Blends the camera of one of the first {@link #WAKE_DELAY} rounds with
+     * the view of the whole map, so that the camera starts out there.
+     */
+    void wake(AwesomenessSignal s, int round) {
+        s.centerX = (round * s.centerX + (WAKE_DELAY - round) * centerX) / WAKE_DELAY;
+        s.centerY = (round * s.centerY + (WAKE_DELAY - round) * centerY) / WAKE_DELAY;
+        s.radius = (round * s.radius + (WAKE_DELAY - round) * radius) / WAKE_DELAY;
+    }
+
+    /**
+     * Scores the next round of the match. Signals about robots that were
+     * never spawned are ignored.
+     */
+    AwesomenessSignal score(RoundDelta round) {
+        final Signal[] signals = BatchSignal.expandAll(round.getSignals());
+        events = 0;
+
+        RobotStat r;
+        // Add awesomeness for events
+        for (int i = 0; i < signals.length; i++) {
+            Signal signal = signals[i];
+            if (signal instanceof SpawnSignal) {
+                SpawnSignal s = (SpawnSignal) signal;
+                final int parent = s.getParentID();
+                if (parent != 0 && (r = robots.get(parent)) != null) {
+                    r.resetCountDown();
+                }
+
+                MapLocation loc = s.getLoc();
+                if (loc != null) {
+                    r = new RobotStat(loc, s.getType());
+                    robots.put(s.getRobotID(), r);
+                    addEvent(SPAWN_AWESOMENESS * r.robotAwesomeness, loc);
+                }
+            } else if (signal instanceof MovementSignal) {
+                MovementSignal s = (MovementSignal) signal;
+                r = robots.get(s.getRobotID());
+                if (r == null)
+                    continue;
+                r.resetCountDown();
+
+                r.location = s.getNewLoc();
+            } else if (signal instanceof AttackSignal) {
+                AttackSignal s = (AttackSignal) signal;
+                r = robots.get(s.getRobotID());
+                if (r == null)
+                    continue;
+                r.resetCountDown();
+                MapLocation loc = s.getTargetLoc();
+                if (loc != null) {
+                    addEvent(ATTACK_AWESOMENESS * r.robotAwesomeness, s.getTargetLoc());
+                }
+            } else if (signal instanceof DeathSignal) {
+                DeathSignal s = (DeathSignal) signal;
+                r = robots.remove(s.getObjectID());
+                if (r == null)
+                    continue;
+                float awesomeness = DEATH_AWESOMENESS * r.robotAwesomeness;
+                if (r.location != null) {
+                    addEvent(awesomeness, r.location);
+                }
+            }
+        }
+
+        // Add awesomeness for active robots
+        for (RobotStat robot : robots.values()) {
+            if (robot.idleCountdown-- > 0) {
+                addEvent(ACTIVE_AWESOMENESS, robot.location);
+            }
+        }
+
+        // Calculate stats
+        float sum = 0;
+        float centerX = 0;
+        float centerY = 0;
+        float radius = 0;
+        if (events <= 0) {
+            centerX = this.centerX;
+            centerY = this.centerY;
+            radius = this.radius;
+        } else {
+            // Calculate sum, center
+            for (int i = 0; i < events; i++) {
+                sum += eventAwesomeness[i];
+                centerX += eventX[i];
+                centerY += eventY[i];
+            }
+            centerX /= events;
+            centerY /= events;
+
+            // Calculate std dev
+            for (int i = 0; i < events; i++) {
+                float diffX = eventX[i] - centerX;
+                float diffY = eventY[i] - centerY;
+                radius += eventAwesomeness[i] * (diffX * diffX + diffY * diffY);
+            }
+            radius = (float) Math.sqrt(radius / sum);
+        }
+
+        // Convert std dev to actual radius
+        radius *= RADIUS_IN_STDEVS;
+
+        // Enforce min radius
+        if (radius < 4) {
+            radius = 4;
+            //System.err.println("Warning: Std dev too small: " + radius);
+        }
+
+        // Enforce max radius
+        if (radius > this.radius) {
+            radius = this.radius;
+        }
+
+        return new AwesomenessSignal(sum, centerX, centerY, radius);
+    }
+}
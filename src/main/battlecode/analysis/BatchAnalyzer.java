@@ -0,0 +1,208 @@
+package battlecode.analysis;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the awesomeness analysis over many match files at once, e.g. every
+ * match of a tournament.
+ * <p/>
+ * Each file is read by its own task. Once a file has been read, each of its
+ * games is smoothed by a separate task, so that a file holding a long series
+ * does not keep the rest of the pool waiting, and whichever of those tasks
+ * finishes last writes the file's output. No task ever waits for another, so
+ * any parallelism level is safe.
+ * <p/>
+ * Outputs are written the same way as match files, to a temporary file that
+ * is renamed into place once it is complete.
+ */
+public class BatchAnalyzer {
+
+    private final int parallelism;
+
+    private final AtomicInteger gamesAnalyzed = new AtomicInteger();
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private CountDownLatch remaining;
+
+    private ExecutorService pool;
+
+    /**
+     * @param parallelism the number of files or games to work on at once
+     */
+    public BatchAnalyzer(int parallelism) {
+        this.parallelism = Math.max(parallelism, 1);
+    }
+
+    /**
+     * @return the match files in a directory, in name order
+     */
+    public static List<File> listDirectory(File dir) {
+        return list(dir, Pattern.compile(".*\\.rms"));
+    }
+
+    /**
+     * Lists the files matching a pattern in which <code>*</code> and
+     * <code>?</code> stand for any characters in the last part of the path,
+     * e.g. <code>matches/*.rms</code>.
+     *
+     * @return the matching files, in name order
+     */
+    public static List<File> listGlob(String glob) {
+        File file = new File(glob);
+        File dir = file.getParentFile() != null ? file.getParentFile() : new File(".");
+        StringBuilder regex = new StringBuilder();
+        for (String part : file.getName().split("((?<=[*?])|(?=[*?]))")) {
+            if (part.equals("*"))
+                regex.append(".*");
+            else if (part.equals("?"))
+                regex.append('.');
+            else if (part.length() > 0)
+                regex.append(Pattern.quote(part));
+        }
+        return list(dir, Pattern.compile(regex.toString()));
+    }
+
+    private static List<File> list(File dir, final Pattern pattern) {
+        File[] children = dir.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return pattern.matcher(name).matches();
+            }
+        });
+        List<File> files = new ArrayList<File>();
+        if (children == null) {
+            System.err.println("Error: couldn't list directory " + dir);
+            return files;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isFile())
+                files.add(child);
+        }
+        return files;
+    }
+
+    /**
+     * Analyzes the given match files, writing <code>.analyzed</code> next to
+     * each one, and prints how fast it went.
+     *
+     * @return true if every file was analyzed
+     */
+    public boolean analyze(List<File> files) {
+        if (files.isEmpty()) {
+            System.err.println("Error: no match files to analyze");
+            return false;
+        }
+
+        long bytes = 0;
+        for (File file : files)
+            bytes += file.length();
+
+        long start = System.nanoTime();
+        remaining = new CountDownLatch(files.size());
+        pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            for (File file : files)
+                pool.execute(new ReadTask(file));
+            remaining.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            pool.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format(
+                "analyzed %d files (%d games, %.1f MB) in %.2f s with parallelism %d: %.2f MB/s, %.2f matches/s",
+                files.size() - failures.get(), gamesAnalyzed.get(), bytes / 1e6, seconds, parallelism,
+                bytes / 1e6 / seconds, gamesAnalyzed.get() / seconds));
+        if (failures.get() > 0)
+            System.err.println("Error: " + failures.get() + " files could not be analyzed");
+        return failures.get() == 0;
+    }
+
+    private void failed(File file, Throwable t) {
+        System.err.println("Error: couldn't analyze " + file);
+        t.printStackTrace();
+        failures.incrementAndGet();
+        remaining.countDown();
+    }
+
+    /**
+     * Reads a file and hands its games to {@link SmoothTask}s.
+     */
+    private class ReadTask implements Runnable {
+
+        private final File file;
+
+        ReadTask(File file) {
+            this.file = file;
+        }
+
+        public void run() {
+            try {
+                AwesomenessAnalyzer analyzer = new AwesomenessAnalyzer(file.getPath());
+                analyzer.analyze();
+                int games = analyzer.getGameCount();
+                AtomicInteger unsmoothed = new AtomicInteger(games);
+                for (int i = 0; i < games; i++)
+                    pool.execute(new SmoothTask(file, analyzer, i, unsmoothed));
+            } catch (Throwable e) {
+                failed(file, e);
+            }
+        }
+    }
+
+    /**
+     * Smooths one game of a file, and writes the file if it was the last
+     * game left.
+     */
+    private class SmoothTask implements Runnable {
+
+        private final File file;
+
+        private final AwesomenessAnalyzer analyzer;
+
+        private final int game;
+
+        private final AtomicInteger unsmoothed;
+
+        SmoothTask(File file, AwesomenessAnalyzer analyzer, int game, AtomicInteger unsmoothed) {
+            this.file = file;
+            this.analyzer = analyzer;
+            this.game = game;
+            this.unsmoothed = unsmoothed;
+        }
+
+        public void run() {
+            try {
+                analyzer.smoothStats(game);
+            } catch (Throwable e) {
+                // Make sure no other game of this file writes it, and that
+                // the file is only counted once.
+                if (unsmoothed.getAndSet(-1) > 0)
+                    failed(file, e);
+                return;
+            }
+            if (unsmoothed.decrementAndGet() != 0)
+                return;
+            try {
+                analyzer.dumpFile();
+                gamesAnalyzed.addAndGet(analyzer.getGameCount());
+                remaining.countDown();
+            } catch (Throwable e) {
+                failed(file, e);
+            }
+        }
+    }
+}
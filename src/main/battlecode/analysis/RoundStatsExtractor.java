@@ -0,0 +1,238 @@
+package battlecode.analysis;
+
+import battlecode.common.MapLocation;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.ExtensibleMetadata;
+import battlecode.serial.MatchFooter;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+import battlecode.server.proxy.MatchInputFactory;
+import battlecode.world.signal.*;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works out the per-round aggregates of {@link StatsIndex} for every match in
+ * a match file, reading the file once and keeping only the aggregates.
+ * <p/>
+ * Unit counts are kept up to date from spawn and death signals, mine counts
+ * from mine signals, and resources from the flux signal that ends each
+ * round. Deaths and bytecodes are per round rather than running totals.
+ */
+class RoundStatsExtractor {
+
+    private static final RobotType[] TYPES = RobotType.values();
+
+    private static final Team[] TEAMS = {Team.A, Team.B};
+
+    /**
+     * The aggregates of one complete match.
+     */
+    static class MatchStats {
+
+        int matchNumber;
+
+        String map = "unknown";
+
+        String teamA = "unknown";
+
+        String teamB = "unknown";
+
+        Team winner;
+
+        int rounds;
+
+        /**
+         * The values of every column, in the order of
+         * {@link StatsIndex#COLUMNS}; floats are stored as their bits.
+         */
+        int[][] values = new int[StatsIndex.COLUMNS.size()][256];
+    }
+
+    // Column numbers.
+    private static final int UNITS = StatsIndex.column("units.A." + TYPES[0]);
+    private static final int DEATHS = StatsIndex.column("deaths.A." + TYPES[0]);
+    private static final int ENCAMPMENTS = StatsIndex.column("encampments.A");
+    private static final int MINES = StatsIndex.column("mines.A");
+    private static final int RESOURCES = StatsIndex.column("resources.A");
+    private static final int POINTS = StatsIndex.column("points.A");
+    private static final int BYTECODES = StatsIndex.column("bytecodes.A");
+
+    private MatchStats match;
+
+    /**
+     * The team and type of every robot alive, as team * TYPES.length + type.
+     */
+    private final Map<Integer, Integer> robots = new HashMap<Integer, Integer>();
+
+    private final Map<MapLocation, Team> mines = new HashMap<MapLocation, Team>();
+
+    // The running values of the current round.
+    private final int[] row = new int[StatsIndex.COLUMNS.size()];
+
+    /**
+     * Reads a match file.
+     *
+     * @return the aggregates of every match in the file that was played to
+     *         the end
+     * @throws IOException if the file can't be read
+     */
+    public List<MatchStats> extract(File file) throws IOException {
+        List<MatchStats> matches = new ArrayList<MatchStats>();
+        ObjectInputStream input;
+        try {
+            input = MatchInputFactory.createInput(file);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("couldn't open match file " + file, e);
+        }
+        try {
+            Object o;
+            while ((o = input.readObject()) != null) {
+                if (o instanceof MatchHeader)
+                    startMatch((MatchHeader) o);
+                else if (match == null)
+                    continue;
+                else if (o instanceof ExtensibleMetadata)
+                    visitMetadata((ExtensibleMetadata) o);
+                else if (o instanceof RoundDelta)
+                    visitRound((RoundDelta) o);
+                else if (o instanceof RoundStats)
+                    visitStats((RoundStats) o);
+                else if (o instanceof MatchFooter) {
+                    match.winner = ((MatchFooter) o).getWinner();
+                    matches.add(match);
+                    match = null;
+                }
+            }
+        } catch (EOFException e) {
+            // Done parsing
+        } catch (ClassNotFoundException e) {
+            throw new IOException("unknown class in " + file, e);
+        } finally {
+            try {
+                input.close();
+            } catch (IOException e) {
+            }
+        }
+        return matches;
+    }
+
+    private void startMatch(MatchHeader header) {
+        match = new MatchStats();
+        match.matchNumber = header.getMatchNumber();
+        robots.clear();
+        mines.clear();
+        Arrays.fill(row, 0);
+    }
+
+    private void visitMetadata(ExtensibleMetadata metadata) {
+        if (!"header".equals(metadata.get("type", null)))
+            return;
+        match.teamA = String.valueOf(metadata.get("team-a", match.teamA));
+        match.teamB = String.valueOf(metadata.get("team-b", match.teamB));
+        Object maps = metadata.get("maps", null);
+        if (maps instanceof String[] && match.matchNumber < ((String[]) maps).length)
+            match.map = ((String[]) maps)[match.matchNumber];
+    }
+
+    private void visitRound(RoundDelta round) {
+        for (int t = 0; t < TEAMS.length; t++) {
+            for (int k = 0; k < TYPES.length; k++)
+                row[DEATHS + t * TYPES.length + k] = 0;
+            row[BYTECODES + t] = 0;
+        }
+
+        for (Signal signal : BatchSignal.expandAll(round.getSignals())) {
+            if (signal instanceof SpawnSignal) {
+                SpawnSignal s = (SpawnSignal) signal;
+                int t = teamIndex(s.getTeam());
+                if (s.getRobotID() == 0 || t < 0)
+                    continue;
+                int robot = t * TYPES.length + s.getType().ordinal();
+                robots.put(s.getRobotID(), robot);
+                row[UNITS + robot]++;
+                if (s.getType().isEncampment)
+                    row[ENCAMPMENTS + t]++;
+            } else if (signal instanceof DeathSignal) {
+                Integer robot = robots.remove(((DeathSignal) signal).getObjectID());
+                if (robot == null)
+                    continue;
+                row[UNITS + robot]--;
+                row[DEATHS + robot]++;
+                if (TYPES[robot % TYPES.length].isEncampment)
+                    row[ENCAMPMENTS + robot / TYPES.length]--;
+            } else if (signal instanceof MineSignal) {
+                visitMine((MineSignal) signal);
+            } else if (signal instanceof FluxChangeSignal) {
+                double[] flux = ((FluxChangeSignal) signal).getFlux();
+                for (int t = 0; t < TEAMS.length && t < flux.length; t++)
+                    row[RESOURCES + t] = Float.floatToIntBits((float) flux[t]);
+            } else if (signal instanceof BytecodesUsedSignal) {
+                BytecodesUsedSignal s = (BytecodesUsedSignal) signal;
+                int[] ids = s.getRobotIDs();
+                int[] used = s.getNumBytecodes();
+                for (int i = 0; i < ids.length; i++) {
+                    Integer robot = robots.get(ids[i]);
+                    if (robot != null)
+                        row[BYTECODES + robot / TYPES.length] += used[i];
+                }
+            }
+        }
+
+        int n = match.rounds++;
+        if (n == match.values[0].length) {
+            for (int c = 0; c < row.length; c++)
+                match.values[c] = Arrays.copyOf(match.values[c], n * 2);
+        }
+        for (int c = 0; c < row.length; c++)
+            match.values[c][n] = row[c];
+    }
+
+    /**
+     * Follows the engine: a mine is only laid on an empty square, and is
+     * removed by a robot of any other team. Removal signals carry the team of
+     * the robot that removed the mine, not of the mine.
+     */
+    private void visitMine(MineSignal s) {
+        MapLocation loc = s.getMineLoc();
+        Team owner = mines.get(loc);
+        if (s.shouldAdd()) {
+            if (owner == null) {
+                mines.put(loc, s.getMineTeam());
+                row[MINES + s.getMineTeam().ordinal()]++;
+            }
+        } else if (owner != null && owner != s.getMineTeam()) {
+            mines.remove(loc);
+            row[MINES + owner.ordinal()]--;
+        }
+    }
+
+    /**
+     * Round stats follow the round they belong to.
+     */
+    private void visitStats(RoundStats stats) {
+        if (match.rounds == 0)
+            return;
+        for (int t = 0; t < TEAMS.length; t++) {
+            row[POINTS + t] = Float.floatToIntBits((float) stats.getPoints(TEAMS[t]));
+            match.values[POINTS + t][match.rounds - 1] = row[POINTS + t];
+        }
+    }
+
+    private static int teamIndex(Team team) {
+        return team == Team.A ? 0 : team == Team.B ? 1 : -1;
+    }
+}
@@ -0,0 +1,431 @@
+package battlecode.analysis;
+
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * A columnar store of per-round statistics for a whole archive of matches,
+ * so that questions about many matches can be answered without replaying
+ * them.
+ * <p/>
+ * Every round of every indexed match is a row. Each column is kept in its
+ * own file of 4-byte big-endian values, one per row, so a query only reads
+ * the columns it uses. The catalog lists the matches and the rows that
+ * belong to each of them, together with the map, the teams and the winner.
+ * <p/>
+ * New matches are appended to the end of every column before they are added
+ * to the catalog, so the catalog always describes complete rows; anything
+ * past its last row, left by an interrupted append, is cut off when the index
+ * is next opened. Only one process should add to an index at a time.
+ *
+ * @see StatsQuery
+ */
+public class StatsIndex {
+
+    /**
+     * The columns, in the order they are stored in the index.
+     */
+    public static final List<String> COLUMNS;
+
+    private static final Set<String> FLOAT_COLUMNS = new HashSet<String>();
+
+    static {
+        List<String> columns = new ArrayList<String>();
+        for (String kind : new String[]{"units", "deaths"}) {
+            for (Team team : new Team[]{Team.A, Team.B}) {
+                for (RobotType type : RobotType.values())
+                    columns.add(kind + "." + team + "." + type);
+            }
+        }
+        columns.add("encampments.A");
+        columns.add("encampments.B");
+        for (Team team : Team.values())
+            columns.add("mines." + team);
+        for (String kind : new String[]{"resources", "points"}) {
+            columns.add(kind + ".A");
+            columns.add(kind + ".B");
+            FLOAT_COLUMNS.add(kind + ".A");
+            FLOAT_COLUMNS.add(kind + ".B");
+        }
+        columns.add("bytecodes.A");
+        columns.add("bytecodes.B");
+        COLUMNS = Collections.unmodifiableList(columns);
+    }
+
+    private static final String SCHEMA_FILE = "columns.txt";
+
+    private static final String CATALOG_FILE = "catalog.tsv";
+
+    /**
+     * @return the position of the column in {@link #COLUMNS}
+     */
+    static int column(String name) {
+        int i = COLUMNS.indexOf(name);
+        if (i < 0)
+            throw new IllegalArgumentException("no such column: " + name);
+        return i;
+    }
+
+    /**
+     * @return true if the values of the column are floats rather than ints
+     */
+    public static boolean isFloat(String column) {
+        return FLOAT_COLUMNS.contains(column);
+    }
+
+    /**
+     * A match in the catalog.
+     */
+    public static class Entry {
+
+        final String file;
+        final long size;
+        final long modified;
+        final int matchNumber;
+        final String map;
+        final String teamA;
+        final String teamB;
+        final String winner;
+        final long firstRow;
+        final int rounds;
+
+        Entry(String file, long size, long modified, int matchNumber, String map,
+              String teamA, String teamB, String winner, long firstRow, int rounds) {
+            this.file = file;
+            this.size = size;
+            this.modified = modified;
+            this.matchNumber = matchNumber;
+            this.map = map;
+            this.teamA = teamA;
+            this.teamB = teamB;
+            this.winner = winner;
+            this.firstRow = firstRow;
+            this.rounds = rounds;
+        }
+
+        static Entry parse(String line) throws IOException {
+            String[] f = line.split("\t");
+            if (f.length != 10)
+                throw new IOException("bad catalog line: " + line);
+            try {
+                return new Entry(f[0], Long.parseLong(f[1]), Long.parseLong(f[2]), Integer.parseInt(f[3]),
+                        f[4], f[5], f[6], f[7], Long.parseLong(f[8]), Integer.parseInt(f[9]));
+            } catch (NumberFormatException e) {
+                throw new IOException("bad catalog line: " + line);
+            }
+        }
+
+        String toLine() {
+            return clean(file) + "\t" + size + "\t" + modified + "\t" + matchNumber + "\t" + clean(map)
+                    + "\t" + clean(teamA) + "\t" + clean(teamB) + "\t" + clean(winner)
+                    + "\t" + firstRow + "\t" + rounds;
+        }
+
+        private static String clean(String s) {
+            return s.replaceAll("[\t\r\n]", " ");
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public int getMatchNumber() {
+            return matchNumber;
+        }
+
+        public String getMap() {
+            return map;
+        }
+
+        public String getTeamA() {
+            return teamA;
+        }
+
+        public String getTeamB() {
+            return teamB;
+        }
+
+        /**
+         * @return the name of the winning team
+         */
+        public String getWinner() {
+            return winner;
+        }
+
+        public long getFirstRow() {
+            return firstRow;
+        }
+
+        public int getRounds() {
+            return rounds;
+        }
+
+        public String toString() {
+            return file + "#" + matchNumber + " " + teamA + " vs. " + teamB + " on " + map
+                    + " (" + rounds + " rounds, " + winner + " won)";
+        }
+    }
+
+    private final File dir;
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    /**
+     * The first entry of every indexed file, by path.
+     */
+    private final Map<String, Entry> files = new HashMap<String, Entry>();
+
+    private long rows;
+
+    /**
+     * Opens an index, creating it if the directory doesn't have one yet.
+     *
+     * @throws IOException if the index can't be read, or was built with
+     *                     different columns
+     */
+    public StatsIndex(File dir) throws IOException {
+        this.dir = dir;
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("couldn't create index directory " + dir);
+
+        File schema = new File(dir, SCHEMA_FILE);
+        if (schema.exists()) {
+            List<String> columns = readLines(schema);
+            if (!columns.equals(COLUMNS))
+                throw new IOException("the index in " + dir + " has different columns; it needs to be rebuilt");
+        } else {
+            Writer out = new OutputStreamWriter(new FileOutputStream(schema), "UTF-8");
+            try {
+                for (String column : COLUMNS)
+                    out.write(column + "\n");
+            } finally {
+                out.close();
+            }
+        }
+
+        File catalog = new File(dir, CATALOG_FILE);
+        if (catalog.exists()) {
+            dropPartialLine(catalog);
+            for (String line : readLines(catalog)) {
+                Entry entry = Entry.parse(line);
+                entries.add(entry);
+                if (!files.containsKey(entry.file))
+                    files.put(entry.file, entry);
+                rows = entry.firstRow + entry.rounds;
+            }
+        }
+
+        // Drop the rows of an append that never made it into the catalog.
+        for (String column : COLUMNS) {
+            File file = columnFile(column);
+            if (file.length() > rows * 4) {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.setLength(rows * 4);
+                } finally {
+                    raf.close();
+                }
+            } else if (file.length() < rows * 4)
+                throw new IOException("column " + column + " is shorter than the catalog; the index needs to be rebuilt");
+        }
+    }
+
+    /**
+     * Cuts off the end of a file that was interrupted in the middle of
+     * writing a line.
+     */
+    private static void dropPartialLine(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long length = raf.length();
+            while (length > 0) {
+                raf.seek(length - 1);
+                if (raf.read() == '\n')
+                    break;
+                length--;
+            }
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.length() > 0)
+                    lines.add(line);
+            }
+        } finally {
+            in.close();
+        }
+        return lines;
+    }
+
+    private File columnFile(String column) {
+        return new File(dir, column + ".col");
+    }
+
+    /**
+     * @return the matches in the index, in the order they were added
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Adds the matches in a match file to the index. A file that has already
+     * been indexed is skipped.
+     *
+     * @return the number of matches added
+     * @throws IOException if the match file can't be read or the index can't
+     *                     be written
+     */
+    public int add(File matchFile) throws IOException {
+        String path = matchFile.getCanonicalPath();
+        Entry old = files.get(path);
+        if (old != null) {
+            if (old.size != matchFile.length() || old.modified != matchFile.lastModified())
+                System.err.println("Warning: " + path + " has changed since it was indexed; rebuild the index to pick up the changes");
+            return 0;
+        }
+
+        List<RoundStatsExtractor.MatchStats> matches = new RoundStatsExtractor().extract(matchFile);
+        if (matches.isEmpty())
+            return 0;
+
+        List<Entry> added = new ArrayList<Entry>();
+        long row = rows;
+        for (RoundStatsExtractor.MatchStats m : matches) {
+            added.add(new Entry(path, matchFile.length(), matchFile.lastModified(), m.matchNumber, m.map,
+                    m.teamA, m.teamB, m.winner == Team.A ? m.teamA : m.winner == Team.B ? m.teamB : "none",
+                    row, m.rounds));
+            row += m.rounds;
+        }
+
+        for (int c = 0; c < COLUMNS.size(); c++) {
+            ByteBuffer buf = ByteBuffer.allocate((int) (row - rows) * 4);
+            IntBuffer values = buf.asIntBuffer();
+            for (RoundStatsExtractor.MatchStats m : matches)
+                values.put(m.values[c], 0, m.rounds);
+            appendColumn(COLUMNS.get(c), buf);
+        }
+
+        FileOutputStream out = new FileOutputStream(new File(dir, CATALOG_FILE), true);
+        try {
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+            for (Entry entry : added)
+                writer.write(entry.toLine() + "\n");
+            writer.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        entries.addAll(added);
+        files.put(path, added.get(0));
+        rows = row;
+        return added.size();
+    }
+
+    private void appendColumn(String column, ByteBuffer data) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(columnFile(column), "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            long pos = rows * 4;
+            while (data.hasRemaining())
+                pos += channel.write(data, pos);
+            channel.force(false);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Maps a column into memory.
+     *
+     * @return the values of the column, one per row; use
+     *         {@link Float#intBitsToFloat(int)} on float columns
+     */
+    public IntBuffer readColumn(String column) throws IOException {
+        column(column);
+        if (rows == 0)
+            return IntBuffer.allocate(0);
+        RandomAccessFile raf = new RandomAccessFile(columnFile(column), "r");
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, rows * 4).asIntBuffer();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: StatsIndex add <index-dir> <match files or directories>...");
+        System.err.println("       StatsIndex query <index-dir> [options]");
+        System.err.println("       StatsIndex columns");
+        new org.apache.commons.cli.HelpFormatter().printHelp("StatsIndex query <index-dir>", StatsQuery.options());
+        System.exit(-1);
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 1 && args[0].equals("columns")) {
+            for (String column : COLUMNS)
+                System.out.println(column + (isFloat(column) ? " (float)" : ""));
+            return;
+        }
+        if (args.length < 2)
+            usage();
+
+        try {
+            StatsIndex index = new StatsIndex(new File(args[1]));
+            String[] rest = Arrays.copyOfRange(args, 2, args.length);
+            if (args[0].equals("add")) {
+                List<File> files = new ArrayList<File>();
+                for (String arg : rest) {
+                    File file = new File(arg);
+                    if (file.isDirectory())
+                        files.addAll(BatchAnalyzer.listDirectory(file));
+                    else
+                        files.add(file);
+                }
+                long start = System.nanoTime();
+                int added = 0;
+                for (File file : files) {
+                    try {
+                        added += index.add(file);
+                    } catch (IOException e) {
+                        System.err.println("Error: couldn't index " + file + ": " + e.getMessage());
+                    }
+                }
+                System.out.println(String.format("indexed %d matches from %d files in %.2f s; %d matches, %d rounds in total",
+                        added, files.size(), (System.nanoTime() - start) / 1e9, index.getEntries().size(), index.getRowCount()));
+            } else if (args[0].equals("query")) {
+                StatsQuery query;
+                try {
+                    query = StatsQuery.parse(rest);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Error: " + e.getMessage());
+                    usage();
+                    return;
+                }
+                query.run(index, System.out);
+            } else
+                usage();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(-2);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package battlecode.analysis;
+
+import org.apache.commons.cli.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A query over a {@link StatsIndex}. It picks out the rounds that meet all
+ * of its conditions, and prints aggregates of those rounds for each match,
+ * each map, or the whole index.
+ * <p/>
+ * Wherever a column is expected, a prefix of a column name such as
+ * <code>units.A</code> stands for the sum of all the columns it starts, and
+ * <code>*</code> matches any one part of a name, so <code>deaths.*.HQ</code>
+ * is the number of HQs that died in a round. <code>round</code> is the
+ * number of the round within its match. For example,
+ * <pre>
+ * StatsIndex query index -where 'deaths.*.HQ>0,round<500'
+ * StatsIndex query index -map castles -group map -select 'avg(mines)'
+ * </pre>
+ * Only the columns the query refers to are read, and only the rows of the
+ * matches that pass the map and team filters.
+ */
+public class StatsQuery {
+
+    private static final Pattern CONDITION =
+            Pattern.compile("\\s*([\\w.*]+)\\s*(<=|>=|==|!=|=|<|>)\\s*(-?[\\d.]+)\\s*");
+
+    private static final Pattern AGGREGATE =
+            Pattern.compile("\\s*(count|sum|avg|min|max)\\s*(?:\\(\\s*([\\w.*]*)\\s*\\))?\\s*");
+
+    private static final String ROUND = "round";
+
+    private enum Group {
+        MATCH, MAP, ALL
+    }
+
+    /**
+     * A sum of columns, or the round number.
+     */
+    private static class Ref {
+
+        final String text;
+
+        final List<String> columns = new ArrayList<String>();
+
+        IntBuffer[] data;
+
+        boolean[] floats;
+
+        Ref(String text) {
+            this.text = text;
+            if (text.equals(ROUND))
+                return;
+            String[] parts = text.split("\\.");
+            for (String column : StatsIndex.COLUMNS) {
+                String[] names = column.split("\\.");
+                if (parts.length > names.length)
+                    continue;
+                boolean matches = true;
+                for (int i = 0; i < parts.length && matches; i++)
+                    matches = parts[i].equals("*") || parts[i].equals(names[i]);
+                if (matches)
+                    columns.add(column);
+            }
+            if (columns.isEmpty())
+                throw new IllegalArgumentException("no column matches " + text);
+        }
+
+        void load(Map<String, IntBuffer> loaded, StatsIndex index) throws IOException {
+            data = new IntBuffer[columns.size()];
+            floats = new boolean[columns.size()];
+            for (int i = 0; i < data.length; i++) {
+                String column = columns.get(i);
+                if (!loaded.containsKey(column))
+                    loaded.put(column, index.readColumn(column));
+                data[i] = loaded.get(column);
+                floats[i] = StatsIndex.isFloat(column);
+            }
+        }
+
+        double value(int row, int round) {
+            if (data.length == 0)
+                return round;
+            double sum = 0;
+            for (int i = 0; i < data.length; i++) {
+                int v = data[i].get(row);
+                sum += floats[i] ? Float.intBitsToFloat(v) : v;
+            }
+            return sum;
+        }
+    }
+
+    private static class Condition {
+
+        final Ref ref;
+
+        final String op;
+
+        final double value;
+
+        Condition(Ref ref, String op, double value) {
+            this.ref = ref;
+            this.op = op;
+            this.value = value;
+        }
+
+        boolean test(int row, int round) {
+            double v = ref.value(row, round);
+            if (op.equals("<"))
+                return v < value;
+            else if (op.equals("<="))
+                return v <= value;
+            else if (op.equals(">"))
+                return v > value;
+            else if (op.equals(">="))
+                return v >= value;
+            else if (op.equals("!="))
+                return v != value;
+            else
+                return v == value;
+        }
+    }
+
+    private static class Aggregate {
+
+        final String function;
+
+        final Ref ref;
+
+        Aggregate(String function, Ref ref) {
+            this.function = function;
+            this.ref = ref;
+        }
+
+        public String toString() {
+            return function + "(" + (ref == null ? "" : ref.text) + ")";
+        }
+    }
+
+    /**
+     * The running aggregates of one group.
+     */
+    private static class Totals {
+
+        long count;
+
+        final double[] sum;
+
+        final double[] min;
+
+        final double[] max;
+
+        Totals(int n) {
+            sum = new double[n];
+            min = new double[n];
+            max = new double[n];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+    }
+
+    private final List<Condition> conditions = new ArrayList<Condition>();
+
+    private final List<Aggregate> aggregates = new ArrayList<Aggregate>();
+
+    private final Set<String> maps = new HashSet<String>();
+
+    private final Set<String> teams = new HashSet<String>();
+
+    private Group group = Group.MATCH;
+
+    static Options options() {
+        Options options = new Options();
+        options.addOption("where", true, "conditions every counted round must meet, e.g. 'deaths.*.HQ>0,round<500'");
+        options.addOption("select", true, "aggregates of the counted rounds to print: count, sum, avg, min or max of a column, e.g. 'avg(mines),max(units.A)'; the default is count");
+        options.addOption("map", true, "only look at matches on these maps");
+        options.addOption("team", true, "only look at matches these teams played in");
+        options.addOption("group", true, "print a line for every match (the default), every map, or all matches together");
+        return options;
+    }
+
+    /**
+     * Parses the query options given on the command line.
+     *
+     * @throws IllegalArgumentException if the query is malformed
+     */
+    public static StatsQuery parse(String[] args) {
+        CommandLine cmd;
+        try {
+            cmd = new GnuParser().parse(options(), args);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+
+        StatsQuery query = new StatsQuery();
+        if (cmd.hasOption("where")) {
+            for (String text : cmd.getOptionValue("where").split(",|&&|\\band\\b")) {
+                Matcher m = CONDITION.matcher(text);
+                if (!m.matches())
+                    throw new IllegalArgumentException("bad condition: " + text);
+                query.conditions.add(new Condition(new Ref(m.group(1)), m.group(2), Double.parseDouble(m.group(3))));
+            }
+        }
+        for (String text : cmd.getOptionValue("select", "count").split(",")) {
+            Matcher m = AGGREGATE.matcher(text);
+            if (!m.matches())
+                throw new IllegalArgumentException("bad aggregate: " + text);
+            String column = m.group(2);
+            if (column == null || column.length() == 0) {
+                if (!m.group(1).equals("count"))
+                    throw new IllegalArgumentException(m.group(1) + " needs a column");
+                query.aggregates.add(new Aggregate("count", null));
+            } else
+                query.aggregates.add(new Aggregate(m.group(1), new Ref(column)));
+        }
+        if (cmd.hasOption("map"))
+            query.maps.addAll(Arrays.asList(cmd.getOptionValue("map").split(",")));
+        if (cmd.hasOption("team"))
+            query.teams.addAll(Arrays.asList(cmd.getOptionValue("team").split(",")));
+        if (cmd.hasOption("group")) {
+            try {
+                query.group = Group.valueOf(cmd.getOptionValue("group").toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("can't group by " + cmd.getOptionValue("group"));
+            }
+        }
+        return query;
+    }
+
+    private boolean selected(StatsIndex.Entry entry) {
+        if (!maps.isEmpty() && !maps.contains(entry.getMap()))
+            return false;
+        return teams.isEmpty() || teams.contains(entry.getTeamA()) || teams.contains(entry.getTeamB());
+    }
+
+    /**
+     * Runs the query and prints a tab-separated line for every group that
+     * has rounds meeting the conditions.
+     */
+    public void run(StatsIndex index, PrintStream out) throws IOException {
+        long start = System.nanoTime();
+
+        Map<String, IntBuffer> loaded = new HashMap<String, IntBuffer>();
+        for (Condition c : conditions)
+            c.ref.load(loaded, index);
+        for (Aggregate a : aggregates) {
+            if (a.ref != null)
+                a.ref.load(loaded, index);
+        }
+
+        Map<String, Totals> groups = new LinkedHashMap<String, Totals>();
+        long scanned = 0;
+        for (StatsIndex.Entry entry : index.getEntries()) {
+            if (!selected(entry))
+                continue;
+            String key;
+            if (group == Group.MATCH)
+                key = entry.getFile() + "#" + entry.getMatchNumber() + "\t" + entry.getMap() + "\t"
+                        + entry.getTeamA() + "\t" + entry.getTeamB() + "\t" + entry.getWinner();
+            else if (group == Group.MAP)
+                key = entry.getMap();
+            else
+                key = "all";
+            Totals totals = groups.get(key);
+            if (totals == null) {
+                totals = new Totals(aggregates.size());
+                groups.put(key, totals);
+            }
+
+            int first = (int) entry.getFirstRow();
+            scanned += entry.getRounds();
+            rows:
+            for (int round = 0; round < entry.getRounds(); round++) {
+                int row = first + round;
+                for (Condition c : conditions) {
+                    if (!c.test(row, round))
+                        continue rows;
+                }
+                totals.count++;
+                for (int i = 0; i < aggregates.size(); i++) {
+                    Ref ref = aggregates.get(i).ref;
+                    if (ref == null)
+                        continue;
+                    double v = ref.value(row, round);
+                    totals.sum[i] += v;
+                    totals.min[i] = Math.min(totals.min[i], v);
+                    totals.max[i] = Math.max(totals.max[i], v);
+                }
+            }
+        }
+
+        StringBuilder header = new StringBuilder();
+        header.append(group == Group.MATCH ? "match\tmap\tteam-a\tteam-b\twinner" : group == Group.MAP ? "map" : "group");
+        for (Aggregate a : aggregates)
+            header.append('\t').append(a);
+        out.println(header);
+        int printed = 0;
+        for (Map.Entry<String, Totals> e : groups.entrySet()) {
+            Totals totals = e.getValue();
+            if (totals.count == 0 && group != Group.ALL)
+                continue;
+            StringBuilder line = new StringBuilder(e.getKey());
+            for (int i = 0; i < aggregates.size(); i++) {
+                String function = aggregates.get(i).function;
+                double value;
+                if (function.equals("count"))
+                    value = totals.count;
+                else if (totals.count == 0)
+                    value = Double.NaN;
+                else if (function.equals("sum"))
+                    value = totals.sum[i];
+                else if (function.equals("avg"))
+                    value = totals.sum[i] / totals.count;
+                else if (function.equals("min"))
+                    value = totals.min[i];
+                else
+                    value = totals.max[i];
+                line.append('\t').append(value == Math.rint(value) ? String.valueOf((long) value) : String.format("%.4f", value));
+            }
+            out.println(line);
+            printed++;
+        }
+        System.err.println(String.format("%d of %d groups matched; scanned %d rounds of %d columns in %.1f ms",
+                printed, groups.size(), scanned, loaded.size(), (System.nanoTime() - start) / 1e6));
+    }
+}
@@ -4,6 +4,7 @@ import battlecode.common.Team;
 import battlecode.engine.signal.Signal;
 import battlecode.serial.GameStats;
 import battlecode.serial.GenericGameMap;
+import battlecode.serial.RoundKeyframe;
 import battlecode.serial.RoundStats;
 
 public interface GameWorldViewer {
@@ -26,4 +27,6 @@ public interface GameWorldViewer {
 
     public GameStats getGameStats();
 
+    public RoundKeyframe getKeyframe();
+
 }
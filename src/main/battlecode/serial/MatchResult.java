@@ -0,0 +1,76 @@
+package battlecode.serial;
+
+import battlecode.common.Team;
+
+import java.io.Serializable;
+
+/**
+ * A summary of a finished match, for programs that run many matches and only
+ * need to know who won and why.
+ */
+public class MatchResult implements Serializable {
+
+    private static final long serialVersionUID = -3349711522385806627L;
+
+    private final String teamA;
+    private final String teamB;
+    private final String map;
+    private final Team winner;
+    private final int rounds;
+    private final GameStats stats;
+
+    public MatchResult(String teamA, String teamB, String map, Team winner,
+                       int rounds, GameStats stats) {
+        this.teamA = teamA;
+        this.teamB = teamB;
+        this.map = map;
+        this.winner = winner;
+        this.rounds = rounds;
+        this.stats = stats;
+    }
+
+    public String getTeamA() {
+        return teamA;
+    }
+
+    public String getTeamB() {
+        return teamB;
+    }
+
+    public String getMap() {
+        return map;
+    }
+
+    /**
+     * @return the winning team, or null if the match had no winner
+     */
+    public Team getWinner() {
+        return winner;
+    }
+
+    /**
+     * @return the name of the winning team, or null if the match had no
+     *         winner
+     */
+    public String getWinnerName() {
+        if (winner == Team.A)
+            return teamA;
+        else if (winner == Team.B)
+            return teamB;
+        else
+            return null;
+    }
+
+    public int getRounds() {
+        return rounds;
+    }
+
+    public GameStats getStats() {
+        return stats;
+    }
+
+    public String toString() {
+        return String.format("%s vs. %s on %s: %s won in %d rounds", teamA,
+                teamB, map, winner, rounds);
+    }
+}
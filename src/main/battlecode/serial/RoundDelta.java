@@ -53,7 +53,7 @@ public class RoundDelta implements Serializable {
         }
 
         public int hashCode() {
-            return robot << index;
+            return 31 * robot + index;
         }
     }
 
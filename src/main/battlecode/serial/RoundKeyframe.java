@@ -0,0 +1,205 @@
+package battlecode.serial;
+
+import battlecode.common.Direction;
+import battlecode.common.MapLocation;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+import battlecode.engine.signal.Signal;
+import battlecode.world.signal.*;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A full snapshot of the match state at the end of a round. Keyframes let a
+ * reader jump to any round by loading the nearest keyframe and replaying
+ * only the deltas that follow it, instead of replaying the whole match.
+ * <p/>
+ * Everything is stored in parallel primitive arrays, in the same style as
+ * {@link battlecode.world.signal.EnergonChangeSignal}; enums are stored by
+ * ordinal, with -1 for null.
+ */
+public class RoundKeyframe implements Serializable {
+
+    private static final long serialVersionUID = -3310270361735870922L;
+
+    private final int round;
+
+    private final int[] robotIDs;
+    private final int[] robotTypes;
+    private final int[] robotTeams;
+    private final int[] robotX;
+    private final int[] robotY;
+    private final int[] directions;
+    private final double[] energon;
+    private final double[] shield;
+    private final long[] controlBits;
+    private final String[][] indicatorStrings;
+
+    private final int[] mineX;
+    private final int[] mineY;
+    private final int[] mineTeams;
+
+    private final int[] encampmentX;
+    private final int[] encampmentY;
+    private final int[] encampmentTeams;
+
+    private final double[] resources;
+    private final double[][] research;
+
+    /**
+     * @param indicatorStrings each robot's indicator strings, with null for
+     *                         strings that have never been set
+     */
+    public RoundKeyframe(int round, int[] robotIDs, int[] robotTypes, int[] robotTeams,
+                         int[] robotX, int[] robotY, int[] directions, double[] energon, double[] shield,
+                         long[] controlBits, String[][] indicatorStrings,
+                         int[] mineX, int[] mineY, int[] mineTeams,
+                         int[] encampmentX, int[] encampmentY, int[] encampmentTeams,
+                         double[] resources, double[][] research) {
+        this.round = round;
+        this.robotIDs = robotIDs;
+        this.robotTypes = robotTypes;
+        this.robotTeams = robotTeams;
+        this.robotX = robotX;
+        this.robotY = robotY;
+        this.directions = directions;
+        this.energon = energon;
+        this.shield = shield;
+        this.controlBits = controlBits;
+        this.indicatorStrings = indicatorStrings;
+        this.mineX = mineX;
+        this.mineY = mineY;
+        this.mineTeams = mineTeams;
+        this.encampmentX = encampmentX;
+        this.encampmentY = encampmentY;
+        this.encampmentTeams = encampmentTeams;
+        this.resources = resources;
+        this.research = research;
+    }
+
+    /**
+     * @return the round at the end of which this snapshot was taken, where
+     *         the first round is 0
+     */
+    public int getRound() {
+        return round;
+    }
+
+    public int getRobotCount() {
+        return robotIDs.length;
+    }
+
+    public int getRobotID(int i) {
+        return robotIDs[i];
+    }
+
+    public RobotType getRobotType(int i) {
+        return RobotType.values()[robotTypes[i]];
+    }
+
+    public Team getRobotTeam(int i) {
+        return Team.values()[robotTeams[i]];
+    }
+
+    public MapLocation getRobotLocation(int i) {
+        return new MapLocation(robotX[i], robotY[i]);
+    }
+
+    /**
+     * @return the direction the robot faces, or null if it has never turned
+     */
+    public Direction getDirection(int i) {
+        return directions[i] < 0 ? null : Direction.values()[directions[i]];
+    }
+
+    public double getEnergon(int i) {
+        return energon[i];
+    }
+
+    public double getShield(int i) {
+        return shield[i];
+    }
+
+    public long getControlBits(int i) {
+        return controlBits[i];
+    }
+
+    /**
+     * @return the robot's indicator strings, with null for strings that have
+     *         never been set
+     */
+    public String[] getIndicatorStrings(int i) {
+        return indicatorStrings[i];
+    }
+
+    public int getMineCount() {
+        return mineX.length;
+    }
+
+    public MapLocation getMineLocation(int i) {
+        return new MapLocation(mineX[i], mineY[i]);
+    }
+
+    public Team getMineTeam(int i) {
+        return Team.values()[mineTeams[i]];
+    }
+
+    public int getEncampmentCount() {
+        return encampmentX.length;
+    }
+
+    public MapLocation getEncampmentLocation(int i) {
+        return new MapLocation(encampmentX[i], encampmentY[i]);
+    }
+
+    public Team getEncampmentTeam(int i) {
+        return Team.values()[encampmentTeams[i]];
+    }
+
+    /**
+     * @return the power stockpile of each team, indexed by team ordinal
+     */
+    public double[] getResources() {
+        return resources;
+    }
+
+    /**
+     * @return the research progress of each team, indexed by team ordinal
+     *         and then upgrade ordinal, as a fraction of the rounds needed
+     */
+    public double[][] getResearch() {
+        return research;
+    }
+
+    /**
+     * Describes this snapshot as a single round of signals, for readers that
+     * only understand deltas: a spawn for every robot (captured encampments
+     * are robots too) along with its direction, control bits and indicator
+     * strings, their energon and shields, a mine for every mine, and the
+     * teams' power and research. Applied to an empty map, it gives the state
+     * that this keyframe holds.
+     */
+    public RoundDelta toRoundDelta() {
+        List<Signal> signals = new ArrayList<Signal>();
+        for (int i = 0; i < robotIDs.length; i++) {
+            signals.add(new SpawnSignal(robotIDs[i], 0, getRobotLocation(i), getRobotType(i), getRobotTeam(i)));
+            if (directions[i] >= 0)
+                signals.add(new SetDirectionSignal(robotIDs[i], getDirection(i)));
+            if (controlBits[i] != 0)
+                signals.add(new ControlBitsSignal(robotIDs[i], controlBits[i]));
+            for (int j = 0; j < indicatorStrings[i].length; j++) {
+                if (indicatorStrings[i][j] != null)
+                    signals.add(new IndicatorStringSignal(robotIDs[i], j, indicatorStrings[i][j]));
+            }
+        }
+        for (int i = 0; i < mineX.length; i++)
+            signals.add(new MineSignal(getMineLocation(i), getMineTeam(i), MineSignal.ADD));
+        signals.add(new EnergonChangeSignal(robotIDs, energon));
+        signals.add(new ShieldChangeSignal(robotIDs, shield));
+        signals.add(new FluxChangeSignal(resources));
+        signals.add(new ResearchChangeSignal(research));
+        return new RoundDelta(signals.toArray(new Signal[signals.size()]));
+    }
+}
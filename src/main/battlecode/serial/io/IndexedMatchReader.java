@@ -0,0 +1,198 @@
+package battlecode.serial.io;
+
+import battlecode.serial.ExtensibleMetadata;
+import battlecode.serial.GameStats;
+import battlecode.serial.MatchFooter;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundKeyframe;
+import battlecode.serial.RoundStats;
+
+import java.io.*;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Random access to a match file written by {@link IndexedMatchWriter}.
+ * <p/>
+ * Rounds are numbered from 0 within each match. Seeking to a round costs one
+ * keyframe plus at most one keyframe interval worth of deltas:
+ * <pre>
+ * IndexedMatchReader reader = new IndexedMatchReader(new File("match.rmi"));
+ * IndexedMatchReader.Seek seek = reader.seek(0, 2500);
+ * // apply seek.getDeltas() on top of seek.getKeyframe()
+ * reader.close();
+ * </pre>
+ */
+public class IndexedMatchReader {
+
+    private final RandomAccessFile file;
+
+    private final MatchFileIndex index;
+
+    /**
+     * The result of seeking to a round: the closest preceding keyframe (or
+     * none, if the round comes before the first keyframe) and the deltas
+     * between that keyframe and the requested round, inclusive.
+     */
+    public static class Seek {
+
+        private final RoundKeyframe keyframe;
+        private final RoundDelta[] deltas;
+        private final int firstRound;
+
+        Seek(RoundKeyframe keyframe, RoundDelta[] deltas, int firstRound) {
+            this.keyframe = keyframe;
+            this.deltas = deltas;
+            this.firstRound = firstRound;
+        }
+
+        /**
+         * @return the keyframe to start from, or null to start from the
+         *         beginning of the match
+         */
+        public RoundKeyframe getKeyframe() {
+            return keyframe;
+        }
+
+        public RoundDelta[] getDeltas() {
+            return deltas;
+        }
+
+        /**
+         * @return the round number of the first delta
+         */
+        public int getFirstRound() {
+            return firstRound;
+        }
+    }
+
+    /**
+     * Opens an indexed match file and reads its index.
+     *
+     * @param f the file to open
+     * @throws IOException if the file could not be read or is not an indexed
+     *                     match file
+     */
+    public IndexedMatchReader(File f) throws IOException {
+        file = new RandomAccessFile(f, "r");
+        if (file.length() < 8 + IndexedMatchWriter.TRAILER_LENGTH
+                || file.readInt() != IndexedMatchWriter.MAGIC)
+            throw new IOException("not an indexed match file: " + f);
+        int version = file.readInt();
+        if (version != IndexedMatchWriter.VERSION)
+            throw new IOException("unsupported indexed match file version " + version);
+
+        file.seek(file.length() - IndexedMatchWriter.TRAILER_LENGTH);
+        long indexOffset = file.readLong();
+        if (file.readInt() != IndexedMatchWriter.MAGIC)
+            throw new IOException("indexed match file is truncated: " + f);
+        index = (MatchFileIndex) readRecord(indexOffset);
+    }
+
+    /**
+     * Determines whether a file is in the indexed match file format.
+     *
+     * @param f the file to check
+     * @return true if the file starts with the indexed match file magic number
+     */
+    public static boolean isIndexed(File f) {
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(f));
+            try {
+                return in.readInt() == IndexedMatchWriter.MAGIC;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public MatchFileIndex getIndex() {
+        return index;
+    }
+
+    public int getMatchCount() {
+        return index.getMatchCount();
+    }
+
+    public int getRoundCount(int match) {
+        return index.getMatch(match).getRoundCount();
+    }
+
+    public MatchHeader getHeader(int match) throws IOException {
+        return (MatchHeader) readRecord(index.getMatch(match).headerOffset);
+    }
+
+    public ExtensibleMetadata getMetadata(int match) throws IOException {
+        return (ExtensibleMetadata) readRecord(index.getMatch(match).metadataOffset);
+    }
+
+    public RoundDelta getRound(int match, int round) throws IOException {
+        return (RoundDelta) readRecord(index.getMatch(match).roundOffsets[round]);
+    }
+
+    public RoundStats getStats(int match, int round) throws IOException {
+        return (RoundStats) readRecord(index.getMatch(match).statsOffsets[round]);
+    }
+
+    public RoundKeyframe getKeyframe(int match, int keyframe) throws IOException {
+        return (RoundKeyframe) readRecord(index.getMatch(match).keyframeOffsets[keyframe]);
+    }
+
+    public GameStats getGameStats(int match) throws IOException {
+        return (GameStats) readRecord(index.getMatch(match).gameStatsOffset);
+    }
+
+    public MatchFooter getFooter(int match) throws IOException {
+        return (MatchFooter) readRecord(index.getMatch(match).footerOffset);
+    }
+
+    /**
+     * Finds the data needed to reconstruct the state at the end of a round.
+     *
+     * @param match the match to seek in
+     * @param round the round to seek to
+     * @return the keyframe and deltas to apply
+     * @throws IOException if the file could not be read
+     */
+    public Seek seek(int match, int round) throws IOException {
+        MatchFileIndex.Entry entry = index.getMatch(match);
+        if (round < 0 || round >= entry.getRoundCount())
+            throw new IndexOutOfBoundsException("round " + round + " is not in match " + match);
+        int k = entry.findKeyframe(round);
+        RoundKeyframe keyframe = null;
+        int first = 0;
+        if (k >= 0) {
+            keyframe = getKeyframe(match, k);
+            first = entry.getKeyframeRound(k) + 1;
+        }
+        RoundDelta[] deltas = new RoundDelta[round - first + 1];
+        for (int i = 0; i < deltas.length; i++)
+            deltas[i] = getRound(match, first + i);
+        return new Seek(keyframe, deltas, first);
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private Object readRecord(long offset) throws IOException {
+        if (offset < 0)
+            return null;
+        byte[] payload;
+        synchronized (file) {
+            file.seek(offset);
+            file.readByte();
+            payload = new byte[file.readInt()];
+            file.readFully(payload);
+        }
+        ObjectInputStream input = new ObjectInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(payload)));
+        try {
+            return input.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("couldn't decode match record: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package battlecode.serial.io;
+
+import battlecode.serial.ExtensibleMetadata;
+import battlecode.serial.GameStats;
+import battlecode.serial.MatchFooter;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundKeyframe;
+import battlecode.serial.RoundStats;
+
+import java.io.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes match data in the indexed match file format.
+ * <p/>
+ * An indexed match file starts with a magic number and a version, followed
+ * by a sequence of records. Each record is a kind byte, a payload length, and
+ * a payload holding one deflated, independently serialized object, so any
+ * record can be decoded on its own given its offset. The file ends with an
+ * index record (a {@link MatchFileIndex}) and a trailer holding the offset of
+ * the index and the magic number again.
+ */
+public class IndexedMatchWriter {
+
+    public static final int MAGIC = 0x42434d49; // "BCMI"
+    public static final int VERSION = 1;
+
+    public static final byte KIND_OBJECT = 0;
+    public static final byte KIND_HEADER = 1;
+    public static final byte KIND_METADATA = 2;
+    public static final byte KIND_ROUND = 3;
+    public static final byte KIND_STATS = 4;
+    public static final byte KIND_KEYFRAME = 5;
+    public static final byte KIND_GAME_STATS = 6;
+    public static final byte KIND_FOOTER = 7;
+    public static final byte KIND_INDEX = 8;
+
+    /**
+     * The size of the trailer at the end of the file.
+     */
+    public static final int TRAILER_LENGTH = 12;
+
+    private final DataOutputStream output;
+
+    private final MatchFileIndex index = new MatchFileIndex();
+
+    private MatchFileIndex.Entry current;
+
+    private long offset;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+    public IndexedMatchWriter(OutputStream stream) throws IOException {
+        output = new DataOutputStream(new BufferedOutputStream(stream));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        offset = 8;
+    }
+
+    /**
+     * Writes an object, filing it in the index according to its type.
+     *
+     * @param o the object to write
+     * @throws IOException if the object could not be written
+     */
+    public void write(Object o) throws IOException {
+        if (o instanceof MatchHeader) {
+            current = index.startMatch();
+            current.headerOffset = writeRecord(KIND_HEADER, o);
+        } else if (o instanceof ExtensibleMetadata && current != null
+                && current.metadataOffset < 0) {
+            current.metadataOffset = writeRecord(KIND_METADATA, o);
+        } else if (o instanceof RoundDelta && current != null) {
+            current.addRound(writeRecord(KIND_ROUND, o));
+        } else if (o instanceof RoundStats && current != null) {
+            current.setStats(writeRecord(KIND_STATS, o));
+        } else if (o instanceof RoundKeyframe && current != null) {
+            current.addKeyframe(((RoundKeyframe) o).getRound(),
+                    writeRecord(KIND_KEYFRAME, o));
+        } else if (o instanceof GameStats && current != null) {
+            current.gameStatsOffset = writeRecord(KIND_GAME_STATS, o);
+        } else if (o instanceof MatchFooter && current != null) {
+            current.footerOffset = writeRecord(KIND_FOOTER, o);
+        } else
+            writeRecord(KIND_OBJECT, o);
+    }
+
+    /**
+     * Writes the index and trailer and closes the underlying stream.
+     *
+     * @throws IOException if the stream could not be written to
+     */
+    public void close() throws IOException {
+        index.trim();
+        long indexOffset = writeRecord(KIND_INDEX, index);
+        output.writeLong(indexOffset);
+        output.writeInt(MAGIC);
+        output.close();
+        deflater.end();
+    }
+
+    private long writeRecord(byte kind, Object o) throws IOException {
+        buffer.reset();
+        deflater.reset();
+        DeflaterOutputStream deflated = new DeflaterOutputStream(buffer, deflater);
+        ObjectOutputStream objects = new ObjectOutputStream(deflated);
+        objects.writeObject(o);
+        objects.flush();
+        deflated.finish();
+
+        long start = offset;
+        output.writeByte(kind);
+        output.writeInt(buffer.size());
+        buffer.writeTo(output);
+        offset += 5 + buffer.size();
+        return start;
+    }
+}
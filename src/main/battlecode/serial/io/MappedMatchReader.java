@@ -0,0 +1,521 @@
+package battlecode.serial.io;
+
+import battlecode.engine.signal.Signal;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import static java.io.ObjectStreamConstants.*;
+
+/**
+ * Reads binary match files (the format written by {@link
+ * battlecode.server.proxy.FileProxy} when XML output is off) by mapping them
+ * into memory and decoding only what is asked for.
+ * <p/>
+ * Iterating over a match yields one {@link Record} per serialized object
+ * (headers, round deltas, stats, footers and so on) without deserializing
+ * anything; a record is decoded only when {@link Record#decode()} is called.
+ * The signals of a round can be inspected one at a time through
+ * {@link SignalView}, which reads primitive fields straight out of the
+ * mapped file. Memory use therefore depends on the size of a round, not the
+ * length of the match:
+ * <pre>
+ * MappedMatchReader reader = MappedMatchReader.open(new File("match.rms"));
+ * for (MappedMatchReader.Record record : reader) {
+ *     if (record.isRound())
+ *         for (MappedMatchReader.SignalView s : record.getSignals())
+ *             if (s.getClassName().endsWith(".AttackSignal"))
+ *                 count++;
+ * }
+ * reader.close();
+ * </pre>
+ * Gzipped files are decompressed to a temporary file first, since a
+ * compressed stream can't be mapped.
+ */
+public class MappedMatchReader implements Iterable<MappedMatchReader.Record> {
+
+    private static final byte[] STREAM_HEADER = {
+            (byte) (STREAM_MAGIC >>> 8), (byte) STREAM_MAGIC,
+            (byte) (STREAM_VERSION >>> 8), (byte) STREAM_VERSION};
+
+    private static final String ROUND_DELTA = RoundDelta.class.getName();
+    private static final String ROUND_STATS = RoundStats.class.getName();
+    private static final String MATCH_HEADER = MatchHeader.class.getName();
+
+    private final ByteBuffer buffer;
+
+    private final File temp;
+
+    private final RandomAccessFile file;
+
+    /**
+     * A single top-level object in the match file.
+     */
+    public class Record {
+
+        private final int offset;
+        private final int length;
+        private final String className;
+        private final boolean selfContained;
+        private final int match;
+        private final int round;
+
+        private List<SignalView> signals;
+        private RoundDelta decoded;
+
+        Record(int offset, int length, String className, boolean selfContained, int match, int round) {
+            this.offset = offset;
+            this.length = length;
+            this.className = className;
+            this.selfContained = selfContained;
+            this.match = match;
+            this.round = round;
+        }
+
+        /**
+         * @return the name of the class of the object, as reported by
+         *         Class.getName()
+         */
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * @return the byte offset of the record in the uncompressed file
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return the index of the match this record belongs to, or -1 if it
+         *         comes before the first match header
+         */
+        public int getMatchNumber() {
+            return match;
+        }
+
+        /**
+         * @return for rounds and round stats, the round number within the
+         *         match, counting from 0; otherwise -1
+         */
+        public int getRoundNumber() {
+            return round;
+        }
+
+        public boolean isRound() {
+            return ROUND_DELTA.equals(className);
+        }
+
+        public boolean isStats() {
+            return ROUND_STATS.equals(className);
+        }
+
+        public boolean isHeader() {
+            return MATCH_HEADER.equals(className);
+        }
+
+        /**
+         * Deserializes this record.
+         *
+         * @return the object stored in this record
+         * @throws IOException if the record could not be decoded
+         */
+        public Object decode() throws IOException {
+            if (isRound()) {
+                if (decoded == null)
+                    decoded = (RoundDelta) deserialize();
+                return decoded;
+            }
+            return deserialize();
+        }
+
+        private Object deserialize() throws IOException {
+            if (!selfContained)
+                throw new IOException("record at offset " + offset
+                        + " refers to earlier objects; the stream was written without reset()");
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(offset);
+            slice.limit(offset + length);
+            ObjectInputStream input = new ObjectInputStream(new SequenceInputStream(
+                    new ByteArrayInputStream(STREAM_HEADER), new ByteBufferInputStream(slice.slice())));
+            try {
+                return input.readObject();
+            } catch (ClassNotFoundException e) {
+                IOException ioe = new InvalidClassException(e.getMessage());
+                ioe.initCause(e);
+                throw ioe;
+            }
+        }
+
+        /**
+         * Lists the signals of a round without deserializing them.
+         *
+         * @return a view of each signal in the round, in order
+         * @throws IOException           if the round is malformed
+         * @throws IllegalStateException if this record is not a round
+         */
+        public List<SignalView> getSignals() throws IOException {
+            if (!isRound())
+                throw new IllegalStateException(className + " is not a round");
+            if (signals == null)
+                signals = walkSignals();
+            return signals;
+        }
+
+        private List<SignalView> walkSignals() throws IOException {
+            SerializationWalker walker = new SerializationWalker(buffer, offset);
+            SerializationWalker.ClassDesc desc = walker.readObjectHeader();
+            List<SignalView> views = new ArrayList<SignalView>();
+            for (SerializationWalker.ClassDesc d : desc.hierarchy()) {
+                for (int i = 0; i < d.types.length; i++) {
+                    if (d == desc && "signals".equals(d.names[i])
+                            && walker.peek() == TC_ARRAY) {
+                        walker.readArrayHeader();
+                        int count = walker.readInt();
+                        for (int j = 0; j < count; j++)
+                            views.add(walkSignal(walker, j));
+                    } else if (d.types[i] == 'L' || d.types[i] == '[')
+                        walker.readContent();
+                    else
+                        walker.pos += SerializationWalker.primitiveSize(d.types[i]);
+                }
+            }
+            return views;
+        }
+
+        private SignalView walkSignal(SerializationWalker walker, int index) throws IOException {
+            if (walker.peek() != TC_OBJECT) {
+                Object o = walker.readContent();
+                String name = o instanceof SerializationWalker.ClassDesc ?
+                        ((SerializationWalker.ClassDesc) o).name : null;
+                return new SignalView(this, index, name, null, null);
+            }
+            SerializationWalker.ClassDesc desc = walker.readObjectHeader();
+            List<Integer> offsets = new ArrayList<Integer>();
+            walker.readClassData(desc, offsets);
+            int[] fieldOffsets = new int[offsets.size()];
+            for (int i = 0; i < fieldOffsets.length; i++)
+                fieldOffsets[i] = offsets.get(i);
+            return new SignalView(this, index, desc.name, desc, fieldOffsets);
+        }
+    }
+
+    /**
+     * A single signal within a round, read lazily from the mapped file.
+     */
+    public class SignalView {
+
+        private final Record round;
+        private final int index;
+        private final String className;
+        private final SerializationWalker.ClassDesc desc;
+        private final int[] offsets;
+
+        SignalView(Record round, int index, String className,
+                   SerializationWalker.ClassDesc desc, int[] offsets) {
+            this.round = round;
+            this.index = index;
+            this.className = className;
+            this.desc = desc;
+            this.offsets = offsets;
+        }
+
+        /**
+         * @return the name of the class of the signal, or null for a null
+         *         signal
+         */
+        public String getClassName() {
+            return className;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public boolean hasField(String name) {
+            return desc != null && fieldOffset(name, (char) 0) >= 0;
+        }
+
+        public int getInt(String name) {
+            return buffer.getInt(requireField(name, 'I'));
+        }
+
+        public long getLong(String name) {
+            return buffer.getLong(requireField(name, 'J'));
+        }
+
+        public double getDouble(String name) {
+            return buffer.getDouble(requireField(name, 'D'));
+        }
+
+        public boolean getBoolean(String name) {
+            return buffer.get(requireField(name, 'Z')) != 0;
+        }
+
+        /**
+         * Decodes the signal. This deserializes the whole round the first
+         * time any of its signals is decoded.
+         *
+         * @return the signal
+         * @throws IOException if the round could not be decoded
+         */
+        public Signal decode() throws IOException {
+            return ((RoundDelta) round.decode()).getSignals()[index];
+        }
+
+        /**
+         * @return the class name and primitive fields of the signal
+         */
+        public String toString() {
+            if (desc == null)
+                return String.valueOf(className);
+            StringBuilder builder = new StringBuilder(className);
+            int i = 0;
+            for (SerializationWalker.ClassDesc d : desc.hierarchy()) {
+                for (int j = 0; j < d.names.length; j++, i++) {
+                    builder.append(' ').append(d.names[j]).append('=');
+                    int offset = offsets[i];
+                    switch (d.types[j]) {
+                        case 'I':
+                            builder.append(buffer.getInt(offset));
+                            break;
+                        case 'J':
+                            builder.append(buffer.getLong(offset));
+                            break;
+                        case 'D':
+                            builder.append(buffer.getDouble(offset));
+                            break;
+                        case 'F':
+                            builder.append(buffer.getFloat(offset));
+                            break;
+                        case 'Z':
+                            builder.append(buffer.get(offset) != 0);
+                            break;
+                        case 'B':
+                            builder.append(buffer.get(offset));
+                            break;
+                        case 'S':
+                            builder.append(buffer.getShort(offset));
+                            break;
+                        case 'C':
+                            builder.append(buffer.getChar(offset));
+                            break;
+                        default:
+                            builder.append("...");
+                    }
+                }
+            }
+            return builder.toString();
+        }
+
+        private int requireField(String name, char type) {
+            int offset = desc == null ? -1 : fieldOffset(name, type);
+            if (offset < 0)
+                throw new IllegalArgumentException(className + " has no field " + name + " of type " + type);
+            return offset;
+        }
+
+        private int fieldOffset(String name, char type) {
+            int i = 0;
+            int found = -1;
+            for (SerializationWalker.ClassDesc d : desc.hierarchy()) {
+                for (int j = 0; j < d.names.length; j++, i++) {
+                    // fields of subclasses hide those of superclasses
+                    if (d.names[j].equals(name) && (type == 0 || d.types[j] == type))
+                        found = offsets[i];
+                }
+            }
+            return found;
+        }
+    }
+
+    private class RecordIterator implements Iterator<Record> {
+
+        private final SerializationWalker walker = new SerializationWalker(buffer, STREAM_HEADER.length);
+        private int match = -1;
+        private int round = -1;
+
+        public boolean hasNext() {
+            return walker.pos < buffer.limit();
+        }
+
+        public Record next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            try {
+                boolean selfContained = walker.pos == STREAM_HEADER.length;
+                while (walker.pos < buffer.limit() && walker.peek() == TC_RESET) {
+                    walker.pos++;
+                    walker.reset();
+                    selfContained = true;
+                }
+                int start = walker.pos;
+                Object o = walker.readContent();
+                String name;
+                if (o instanceof SerializationWalker.ClassDesc)
+                    name = ((SerializationWalker.ClassDesc) o).name;
+                else
+                    name = o == null ? null : "java.lang.String";
+                int recordRound = -1;
+                if (MATCH_HEADER.equals(name)) {
+                    match++;
+                    round = -1;
+                } else if (ROUND_DELTA.equals(name))
+                    recordRound = ++round;
+                else if (ROUND_STATS.equals(name))
+                    recordRound = round;
+                return new Record(start, walker.pos - start, name, selfContained, match, recordRound);
+            } catch (IOException e) {
+                throw new IllegalStateException("corrupt match file: " + e.getMessage(), e);
+            } catch (IndexOutOfBoundsException e) {
+                throw new IllegalStateException("truncated match file", e);
+            }
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining())
+                return -1;
+            len = Math.min(len, buf.remaining());
+            buf.get(b, off, len);
+            return len;
+        }
+
+        public int available() {
+            return buf.remaining();
+        }
+    }
+
+    private MappedMatchReader(File f, File temp) throws IOException {
+        this.temp = temp;
+        file = new RandomAccessFile(f, "r");
+        FileChannel channel = file.getChannel();
+        if (channel.size() > Integer.MAX_VALUE)
+            throw new IOException("match file is too large to map: " + f);
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        buffer = mapped;
+        for (int i = 0; i < STREAM_HEADER.length; i++) {
+            if (buffer.limit() <= i || buffer.get(i) != STREAM_HEADER[i])
+                throw new StreamCorruptedException("not a binary match file: " + f);
+        }
+    }
+
+    /**
+     * Opens and maps a binary match file, decompressing it first if it is
+     * gzipped.
+     *
+     * @param f the match file
+     * @return a reader for the file
+     * @throws IOException if the file can't be read or is not a binary match
+     *                     file
+     */
+    public static MappedMatchReader open(File f) throws IOException {
+        if (!isGzipped(f))
+            return new MappedMatchReader(f, null);
+        File temp = File.createTempFile("battlecode", ".rms");
+        temp.deleteOnExit();
+        InputStream in = new GZIPInputStream(new FileInputStream(f), 1 << 16);
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            byte[] chunk = new byte[1 << 16];
+            int n;
+            while ((n = in.read(chunk)) > 0)
+                out.write(chunk, 0, n);
+        } finally {
+            in.close();
+            out.close();
+        }
+        return new MappedMatchReader(temp, temp);
+    }
+
+    /**
+     * @param f the file to check
+     * @return true if the file starts with the gzip magic number
+     */
+    public static boolean isGzipped(File f) throws IOException {
+        InputStream in = new FileInputStream(f);
+        try {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Iterates over the records in the file. Each iterator walks the file
+     * from the start; records are not cached.
+     */
+    public Iterator<Record> iterator() {
+        return new RecordIterator();
+    }
+
+    public void close() throws IOException {
+        file.close();
+        if (temp != null)
+            temp.delete();
+    }
+
+    /**
+     * Prints how many times each signal class occurs in a match file, or the
+     * rounds in which a given signal class occurs.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: MappedMatchReader file [signal-class]");
+            System.exit(64);
+        }
+        MappedMatchReader reader = open(new File(args[0]));
+        Map<String, Integer> counts = new TreeMap<String, Integer>();
+        int rounds = 0;
+        for (Record record : reader) {
+            if (!record.isRound())
+                continue;
+            rounds++;
+            for (SignalView s : record.getSignals()) {
+                String name = s.getClassName();
+                if (args.length == 2) {
+                    if (name != null && name.endsWith(args[1]))
+                        System.out.println(record.getMatchNumber() + " " + record.getRoundNumber()
+                                + " " + s);
+                } else {
+                    Integer n = counts.get(name);
+                    counts.put(name, n == null ? 1 : n + 1);
+                }
+            }
+        }
+        reader.close();
+        if (args.length == 1) {
+            System.out.println(rounds + " rounds");
+            for (Map.Entry<String, Integer> e : counts.entrySet())
+                System.out.println(e.getValue() + "\t" + e.getKey());
+        }
+    }
+}
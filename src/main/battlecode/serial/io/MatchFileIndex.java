@@ -0,0 +1,118 @@
+package battlecode.serial.io;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The footer index of an indexed match file. For every match in the file it
+ * records the byte offset of the header, of each round and its stats, of each
+ * keyframe, and of the end of match data.
+ *
+ * @see IndexedMatchWriter
+ * @see IndexedMatchReader
+ */
+public class MatchFileIndex implements Serializable {
+
+    private static final long serialVersionUID = 2926443009736163585L;
+
+    private final List<Entry> matches = new ArrayList<Entry>();
+
+    /**
+     * The offsets of the records of a single match.
+     */
+    public static class Entry implements Serializable {
+
+        private static final long serialVersionUID = -5930569521573217150L;
+
+        long headerOffset = -1;
+        long metadataOffset = -1;
+        long gameStatsOffset = -1;
+        long footerOffset = -1;
+
+        int roundCount;
+        long[] roundOffsets = new long[256];
+        long[] statsOffsets = new long[256];
+
+        int keyframeCount;
+        int[] keyframeRounds = new int[16];
+        long[] keyframeOffsets = new long[16];
+
+        void addRound(long offset) {
+            if (roundCount == roundOffsets.length) {
+                roundOffsets = Arrays.copyOf(roundOffsets, roundCount * 2);
+                statsOffsets = Arrays.copyOf(statsOffsets, roundCount * 2);
+            }
+            roundOffsets[roundCount] = offset;
+            statsOffsets[roundCount] = -1;
+            roundCount++;
+        }
+
+        void setStats(long offset) {
+            if (roundCount > 0)
+                statsOffsets[roundCount - 1] = offset;
+        }
+
+        void addKeyframe(int round, long offset) {
+            if (keyframeCount == keyframeOffsets.length) {
+                keyframeRounds = Arrays.copyOf(keyframeRounds, keyframeCount * 2);
+                keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeCount * 2);
+            }
+            keyframeRounds[keyframeCount] = round;
+            keyframeOffsets[keyframeCount] = offset;
+            keyframeCount++;
+        }
+
+        void trim() {
+            roundOffsets = Arrays.copyOf(roundOffsets, roundCount);
+            statsOffsets = Arrays.copyOf(statsOffsets, roundCount);
+            keyframeRounds = Arrays.copyOf(keyframeRounds, keyframeCount);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeCount);
+        }
+
+        public int getRoundCount() {
+            return roundCount;
+        }
+
+        public int getKeyframeCount() {
+            return keyframeCount;
+        }
+
+        public int getKeyframeRound(int i) {
+            return keyframeRounds[i];
+        }
+
+        /**
+         * Finds the last keyframe taken at or before the given round.
+         *
+         * @param round the round to look for
+         * @return the index of the keyframe, or -1 if there is none
+         */
+        public int findKeyframe(int round) {
+            int i = Arrays.binarySearch(keyframeRounds, 0, keyframeCount, round);
+            if (i >= 0)
+                return i;
+            return -i - 2;
+        }
+    }
+
+    Entry startMatch() {
+        Entry entry = new Entry();
+        matches.add(entry);
+        return entry;
+    }
+
+    void trim() {
+        for (Entry entry : matches)
+            entry.trim();
+    }
+
+    public int getMatchCount() {
+        return matches.size();
+    }
+
+    public Entry getMatch(int match) {
+        return matches.get(match);
+    }
+}
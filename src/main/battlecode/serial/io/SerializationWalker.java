@@ -0,0 +1,326 @@
+package battlecode.serial.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.io.ObjectStreamConstants.*;
+
+/**
+ * Walks the Java object serialization grammar over a byte buffer without
+ * creating any of the serialized objects. It only keeps track of class
+ * descriptors, which are needed to know how long each object is, and can
+ * record where each field of an object starts.
+ * <p/>
+ * See the "Object Serialization Stream Protocol" chapter of the Java Object
+ * Serialization Specification for the grammar.
+ */
+class SerializationWalker {
+
+    /**
+     * Returned by readContent at the end of a block of annotations.
+     */
+    static final Object END = new Object();
+
+    private static final Object STRING = new Object();
+
+    private static final Object VALUE = new Object();
+
+    /**
+     * What a class descriptor tells us about the layout of an object.
+     */
+    static class ClassDesc {
+
+        final String name;
+        byte flags;
+        char[] types = new char[0];
+        String[] names = new String[0];
+        ClassDesc superDesc;
+
+        ClassDesc(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the descriptors of this class and its serializable
+         *         superclasses, topmost superclass first
+         */
+        List<ClassDesc> hierarchy() {
+            List<ClassDesc> list = new ArrayList<ClassDesc>();
+            for (ClassDesc d = this; d != null; d = d.superDesc)
+                list.add(0, d);
+            return list;
+        }
+    }
+
+    private final ByteBuffer buf;
+
+    private final List<Object> handles = new ArrayList<Object>();
+
+    int pos;
+
+    SerializationWalker(ByteBuffer buf, int pos) {
+        this.buf = buf;
+        this.pos = pos;
+    }
+
+    void reset() {
+        handles.clear();
+    }
+
+    int peek() {
+        return buf.get(pos) & 0xff;
+    }
+
+    int readByte() {
+        return buf.get(pos++) & 0xff;
+    }
+
+    int readShort() {
+        int v = buf.getShort(pos) & 0xffff;
+        pos += 2;
+        return v;
+    }
+
+    int readInt() {
+        int v = buf.getInt(pos);
+        pos += 4;
+        return v;
+    }
+
+    long readLong() {
+        long v = buf.getLong(pos);
+        pos += 8;
+        return v;
+    }
+
+    /**
+     * Advances past some bytes. Note that "pos += readInt()" would not work,
+     * since pos is read before readInt advances it.
+     */
+    void skip(int n) {
+        pos += n;
+    }
+
+    String readUTF() throws IOException {
+        int length = readShort();
+        byte[] bytes = new byte[length + 2];
+        bytes[0] = (byte) (length >>> 8);
+        bytes[1] = (byte) length;
+        for (int i = 0; i < length; i++)
+            bytes[i + 2] = buf.get(pos + i);
+        pos += length;
+        return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+    }
+
+    private void assign(Object o) {
+        handles.add(o);
+    }
+
+    private Object lookup(int handle) throws StreamCorruptedException {
+        int i = handle - baseWireHandle;
+        if (i < 0 || i >= handles.size())
+            throw new StreamCorruptedException("invalid handle " + Integer.toHexString(handle));
+        return handles.get(i);
+    }
+
+    static int primitiveSize(char type) throws StreamCorruptedException {
+        switch (type) {
+            case 'B':
+            case 'Z':
+                return 1;
+            case 'C':
+            case 'S':
+                return 2;
+            case 'I':
+            case 'F':
+                return 4;
+            case 'J':
+            case 'D':
+                return 8;
+            default:
+                throw new StreamCorruptedException("invalid type code " + type);
+        }
+    }
+
+    /**
+     * Skips one content item: an object, a class descriptor, or a block of
+     * annotation data.
+     *
+     * @return the descriptor of the class of the object that was skipped, if
+     *         any; {@link #END} at the end of an annotation block
+     */
+    Object readContent() throws IOException {
+        int tc = readByte();
+        switch (tc) {
+            case TC_NULL:
+                return null;
+            case TC_REFERENCE:
+                return lookup(readInt());
+            case TC_CLASSDESC:
+            case TC_PROXYCLASSDESC:
+                pos--;
+                return readClassDesc();
+            case TC_OBJECT: {
+                ClassDesc desc = readClassDesc();
+                assign(desc);
+                readClassData(desc, null);
+                return desc;
+            }
+            case TC_STRING:
+                assign(STRING);
+                skip(readShort());
+                return STRING;
+            case TC_LONGSTRING:
+                assign(STRING);
+                skip((int) readLong());
+                return STRING;
+            case TC_ARRAY: {
+                ClassDesc desc = readClassDesc();
+                assign(desc);
+                skipArrayData(desc);
+                return desc;
+            }
+            case TC_CLASS:
+                assign(readClassDesc());
+                return VALUE;
+            case TC_ENUM: {
+                ClassDesc desc = readClassDesc();
+                assign(desc);
+                readContent();
+                return desc;
+            }
+            case TC_BLOCKDATA:
+                skip(readByte());
+                return VALUE;
+            case TC_BLOCKDATALONG:
+                skip(readInt());
+                return VALUE;
+            case TC_ENDBLOCKDATA:
+                return END;
+            case TC_RESET:
+                reset();
+                return readContent();
+            default:
+                throw new StreamCorruptedException(String.format(
+                        "invalid type code %02X at offset %d", tc, pos - 1));
+        }
+    }
+
+    ClassDesc readClassDesc() throws IOException {
+        int tc = readByte();
+        switch (tc) {
+            case TC_NULL:
+                return null;
+            case TC_REFERENCE:
+                return (ClassDesc) lookup(readInt());
+            case TC_CLASSDESC: {
+                ClassDesc desc = new ClassDesc(readUTF());
+                pos += 8; // serialVersionUID
+                assign(desc);
+                desc.flags = (byte) readByte();
+                int count = readShort();
+                desc.types = new char[count];
+                desc.names = new String[count];
+                for (int i = 0; i < count; i++) {
+                    desc.types[i] = (char) readByte();
+                    desc.names[i] = readUTF();
+                    if (desc.types[i] == 'L' || desc.types[i] == '[')
+                        readContent(); // field type name
+                }
+                skipAnnotation();
+                desc.superDesc = readClassDesc();
+                return desc;
+            }
+            case TC_PROXYCLASSDESC: {
+                ClassDesc desc = new ClassDesc("proxy");
+                assign(desc);
+                desc.flags = SC_SERIALIZABLE;
+                int count = readInt();
+                for (int i = 0; i < count; i++)
+                    readUTF();
+                skipAnnotation();
+                desc.superDesc = readClassDesc();
+                return desc;
+            }
+            default:
+                throw new StreamCorruptedException(String.format(
+                        "invalid class descriptor type code %02X at offset %d", tc, pos - 1));
+        }
+    }
+
+    void skipAnnotation() throws IOException {
+        while (readContent() != END) {
+        }
+    }
+
+    void skipArrayData(ClassDesc desc) throws IOException {
+        int length = readInt();
+        char type = desc.name.charAt(1);
+        if (type == 'L' || type == '[') {
+            for (int i = 0; i < length; i++)
+                readContent();
+        } else
+            pos += length * primitiveSize(type);
+    }
+
+    /**
+     * Skips the data of an object of the given class.
+     *
+     * @param desc    the class of the object
+     * @param offsets if not null, receives the offset of every field value,
+     *                in the order of {@link ClassDesc#hierarchy()} and then
+     *                field order
+     */
+    void readClassData(ClassDesc desc, List<Integer> offsets) throws IOException {
+        for (ClassDesc d : desc.hierarchy()) {
+            if ((d.flags & SC_EXTERNALIZABLE) != 0) {
+                if ((d.flags & SC_BLOCK_DATA) == 0)
+                    throw new NotSerializableException("old externalizable protocol: " + d.name);
+                skipAnnotation();
+            } else if ((d.flags & SC_SERIALIZABLE) != 0) {
+                for (int i = 0; i < d.types.length; i++) {
+                    if (offsets != null)
+                        offsets.add(pos);
+                    if (d.types[i] == 'L' || d.types[i] == '[')
+                        readContent();
+                    else
+                        pos += primitiveSize(d.types[i]);
+                }
+                if ((d.flags & SC_WRITE_METHOD) != 0)
+                    skipAnnotation();
+            }
+        }
+    }
+
+    /**
+     * Reads the start of an object, assigning its handle.
+     *
+     * @return the class of the object
+     */
+    ClassDesc readObjectHeader() throws IOException {
+        int tc = readByte();
+        if (tc != TC_OBJECT)
+            throw new StreamCorruptedException(String.format(
+                    "expected an object at offset %d, found type code %02X", pos - 1, tc));
+        ClassDesc desc = readClassDesc();
+        assign(desc);
+        return desc;
+    }
+
+    /**
+     * Reads the start of an array, assigning its handle.
+     *
+     * @return the class of the array
+     */
+    ClassDesc readArrayHeader() throws IOException {
+        int tc = readByte();
+        if (tc != TC_ARRAY)
+            throw new StreamCorruptedException(String.format(
+                    "expected an array at offset %d, found type code %02X", pos - 1, tc));
+        ClassDesc desc = readClassDesc();
+        assign(desc);
+        return desc;
+    }
+}
@@ -38,7 +38,27 @@ public class Config {
         defaults.setProperty("bc.server.debug", "false");
         defaults.setProperty("bc.server.throttle", "yield");
         defaults.setProperty("bc.server.throttle-count", "15");
+        defaults.setProperty("bc.server.target-rps", "0");
+        defaults.setProperty("bc.server.ms-per-round", "0");
+        defaults.setProperty("bc.server.pacing-catchup", "10");
         defaults.setProperty("bc.server.output-xml", "true");
+        defaults.setProperty("bc.server.indexed-output", "false");
+        defaults.setProperty("bc.server.keyframe-interval", "100");
+        defaults.setProperty("bc.server.signal-compactor", "none");
+        defaults.setProperty("bc.server.compaction-verify", "false");
+        defaults.setProperty("bc.server.result-file", "");
+        defaults.setProperty("bc.server.best-of", "0");
+        defaults.setProperty("bc.tournament.manifest", "tournament.properties");
+        defaults.setProperty("bc.worker.max-matches", "50");
+        defaults.setProperty("bc.worker.max-memory", "0.75");
+        defaults.setProperty("bc.spool.dir", "spool");
+        defaults.setProperty("bc.spool.poll-interval", "1000");
+        defaults.setProperty("bc.spool.heartbeat", "10000");
+        defaults.setProperty("bc.spool.idle-exit", "0");
+        defaults.setProperty("bc.server.spectator-port", "0");
+        defaults.setProperty("bc.server.spectator-buffer", "16777216");
+        defaults.setProperty("bc.server.spectator-awesomeness", "false");
+        defaults.setProperty("bc.server.awesomeness-lag", "40");
 
         defaults.setProperty("bc.engine.debug-methods", "true");
         defaults.setProperty("bc.engine.debug-max-bytecodes", "64000");
@@ -210,6 +230,13 @@ public class Config {
         return Integer.valueOf(this.properties.getProperty(key, "0"));
     }
 
+    /**
+     * Gets a configuration value (as a double).
+     */
+    public double getDouble(String key) {
+        return Double.valueOf(this.properties.getProperty(key, "0"));
+    }
+
     /**
      * Gets a configuration value (as a boolean).
      */
@@ -1,5 +1,10 @@
 package battlecode.server;
 
+import battlecode.tournament.SpoolWorker;
+import battlecode.tournament.TournamentManifest;
+import battlecode.tournament.TournamentRunner;
+
+import java.io.File;
 import java.io.IOException;
 
 public class Main {
@@ -38,6 +43,19 @@ public class Main {
         }
     }
 
+    private static void runTournament(Config options) {
+
+        try {
+            TournamentManifest manifest = new TournamentManifest(
+                    new File(options.get("bc.tournament.manifest")));
+            new TournamentRunner(manifest).run();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
     public static Config setupConfig(String[] args) {
         try {
             Config options = new Config(args);
@@ -65,6 +83,12 @@ public class Main {
             case PIPE:
                 runPipe(options, saveFile);
                 break;
+            case TOURNAMENT:
+                runTournament(options);
+                break;
+            case SPOOL:
+                new SpoolWorker(options).run();
+                break;
             default:
                 return false;
         }
@@ -7,6 +7,9 @@ import battlecode.engine.GameState;
 import battlecode.engine.GameWorldViewer;
 import battlecode.engine.signal.Signal;
 import battlecode.serial.*;
+import battlecode.server.compaction.CompactionVerifier;
+import battlecode.server.compaction.CompactorFactory;
+import battlecode.server.compaction.SignalCompactor;
 
 import java.util.Observable;
 
@@ -55,6 +58,20 @@ public class Match extends Observable {
 
     private long[][] computedArchonMemory = null;
 
+    /**
+     * Removes redundant signals from each round before it is sent out.
+     */
+    private SignalCompactor compactor;
+
+    /**
+     * Checks the compactor's output, if compaction verification is enabled.
+     */
+    private CompactionVerifier verifier;
+
+    private long signalsRaised;
+
+    private long signalsSent;
+
     /**
      * Creates a new match with the given parameters and options.
      *
@@ -95,6 +112,10 @@ public class Match extends Observable {
         // Get the viewer from the engine.
         this.gameWorldViewer = engine.getGameWorldViewer();
         assert this.gameWorldViewer != null;
+
+        this.compactor = CompactorFactory.createCompactor(options);
+        if (options.getBoolean("bc.server.compaction-verify"))
+            this.verifier = new CompactionVerifier();
     }
 
     /**
@@ -145,8 +166,22 @@ public class Match extends Observable {
             return null;
 
         // Serialize the newly modified GameWorld.
-        return new RoundDelta(
-                gameWorldViewer.getAllSignals(this.bytecodesUsedEnabled));
+        Signal[] signals = gameWorldViewer.getAllSignals(this.bytecodesUsedEnabled);
+        Signal[] compacted = compactor.compact(signals);
+        signalsRaised += signals.length;
+        signalsSent += compacted.length;
+
+        if (verifier != null) {
+            String diff = verifier.verify(signals, compacted);
+            if (diff != null) {
+                Server.warn("signal compaction changed the state in round "
+                        + getRoundNumber() + ": " + diff);
+                Server.warn("not verifying the rest of this match");
+                verifier = null;
+            }
+        }
+
+        return new RoundDelta(compacted);
     }
 
     /**
@@ -158,6 +193,15 @@ public class Match extends Observable {
         return gameWorldViewer.getRoundStats();
     }
 
+    /**
+     * Takes a snapshot of the match state at the end of the most recent round.
+     *
+     * @return a keyframe for the most recent round
+     */
+    public RoundKeyframe getKeyframe() {
+        return gameWorldViewer.getKeyframe();
+    }
+
     /**
      * Queries the engine for stats for the whole match.
      *
@@ -201,6 +245,17 @@ public class Match extends Observable {
                 getComputedArchonMemory());
     }
 
+    /**
+     * Summarizes the outcome of this match. Must be called before
+     * {@link #finish()}.
+     *
+     * @return the teams, map, winner and stats of this match
+     */
+    public MatchResult getResult() {
+        return new MatchResult(info.getTeamA(), info.getTeamB(), map,
+                getWinner(), getRoundNumber(), gameWorldViewer.getGameStats());
+    }
+
     /**
      * Gets the winner of this match.
      *
@@ -294,6 +349,9 @@ public class Match extends Observable {
      * Cleans up the match so that its resources can be garbage collected.
      */
     public void finish() {
+        if (options.getBoolean("bc.server.debug") && signalsRaised > 0)
+            Server.say(String.format("signal compaction sent %d of %d signals (%.1f%%)",
+                    signalsSent, signalsRaised, 100. * signalsSent / signalsRaised));
         this.computedArchonMemory = this.engine.getArchonMemory();
         this.gameWorldViewer = null;
         this.engine = null;
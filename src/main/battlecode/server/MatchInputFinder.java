@@ -4,8 +4,12 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
@@ -22,6 +26,10 @@ import java.util.zip.ZipEntry;
  * Note that this class only matches files by name, so it's possible for it to
  * return invalid map files, for instance, so long as they are named like map
  * files.
+ * <p/>
+ * Searching opens every jar and lists every directory, so
+ * {@link #findMatchInputs()} keeps the result and only searches again when
+ * the modification times of the searched directories and jars change.
  */
 public class MatchInputFinder {
 
@@ -35,6 +43,37 @@ public class MatchInputFinder {
      */
     private final String[] classPaths, mapPaths;
 
+    /**
+     * How often, at most, the searched paths are checked for changes.
+     */
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+
+    /**
+     * The result of the last search, and the signature of the paths when it
+     * was made. Guarded by this.
+     */
+    private String[][] cached;
+
+    private long cachedSignature;
+
+    private long lastCheck;
+
+    /**
+     * The subdirectories of every searched directory, with the modification
+     * time of the directory when they were listed. Guarded by this.
+     */
+    private Map<File, Listing> listings = new HashMap<File, Listing>();
+
+    private static class Listing {
+        final long modified;
+        final File[] subdirectories;
+
+        Listing(long modified, File[] subdirectories) {
+            this.modified = modified;
+            this.subdirectories = subdirectories == null ? new File[0] : subdirectories;
+        }
+    }
+
     /**
      * A file filter that passes directories (to propagate a directory search)
      * and class files that seem to be BattleCode players.
@@ -60,12 +99,27 @@ public class MatchInputFinder {
      * and XML files that seem to be BattleCode map files.
      */
     private static class MapFileFilter implements Filter {
+
+        /**
+         * The map paths themselves, whose XML and binary files are maps
+         * whatever the directory is called.
+         */
+        private final Set<File> roots = new HashSet<File>();
+
+        MapFileFilter(String[] mapPaths) {
+            for (String path : mapPaths)
+                roots.add(new File(path).getAbsoluteFile());
+        }
+
         public boolean accept(File pathname) {
-            if (pathname.isDirectory() ||
-                    ("maps".equals(pathname.getParentFile().getName()) &&
-                            pathname.getName().endsWith(".xml")))
+            if (pathname.isDirectory())
                 return true;
-            return false;
+            File parent = pathname.getParentFile();
+            String name = pathname.getName();
+            // binary maps are only listed when there is no XML map to list
+            boolean map = name.endsWith(".xml") || (name.endsWith(".bmap")
+                    && !new File(parent, name.substring(0, name.length() - ".bmap".length()) + ".xml").exists());
+            return map && ("maps".equals(parent.getName()) || roots.contains(parent.getAbsoluteFile()));
         }
 
         public boolean accept(ZipEntry pathname) {
@@ -97,8 +151,74 @@ public class MatchInputFinder {
 
         // Construct the file filters.
         teamFilter = new TeamFileFilter();
-        mapFilter = new MapFileFilter();
+        mapFilter = new MapFileFilter(mapPaths);
+
+    }
+
+    /**
+     * Finds maps and teams on the local machine like
+     * {@link #findMatchInputsLocally()}, but reuses the previous result if
+     * none of the searched directories or jars has changed.
+     *
+     * @return an array of String arrays, where element 0 is an array of
+     *         team names and element 1 is an array of map names
+     */
+    public synchronized String[][] findMatchInputs() {
+        long now = System.currentTimeMillis();
+        if (cached == null || now - lastCheck >= CHECK_INTERVAL_MILLIS) {
+            lastCheck = now;
+            long signature = signature();
+            if (cached == null || signature != cachedSignature) {
+                cached = findMatchInputsLocally();
+                cachedSignature = signature;
+            }
+        }
+        return new String[][]{cached[0].clone(), cached[1].clone()};
+    }
+
+    /**
+     * Computes a hash of the modification times of every searched directory
+     * and jar. Adding, removing or renaming a file changes the modification
+     * time of its directory, so this changes whenever a search could find
+     * something different.
+     * <p/>
+     * A directory is only listed again when its own modification time has
+     * changed, so a check reads the modification time of each directory and
+     * jar rather than looking at every file.
+     */
+    private long signature() {
+        Map<File, Listing> previous = listings;
+        listings = new HashMap<File, Listing>();
+        long signature = 17;
+        for (String[] paths : new String[][]{classPaths, mapPaths}) {
+            for (String path : paths) {
+                File f = new File(path);
+                signature = signature * 31 + path.hashCode();
+                if (f.isDirectory())
+                    signature = directorySignature(f, signature, previous);
+                else
+                    signature = (signature * 31 + f.lastModified()) * 31 + f.length();
+            }
+        }
+        return signature;
+    }
+
+    private static final FileFilter directoryFilter = new FileFilter() {
+        public boolean accept(File pathname) {
+            return pathname.isDirectory();
+        }
+    };
 
+    private long directorySignature(File dir, long signature, Map<File, Listing> previous) {
+        long modified = dir.lastModified();
+        Listing listing = previous.get(dir);
+        if (listing == null || listing.modified != modified)
+            listing = new Listing(modified, dir.listFiles(directoryFilter));
+        listings.put(dir, listing);
+        signature = signature * 31 + modified;
+        for (File child : listing.subdirectories)
+            signature = directorySignature(child, signature * 31 + child.getName().hashCode(), previous);
+        return signature;
     }
 
     /**
@@ -171,15 +291,19 @@ public class MatchInputFinder {
     private void searchJar(File j, List<String> found, Filter filter) {
         try {
             JarFile jar = new JarFile(j);
-            Enumeration<JarEntry> en = jar.entries();
-            while (en.hasMoreElements()) {
-                ZipEntry e = en.nextElement();
-                if (filter.accept(e)) {
-                    String name = e.getName();
-                    int end = name.lastIndexOf('/');
-                    int start = name.lastIndexOf('/', end - 1) + 1;
-                    found.add(name.substring(start, end - start));
+            try {
+                Enumeration<JarEntry> en = jar.entries();
+                while (en.hasMoreElements()) {
+                    ZipEntry e = en.nextElement();
+                    if (filter.accept(e)) {
+                        String name = e.getName();
+                        int end = name.lastIndexOf('/');
+                        int start = name.lastIndexOf('/', end - 1) + 1;
+                        found.add(name.substring(start, end));
+                    }
                 }
+            } finally {
+                jar.close();
             }
         } catch (IOException e) {
         }
@@ -0,0 +1,55 @@
+package battlecode.server;
+
+import battlecode.serial.GameStats;
+import battlecode.serial.MatchFooter;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+
+import java.util.List;
+
+/**
+ * Receives match data as it is produced, as the same objects the server
+ * hands to its proxies, without serializing or copying them. Attach one with
+ * {@link Server#addListener(MatchListener, int)} before the server is run.
+ * <p/>
+ * <b>Threads.</b> Every method is called on the thread running the match.
+ * {@link #matchStarted} is called before the first round. A round is
+ * delivered while the next round runs: {@link battlecode.engine.Engine#runRound}
+ * wakes the first robot of the next round, writes out the previous round to
+ * the proxies, listeners included, and only then waits for the robots to
+ * finish their turns. Player threads are therefore running while
+ * {@link #roundsCompleted} is, so a listener must work only with the objects
+ * it is given, never with the game world, and the round can't end until the
+ * listener returns. The last round and {@link #matchFinished} are delivered
+ * after the last round has ended. A listener that wants to process data on
+ * another thread can hand the objects over, for instance through a
+ * BlockingQueue, which also makes them safely visible to the other thread.
+ * <p/>
+ * <b>Immutability.</b> The server never changes an object after it has been
+ * delivered, so listeners may keep them for as long as they like. Listeners
+ * must not change them either: the same instances are written to the
+ * server's other proxies.
+ */
+public interface MatchListener {
+
+    /**
+     * Called when a match starts.
+     */
+    public void matchStarted(MatchHeader header);
+
+    /**
+     * Called with the rounds that have been run since the last call: every
+     * round, or every few rounds if the listener was attached with a batch
+     * size. The lists belong to the listener.
+     *
+     * @param rounds the rounds, in order
+     * @param stats  the stats of each round, in the same order
+     */
+    public void roundsCompleted(List<RoundDelta> rounds, List<RoundStats> stats);
+
+    /**
+     * Called when a match ends, after the last of its rounds.
+     */
+    public void matchFinished(GameStats stats, MatchFooter footer);
+}
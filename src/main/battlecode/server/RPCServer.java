@@ -5,6 +5,9 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * A utility class for receiving remote method calls.
@@ -21,6 +24,11 @@ public abstract class RPCServer implements Runnable {
      */
     private static final int DEFAULT_PORT = 12370;
 
+    /**
+     * The number of calls that may be handled at once.
+     */
+    private static final int THREADS = 4;
+
     /**
      * Creates an RPC server that listens on the default port.
      *
@@ -50,33 +58,63 @@ public abstract class RPCServer implements Runnable {
 
     /**
      * Runs the server. This method listens for incoming connections
-     * continually. When it gets one, it waits for an input argument, passes
-     * it to handler(), and returns the result to the client.
+     * continually. Each connection is handed to a thread pool, which waits
+     * for an input argument, passes it to handler(), and returns the result
+     * to the client. handler() may therefore be called from several threads
+     * at once.
      * <p/>
      * Note: in this RPC implementation, the client always terminates the
      * connection.
      */
     public void run() {
-        Socket s;
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "rpc-handler");
+                t.setDaemon(true);
+                return t;
+            }
+        });
         try {
-            while ((s = socket.accept()) != null) {
+            while (true) {
+                final Socket s = socket.accept();
+                pool.execute(new Runnable() {
+                    public void run() {
+                        handle(s);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            Server.error("RPC server couldn't run: " + e.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
 
-                // Use Java serialization.
-                ObjectInputStream input = new ObjectInputStream(s.getInputStream());
-                ObjectOutputStream output = new ObjectOutputStream(s.getOutputStream());
+    /**
+     * Answers a single call.
+     */
+    private void handle(Socket s) {
+        try {
+            // Use Java serialization.
+            ObjectInputStream input = new ObjectInputStream(s.getInputStream());
+            ObjectOutputStream output = new ObjectOutputStream(s.getOutputStream());
 
-                // Get the result.
-                Object result = handler(input.readObject());
+            // Get the result.
+            Object result = handler(input.readObject());
 
-                // Write the result.
-                output.writeObject(result);
-                output.reset();
-                output.flush();
-            }
+            // Write the result.
+            output.writeObject(result);
+            output.reset();
+            output.flush();
         } catch (IOException e) {
-            Server.error("RPC server couldn't run: " + e.getMessage());
+            Server.warn("RPC call failed: " + e.getMessage());
         } catch (ClassNotFoundException e) {
-            Server.error("RPC server couldn't run: " + e.getMessage());
+            Server.warn("RPC call failed: " + e.getMessage());
+        } finally {
+            try {
+                s.close();
+            } catch (IOException e) {
+            }
         }
     }
 }
@@ -0,0 +1,159 @@
+package battlecode.server;
+
+/**
+ * Paces a match to a fixed number of rounds per second for live viewers.
+ * <p/>
+ * Each round is given a start time on a fixed schedule, and the pacer sleeps
+ * until that time, so the time spent simulating a round counts towards its
+ * period. After a slow round the following rounds run back to back until the
+ * match is back on schedule, unless it has fallen more than a few rounds
+ * behind, in which case the schedule is restarted from the current time.
+ * <p/>
+ * If no rate is configured, the old bc.server.throttle behavior is used.
+ */
+public class RoundPacer {
+
+    /**
+     * The time between round starts, in nanoseconds, or 0 if unpaced.
+     */
+    private final long period;
+
+    /**
+     * How far behind schedule the match may fall before the schedule is
+     * restarted rather than caught up with, in nanoseconds.
+     */
+    private final long maxBacklog;
+
+    private final int throttleCount;
+
+    private final boolean doYield;
+
+    private final boolean doSleep;
+
+    private int count;
+
+    /**
+     * When the next round should start, or 0 if the schedule needs to be
+     * restarted.
+     */
+    private long next;
+
+    // Statistics for the pacing report.
+
+    private int pacedRounds;
+
+    /**
+     * The number of round periods measured, and their total length. Periods
+     * that span a restart of the schedule are left out.
+     */
+    private int intervals;
+
+    private long intervalTime;
+
+    private long lastStart;
+
+    private long totalWakeError;
+
+    private int sleeps;
+
+    private int resyncs;
+
+    /**
+     * Creates a pacer from bc.server.target-rps or bc.server.ms-per-round,
+     * falling back to bc.server.throttle if neither is set.
+     */
+    public RoundPacer(Config options) {
+        double rps = options.getDouble("bc.server.target-rps");
+        double msPerRound = options.getDouble("bc.server.ms-per-round");
+        if (rps > 0)
+            period = (long) (1e9 / rps);
+        else if (msPerRound > 0)
+            period = (long) (msPerRound * 1e6);
+        else
+            period = 0;
+        maxBacklog = period * Math.max(options.getInt("bc.server.pacing-catchup"), 1);
+
+        String throttle = options.get("bc.server.throttle");
+        throttleCount = options.getInt("bc.server.throttle-count");
+        doYield = "yield".equals(throttle);
+        doSleep = "sleep".equals(throttle);
+    }
+
+    /**
+     * Restarts the schedule, e.g. after the match has been paused.
+     */
+    public void resync() {
+        next = 0;
+    }
+
+    /**
+     * Waits until the next round should start.
+     *
+     * @param live whether anyone is watching the match live; if not, the
+     *             match runs as fast as possible
+     */
+    public void beforeRound(boolean live) throws InterruptedException {
+        if (period == 0) {
+            if (count++ == throttleCount) {
+                if (doYield)
+                    Thread.yield();
+                else if (doSleep)
+                    Thread.sleep(1);
+                count = 0;
+            }
+            return;
+        }
+
+        if (!live) {
+            next = 0;
+            return;
+        }
+
+        long now = System.nanoTime();
+        boolean restarted = false;
+        if (next == 0 || now - next > maxBacklog) {
+            if (next != 0)
+                resyncs++;
+            restarted = true;
+            next = now;
+        } else if (now < next) {
+            long wait = next - now;
+            Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+            now = System.nanoTime();
+            totalWakeError += Math.abs(now - next);
+            sleeps++;
+        }
+
+        if (!restarted) {
+            intervals++;
+            intervalTime += now - lastStart;
+        }
+        pacedRounds++;
+        lastStart = now;
+        next += period;
+    }
+
+    /**
+     * Describes how closely the rounds kept to the target rate, and resets the
+     * statistics.
+     *
+     * @return the report, or null if no rounds were paced
+     */
+    public String report() {
+        if (intervals == 0)
+            return null;
+        double actual = intervals / (intervalTime / 1e9);
+        String report = String.format(
+                "paced %d rounds at %.2f rounds/sec (target %.2f), mean wake-up error %.3f ms, %d resyncs after stalls",
+                pacedRounds, actual, 1e9 / period,
+                sleeps == 0 ? 0. : totalWakeError / 1e6 / sleeps, resyncs);
+        pacedRounds = 0;
+        intervals = 0;
+        intervalTime = 0;
+        totalWakeError = 0;
+        sleeps = 0;
+        resyncs = 0;
+        next = 0;
+        return report;
+    }
+}
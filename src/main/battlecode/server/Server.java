@@ -7,9 +7,10 @@ import battlecode.engine.signal.Signal;
 import battlecode.serial.*;
 import battlecode.serial.notification.*;
 import battlecode.server.controller.Controller;
+import battlecode.server.proxy.ListenerProxy;
 import battlecode.server.proxy.Proxy;
 
-import java.io.IOException;
+import java.io.*;
 import java.util.*;
 
 /**
@@ -39,16 +40,28 @@ public class Server implements Observer, Runnable {
      */
     private final LinkedList<Match> finished;
 
+    /**
+     * The results of the matches that this server has already run.
+     */
+    private final List<MatchResult> results = new ArrayList<MatchResult>();
+
     /**
      * The state of the match that the server is running (or about to run).
+     * Guarded by stateLock.
      */
     private State state;
 
     /**
-     * The round number to run until.
+     * The round number to run until. Guarded by stateLock.
      */
     private int runUntil;
 
+    /**
+     * Notified whenever the state or runUntil changes, so that the match
+     * thread can wait for the controller instead of polling.
+     */
+    private final Object stateLock = new Object();
+
     /**
      * The options provided to the server via config file and command line.
      */
@@ -70,7 +83,7 @@ public class Server implements Observer, Runnable {
      * operation.
      */
     public static enum Mode {
-        HEADLESS, LOCAL, TCP, SCRIMMAGE, TOURNAMENT, TESTS, AUTOTEST, MATCH, PIPE, BADGEREVIEW
+        HEADLESS, LOCAL, TCP, SCRIMMAGE, TOURNAMENT, TESTS, AUTOTEST, MATCH, PIPE, BADGEREVIEW, SPOOL
 
     }
 
@@ -96,6 +109,25 @@ public class Server implements Observer, Runnable {
         this.nHandler = new ServerNotificationHandler();
     }
 
+    /**
+     * Attaches a listener that gets the match data as live objects, one round
+     * at a time. Must be called before the server is run.
+     */
+    public void addListener(MatchListener listener) {
+        addListener(listener, 1);
+    }
+
+    /**
+     * Attaches a listener that gets the match data as live objects. Must be
+     * called before the server is run.
+     *
+     * @param listener  the listener
+     * @param batchSize the number of rounds to pass to the listener at once
+     */
+    public void addListener(MatchListener listener, int batchSize) {
+        proxies.add(new ListenerProxy(listener, batchSize));
+    }
+
     /**
      * Handles events when notified by an observable.
      * <p/>
@@ -106,7 +138,7 @@ public class Server implements Observer, Runnable {
         // State-changing feedback from a match.
         if (o instanceof Match) {
             if (GameState.BREAKPOINT.equals(arg)) {
-                this.state = State.PAUSED;
+                setState(State.PAUSED);
                 for (Proxy p : proxies) {
                     try {
                         p.writeObject(PauseNotification.INSTANCE);
@@ -114,7 +146,7 @@ public class Server implements Observer, Runnable {
                     }
                 }
             } else if (GameState.DONE.equals(arg))
-                this.state = State.FINISHED;
+                setState(State.FINISHED);
         }
 
         // Some parameters from our controller.
@@ -131,7 +163,7 @@ public class Server implements Observer, Runnable {
                 int matchCount = info.getMaps().length;
                 int matchNumber = 0;
                 for (String map : info.getMaps()) {
-                    if (map.endsWith(".xml"))
+                    if (map.endsWith(".xml") || map.endsWith(".bmap"))
                         map = map.substring(0, map.indexOf('.'));
                     Match match = new Match(info, map, this.options,
                             matchNumber++, matchCount);
@@ -171,7 +203,7 @@ public class Server implements Observer, Runnable {
             NotificationHandler<Void> {
 
         public Void visitPauseNotification(PauseNotification n) {
-            state = State.PAUSED;
+            setState(State.PAUSED);
             for (Proxy p : proxies) {
                 try {
                     p.writeObject(n);
@@ -183,21 +215,26 @@ public class Server implements Observer, Runnable {
         }
 
         public Void visitStartNotification(StartNotification n) {
-            state = State.READY;
+            setState(State.READY);
             return null;
         }
 
         public Void visitRunNotification(RunNotification n) {
-            if (state != State.PAUSED) {
-                state = State.RUNNING;
-                runUntil = n.getRounds();
+            synchronized (stateLock) {
+                if (state != State.PAUSED) {
+                    state = State.RUNNING;
+                    runUntil = n.getRounds();
+                    stateLock.notifyAll();
+                }
             }
             return null;
         }
 
         public Void visitResumeNotification(ResumeNotification n) {
-            if (state == State.PAUSED)
-                state = State.RUNNING;
+            synchronized (stateLock) {
+                if (state == State.PAUSED)
+                    setState(State.RUNNING);
+            }
             return null;
         }
     }
@@ -212,7 +249,7 @@ public class Server implements Observer, Runnable {
         try {
             setupMatches();
         } catch (IOException e) {
-            this.state = State.ERROR;
+            setState(State.ERROR);
             e.printStackTrace();
             return;
         }
@@ -237,6 +274,7 @@ public class Server implements Observer, Runnable {
                 else if (match.getWinner() == Team.B)
                     bWins++;
 
+                results.add(match.getResult());
                 match.finish();
 
                 // Allow best of three scrimmages -- single game scrims should still work fine
@@ -246,8 +284,13 @@ public class Server implements Observer, Runnable {
                         break;
                 }
 
+                // Stop a best-of-N series once a team has clinched it.
+                int bestOf = options.getInt("bc.server.best-of");
+                if (bestOf > 0 && Math.max(aWins, bWins) > bestOf / 2)
+                    break;
+
             } catch (Exception e) {
-                this.state = State.ERROR;
+                setState(State.ERROR);
                 e.printStackTrace();
                 error("couldn't run match: " + e.getMessage());
             }
@@ -267,6 +310,45 @@ public class Server implements Observer, Runnable {
         } catch (IOException e) {
             e.printStackTrace();
         }
+
+        String resultFile = options.get("bc.server.result-file");
+        if (resultFile != null && resultFile.length() > 0) {
+            try {
+                writeResults(new File(resultFile));
+            } catch (IOException e) {
+                warn("couldn't write results to " + resultFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes the results of every match that was run, as a serialized
+     * MatchResult array. The file is written under a temporary name and then
+     * renamed, so a program waiting for it never sees a partial file.
+     */
+    private void writeResults(File file) throws IOException {
+        if (file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+        File temp = new File(file.getPath() + ".tmp");
+        ObjectOutputStream out = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeObject(results.toArray(new MatchResult[results.size()]));
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file))
+                throw new IOException("couldn't rename " + temp);
+        }
+    }
+
+    /**
+     * @return the results of the matches that have been run so far
+     */
+    public List<MatchResult> getResults() {
+        return results;
     }
 
     /**
@@ -289,6 +371,7 @@ public class Server implements Observer, Runnable {
     private class IOCallback implements Runnable {
         public RoundDelta round;
         public RoundStats stats;
+        public RoundKeyframe keyframe;
 
         public void run() {
             if (round != null) {
@@ -296,12 +379,15 @@ public class Server implements Observer, Runnable {
                     for (Proxy p : proxies) {
                         p.writeRound(round);
                         p.writeStats(stats);
+                        if (keyframe != null)
+                            p.writeKeyframe(keyframe);
                     }
                 } catch (IOException e) {
                     ErrorReporter.report(e, false);
                 }
                 round = null;
                 stats = null;
+                keyframe = null;
             }
         }
     }
@@ -315,16 +401,16 @@ public class Server implements Observer, Runnable {
         if (Mode.HEADLESS.equals(mode) || Mode.SCRIMMAGE.equals(mode)
                 || Mode.TOURNAMENT.equals(mode) || Mode.TESTS.equals(mode)
                 || Mode.AUTOTEST.equals(mode) || Mode.MATCH.equals(mode)) {
-            this.state = State.RUNNING;
-            this.runUntil = Integer.MAX_VALUE;
+            synchronized (stateLock) {
+                this.state = State.RUNNING;
+                this.runUntil = Integer.MAX_VALUE;
+            }
         }
 
-        // Poll for RUNNING.
-        while (!State.RUNNING.equals(state)) {
-            try {
-                Thread.sleep(250);
-            } catch (InterruptedException e) {
-            }
+        // Wait for the controller to tell us to run.
+        synchronized (stateLock) {
+            while (!State.RUNNING.equals(state))
+                stateLock.wait();
         }
 
         long startTime = System.currentTimeMillis();
@@ -343,51 +429,39 @@ public class Server implements Observer, Runnable {
         IOCallback callback = new IOCallback();
         match.setIOCallback(callback);
 
-        this.state = State.RUNNING;
+        setState(State.RUNNING);
 
-        int count = 0;
+        RoundPacer pacer = new RoundPacer(options);
 
-        final String throttle = options.get("bc.server.throttle");
-        final int throttleCount = options.getInt("bc.server.throttle-count");
-        final boolean doYield = "yield".equals(throttle);
-        final boolean doSleep = "sleep".equals(throttle);
+        // Only snapshot the world if someone is going to store the snapshots.
+        boolean wantKeyframes = false;
+        for (Proxy p : proxies)
+            wantKeyframes |= p.needsKeyframes();
+        final int keyframeInterval = wantKeyframes ?
+                options.getInt("bc.server.keyframe-interval") : 0;
 
         // If there are more rounds to be run, run them and
         // and send the round (and optionally stats) bytes to
         // recipients.
         while (match.hasMoreRounds()) {
 
-            // If not paused/stopped:
-            switch (this.state) {
-
-                case RUNNING:
-
-                    if (match.getRoundNumber() == runUntil) {
-                        Thread.sleep(25);
-                        break;
-                    }
-
-                    callback.round = match.getRound();
-                    if (callback.round == null)
-                        break;
+            // Wait until we are running and have not reached the round to
+            // run until. The controller's notifications wake us up.
+            if (awaitRound(match.getRoundNumber()))
+                pacer.resync();
 
-                    if (count++ == throttleCount) {
-                        if (doYield)
-                            Thread.yield();
-                        else if (doSleep)
-                            Thread.sleep(1);
-                        count = 0;
-                    }
+            pacer.beforeRound(isLive());
 
-                    // Compute stats bytes.
-                    callback.stats = match.getStats();
+            callback.round = match.getRound();
+            if (callback.round == null)
+                continue;
 
-                    break;
+            // Compute stats bytes.
+            callback.stats = match.getStats();
 
-                case PAUSED:
-                    Thread.sleep(250);
-                    break;
-            }
+            if (keyframeInterval > 0
+                    && match.getRoundNumber() % keyframeInterval == 0)
+                callback.keyframe = match.getKeyframe();
         }
 
         // we need to write the last round ourselves
@@ -402,17 +476,57 @@ public class Server implements Observer, Runnable {
 
         double timeDiff = (System.currentTimeMillis() - startTime) / 1000.0;
         debug(String.format("match completed in %.4g seconds", timeDiff));
+        String pacing = pacer.report();
+        if (pacing != null)
+            say(pacing);
 
         for (Proxy p : proxies) {
             p.writeObject(gameStats);
             p.writeFooter(footer);
         }
 
-        this.state = State.FINISHED;
+        setState(State.FINISHED);
+    }
+
+    /**
+     * Blocks until the server is running and the match, which is at the
+     * given round, has not yet reached the round to run until.
+     *
+     * @return true if it had to wait
+     */
+    boolean awaitRound(int round) throws InterruptedException {
+        boolean waited = false;
+        synchronized (stateLock) {
+            while (!State.RUNNING.equals(state) || round == runUntil) {
+                stateLock.wait();
+                waited = true;
+            }
+        }
+        return waited;
+    }
+
+    /**
+     * @return true if any proxy is sending match data to a live viewer
+     */
+    private boolean isLive() {
+        for (Proxy p : proxies) {
+            if (p.isLive())
+                return true;
+        }
+        return false;
+    }
+
+    private void setState(State state) {
+        synchronized (stateLock) {
+            this.state = state;
+            stateLock.notifyAll();
+        }
     }
 
     public State getState() {
-        return this.state;
+        synchronized (stateLock) {
+            return this.state;
+        }
     }
 
     /**
@@ -463,6 +577,17 @@ public class Server implements Observer, Runnable {
      * @param msg the debug message to display
      */
     public void debug(String msg) {
+        debug(options, msg);
+    }
+
+    /**
+     * Displays a debugging message if the given options ask for them, for
+     * code that has no server at hand.
+     *
+     * @param options the options that decide whether to display it
+     * @param msg     the debug message to display
+     */
+    public static void debug(Config options, String msg) {
         if (options.getBoolean("bc.server.debug"))
             System.out.printf("[server:debug] %s\n", msg);
     }
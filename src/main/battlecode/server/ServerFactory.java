@@ -1,10 +1,12 @@
 package battlecode.server;
 
+import battlecode.analysis.AwesomenessProxy;
 import battlecode.server.controller.Controller;
 import battlecode.server.controller.ControllerFactory;
 import battlecode.server.proxy.Proxy;
 import battlecode.server.proxy.ProxyFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -13,6 +15,21 @@ import java.util.List;
 
 public class ServerFactory {
 
+    /**
+     * Adds a proxy for spectators if bc.server.spectator-port is set, so that
+     * any number of viewers can watch the matches live. With
+     * bc.server.spectator-awesomeness, spectators also get camera hints.
+     */
+    private static void addSpectatorProxy(Config options, List<Proxy> proxies) {
+        int port = options.getInt("bc.server.spectator-port");
+        if (port > 0) {
+            Proxy proxy = ProxyFactory.createSpectatorProxy(port);
+            if (options.getBoolean("bc.server.spectator-awesomeness"))
+                proxy = new AwesomenessProxy(proxy, options.getInt("bc.server.awesomeness-lag"));
+            proxies.add(proxy);
+        }
+    }
+
     public static Server createLocalServer(Config options, Proxy proxy,
                                            String saveFile) throws IOException {
 
@@ -23,6 +40,7 @@ public class ServerFactory {
             proxies.add(ProxyFactory.createProxyFromFile(saveFile));
 
         proxies.add(proxy);
+        addSpectatorProxy(options, proxies);
 
         Server server = new Server(options, Server.Mode.LOCAL, controller,
                 proxies.toArray(new Proxy[0]));
@@ -38,11 +56,12 @@ public class ServerFactory {
         Controller controller = ControllerFactory
                 .createHeadlessController(options);
 
-        Proxy[] proxies = new Proxy[]{ProxyFactory
-                .createProxyFromFile(saveFile)};
+        List<Proxy> proxies = new LinkedList<Proxy>();
+        proxies.add(ProxyFactory.createProxyFromFile(saveFile));
+        addSpectatorProxy(options, proxies);
 
         Server server = new Server(options, Server.Mode.HEADLESS, controller,
-                proxies);
+                proxies.toArray(new Proxy[proxies.size()]));
         controller.addObserver(server);
 
         return server;
@@ -54,13 +73,14 @@ public class ServerFactory {
         RPCServer rpcServer;
         Thread rpcThread;
 
-        final MatchInputFinder finder = new MatchInputFinder();
+        final MatchInputFinder finder = new MatchInputFinder(
+                options.get("bc.game.map-path").split(File.pathSeparator));
 
         // Start a new RPC server for handling match input requests.
         rpcServer = new RPCServer() {
             public Object handler(Object arg) {
                 if ("find-match-inputs".equals(arg))
-                    return finder.findMatchInputsLocally();
+                    return finder.findMatchInputs();
                 return null;
             }
         };
@@ -84,6 +104,7 @@ public class ServerFactory {
             proxies.add(ProxyFactory.createProxyFromFile(saveFile));
 
         proxies.add(ProxyFactory.createProxy(clientSocket.getOutputStream()));
+        addSpectatorProxy(options, proxies);
 
         Server server = new Server(options, Server.Mode.TCP, controller,
                 proxies.toArray(new Proxy[proxies.size()]));
@@ -103,6 +124,7 @@ public class ServerFactory {
             proxies.add(ProxyFactory.createProxyFromFile(saveFile));
 
         proxies.add(ProxyFactory.createProxy(System.out));
+        addSpectatorProxy(options, proxies);
 
         // since we're sending the match file to System.out, don't send log
         // messages there
@@ -0,0 +1,160 @@
+package battlecode.server.compaction;
+
+import battlecode.engine.signal.Signal;
+import battlecode.world.signal.*;
+
+import java.util.*;
+
+/**
+ * Collects the movement, direction, attack and indicator string signals of a
+ * round into one {@link BatchSignal} per kind.
+ * <p/>
+ * A batch is placed where the last signal it replaces was, so the signals in
+ * it move later in the round. To keep that from changing the client's state,
+ * a signal is only batched if it is the only one of its kind for its robot
+ * (and string index) in the round, and the robot is not spawned, does not die
+ * and does not get moved by an override in the round. Running {@link StateCompactor} first makes most
+ * signals eligible.
+ */
+public class BatchCompactor extends SignalCompactor {
+
+    /**
+     * Fewer signals than this of one kind are left alone.
+     */
+    private static final int MIN_BATCH = 2;
+
+    private static final int MOVEMENT = 0;
+    private static final int SET_DIRECTION = 1;
+    private static final int ATTACK = 2;
+    private static final int INDICATOR_STRING = 3;
+
+    private final List<Map<Long, Integer>> counts = new ArrayList<Map<Long, Integer>>();
+
+    private final Set<Integer> excluded = new HashSet<Integer>();
+
+    private final List<List<Integer>> batches = new ArrayList<List<Integer>>();
+
+    public BatchCompactor() {
+        for (int i = 0; i < 4; i++) {
+            counts.add(new HashMap<Long, Integer>());
+            batches.add(new ArrayList<Integer>());
+        }
+    }
+
+    public Signal[] compact(Signal[] signals) {
+        // Count the signals of each kind per robot, and find the robots whose
+        // signals must stay where they are.
+        for (Signal s : signals) {
+            int kind = kind(s);
+            if (kind >= 0) {
+                Long key = key(s);
+                Integer n = counts.get(kind).get(key);
+                counts.get(kind).put(key, n == null ? 1 : n + 1);
+            } else if (s instanceof SpawnSignal)
+                excluded.add(((SpawnSignal) s).getRobotID());
+            else if (s instanceof DeathSignal)
+                excluded.add(((DeathSignal) s).getObjectID());
+            else if (s instanceof MovementOverrideSignal)
+                excluded.add(((MovementOverrideSignal) s).getRobotID());
+        }
+
+        for (int i = 0; i < signals.length; i++) {
+            int kind = kind(signals[i]);
+            if (kind < 0)
+                continue;
+            Long key = key(signals[i]);
+            if (counts.get(kind).get(key) == 1 && !excluded.contains((int) (key >> 32)))
+                batches.get(kind).add(i);
+        }
+
+        Signal[] replaced = null;
+        int removed = 0;
+        for (int kind = 0; kind < batches.size(); kind++) {
+            List<Integer> indices = batches.get(kind);
+            if (indices.size() < MIN_BATCH)
+                continue;
+            if (replaced == null)
+                replaced = signals.clone();
+            Signal batch = batch(kind, signals, indices);
+            for (int i = 0; i < indices.size() - 1; i++)
+                replaced[indices.get(i)] = null;
+            replaced[indices.get(indices.size() - 1)] = batch;
+            removed += indices.size() - 1;
+        }
+
+        for (int kind = 0; kind < batches.size(); kind++) {
+            counts.get(kind).clear();
+            batches.get(kind).clear();
+        }
+        excluded.clear();
+
+        if (replaced == null)
+            return signals;
+        Signal[] result = new Signal[replaced.length - removed];
+        int j = 0;
+        for (Signal s : replaced) {
+            if (s != null)
+                result[j++] = s;
+        }
+        return result;
+    }
+
+    private static int kind(Signal s) {
+        if (s instanceof MovementSignal)
+            return MOVEMENT;
+        else if (s instanceof SetDirectionSignal)
+            return SET_DIRECTION;
+        else if (s instanceof AttackSignal)
+            return ATTACK;
+        else if (s instanceof IndicatorStringSignal)
+            return INDICATOR_STRING;
+        else
+            return -1;
+    }
+
+    /**
+     * @return the robot ID in the high 32 bits, and for indicator strings the
+     *         string index in the low 32 bits
+     */
+    private static Long key(Signal s) {
+        if (s instanceof MovementSignal)
+            return (long) ((MovementSignal) s).getRobotID() << 32;
+        else if (s instanceof SetDirectionSignal)
+            return (long) ((SetDirectionSignal) s).getRobotID() << 32;
+        else if (s instanceof AttackSignal)
+            return (long) ((AttackSignal) s).getRobotID() << 32;
+        else {
+            IndicatorStringSignal iss = (IndicatorStringSignal) s;
+            return ((long) iss.getRobotID() << 32) | (iss.getStringIndex() & 0xffffffffL);
+        }
+    }
+
+    private static Signal batch(int kind, Signal[] signals, List<Integer> indices) {
+        switch (kind) {
+            case MOVEMENT: {
+                MovementSignal[] batch = new MovementSignal[indices.size()];
+                for (int i = 0; i < batch.length; i++)
+                    batch[i] = (MovementSignal) signals[indices.get(i)];
+                return new MovementBatchSignal(batch);
+            }
+            case SET_DIRECTION: {
+                SetDirectionSignal[] batch = new SetDirectionSignal[indices.size()];
+                for (int i = 0; i < batch.length; i++)
+                    batch[i] = (SetDirectionSignal) signals[indices.get(i)];
+                return new SetDirectionBatchSignal(batch);
+            }
+            case ATTACK: {
+                AttackSignal[] batch = new AttackSignal[indices.size()];
+                for (int i = 0; i < batch.length; i++)
+                    batch[i] = (AttackSignal) signals[indices.get(i)];
+                return new AttackBatchSignal(batch);
+            }
+            default: {
+                IndicatorStringSignal[] batch = new IndicatorStringSignal[indices.size()];
+                for (int i = 0; i < batch.length; i++)
+                    batch[i] = (IndicatorStringSignal) signals[indices.get(i)];
+                return new IndicatorStringBatchSignal(batch);
+            }
+        }
+    }
+}
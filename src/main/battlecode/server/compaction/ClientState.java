@@ -0,0 +1,137 @@
+package battlecode.server.compaction;
+
+import battlecode.common.*;
+import battlecode.engine.signal.Signal;
+import battlecode.world.signal.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The state a client builds up by replaying match signals: where each robot
+ * is and what it shows, and where the mines are. Signals that only trigger an
+ * animation or a message do not change it.
+ */
+class ClientState {
+
+    static class RobotState {
+        RobotType type;
+        Team team;
+        MapLocation loc;
+        Direction dir;
+        long controlBits;
+        double energon;
+        double shield;
+        String[] strings = new String[GameConstants.NUMBER_OF_INDICATOR_STRINGS];
+
+        boolean sameAs(RobotState r) {
+            return type == r.type && team == r.team && equal(loc, r.loc)
+                    && dir == r.dir && controlBits == r.controlBits
+                    && energon == r.energon && shield == r.shield
+                    && Arrays.equals(strings, r.strings);
+        }
+
+        public String toString() {
+            return String.format("%s %s at %s facing %s, bits %d, energon %f, shield %f, strings %s",
+                    team, type, loc, dir, controlBits, energon, shield, Arrays.toString(strings));
+        }
+    }
+
+    private final Map<Integer, RobotState> robots = new HashMap<Integer, RobotState>();
+
+    private final Map<MapLocation, Team> mines = new HashMap<MapLocation, Team>();
+
+    private double[] flux;
+
+    /**
+     * Updates the state with one signal.
+     *
+     * @return true if the signal is a state signal, false if it is an event
+     */
+    boolean apply(Signal s) {
+        if (s instanceof SpawnSignal) {
+            SpawnSignal spawn = (SpawnSignal) s;
+            RobotState r = new RobotState();
+            r.type = spawn.getType();
+            r.team = spawn.getTeam();
+            r.loc = spawn.getLoc();
+            robots.put(spawn.getRobotID(), r);
+        } else if (s instanceof DeathSignal) {
+            robots.remove(((DeathSignal) s).getObjectID());
+        } else if (s instanceof MovementSignal) {
+            MovementSignal m = (MovementSignal) s;
+            robot(m.getRobotID()).loc = m.getNewLoc();
+        } else if (s instanceof MovementOverrideSignal) {
+            MovementOverrideSignal m = (MovementOverrideSignal) s;
+            robot(m.getRobotID()).loc = m.getNewLoc();
+        } else if (s instanceof SetDirectionSignal) {
+            SetDirectionSignal d = (SetDirectionSignal) s;
+            robot(d.getRobotID()).dir = d.getDirection();
+        } else if (s instanceof ControlBitsSignal) {
+            ControlBitsSignal c = (ControlBitsSignal) s;
+            robot(c.getRobotID()).controlBits = c.getControlBits();
+        } else if (s instanceof IndicatorStringSignal) {
+            IndicatorStringSignal iss = (IndicatorStringSignal) s;
+            String[] strings = robot(iss.getRobotID()).strings;
+            if (iss.getStringIndex() >= 0 && iss.getStringIndex() < strings.length)
+                strings[iss.getStringIndex()] = iss.getNewString();
+        } else if (s instanceof EnergonChangeSignal) {
+            EnergonChangeSignal e = (EnergonChangeSignal) s;
+            for (int i = 0; i < e.getRobotIDs().length; i++)
+                robot(e.getRobotIDs()[i]).energon = e.getEnergon()[i];
+        } else if (s instanceof ShieldChangeSignal) {
+            ShieldChangeSignal e = (ShieldChangeSignal) s;
+            for (int i = 0; i < e.getRobotIDs().length; i++)
+                robot(e.getRobotIDs()[i]).shield = e.getShield()[i];
+        } else if (s instanceof FluxChangeSignal) {
+            flux = ((FluxChangeSignal) s).getFlux();
+        } else if (s instanceof MineSignal) {
+            MineSignal m = (MineSignal) s;
+            if (m.shouldAdd())
+                mines.put(m.getMineLoc(), m.getMineTeam());
+            else if (mines.get(m.getMineLoc()) == m.getMineTeam())
+                mines.remove(m.getMineLoc());
+        } else
+            return false;
+        return true;
+    }
+
+    /**
+     * Robots that were never spawned (e.g. ones placed by the map) are created
+     * on first use.
+     */
+    private RobotState robot(int id) {
+        RobotState r = robots.get(id);
+        if (r == null) {
+            r = new RobotState();
+            robots.put(id, r);
+        }
+        return r;
+    }
+
+    /**
+     * @return a description of the first difference between this state and
+     *         the given one, or null if they are the same
+     */
+    String diff(ClientState other) {
+        TreeSet<Integer> ids = new TreeSet<Integer>(robots.keySet());
+        ids.addAll(other.robots.keySet());
+        for (int id : ids) {
+            RobotState a = robots.get(id);
+            RobotState b = other.robots.get(id);
+            if (a == null || b == null || !a.sameAs(b))
+                return String.format("robot %d: %s vs. %s", id, a, b);
+        }
+        if (!mines.equals(other.mines))
+            return "mines: " + mines + " vs. " + other.mines;
+        if (!Arrays.equals(flux, other.flux))
+            return "flux: " + Arrays.toString(flux) + " vs. " + Arrays.toString(other.flux);
+        return null;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
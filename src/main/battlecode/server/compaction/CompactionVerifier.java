@@ -0,0 +1,73 @@
+package battlecode.server.compaction;
+
+import battlecode.engine.signal.Signal;
+import battlecode.world.signal.AttackSignal;
+import battlecode.world.signal.BatchSignal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks a compactor by replaying both the original and the compacted signals
+ * of every round, and comparing the resulting client states at the end of
+ * each round. Batch signals are expanded first. Every event signal (attacks,
+ * broadcasts, etc.) must also be passed through, though batching may have
+ * moved attacks to a different place in the round.
+ */
+public class CompactionVerifier {
+
+    private final ClientState original = new ClientState();
+
+    private final ClientState compacted = new ClientState();
+
+    private final List<String> originalEvents = new ArrayList<String>();
+
+    private final List<String> compactedEvents = new ArrayList<String>();
+
+    /**
+     * Replays one round of signals.
+     *
+     * @param signals   the signals of the round before compaction
+     * @param result    the signals of the round after compaction
+     * @return a description of the first difference between the two client
+     *         states, or null if they match
+     */
+    public String verify(Signal[] signals, Signal[] result) {
+        originalEvents.clear();
+        compactedEvents.clear();
+        for (Signal s : BatchSignal.expandAll(signals)) {
+            if (!original.apply(s))
+                originalEvents.add(describe(s));
+        }
+        for (Signal s : BatchSignal.expandAll(result)) {
+            if (!compacted.apply(s))
+                compactedEvents.add(describe(s));
+        }
+
+        if (originalEvents.size() != compactedEvents.size())
+            return String.format("%d event signals became %d",
+                    originalEvents.size(), compactedEvents.size());
+        Collections.sort(originalEvents);
+        Collections.sort(compactedEvents);
+        for (int i = 0; i < originalEvents.size(); i++) {
+            if (!originalEvents.get(i).equals(compactedEvents.get(i)))
+                return String.format("event signal %s became %s",
+                        originalEvents.get(i), compactedEvents.get(i));
+        }
+        return original.diff(compacted);
+    }
+
+    /**
+     * Attacks may have been recreated from a batch, so they are compared by
+     * value. Other events must be the very same objects.
+     */
+    private static String describe(Signal s) {
+        if (s instanceof AttackSignal) {
+            AttackSignal a = (AttackSignal) s;
+            return String.format("AttackSignal(%d, %s, %s)", a.getRobotID(),
+                    a.getTargetLoc(), a.getTargetHeight());
+        }
+        return s.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(s));
+    }
+}
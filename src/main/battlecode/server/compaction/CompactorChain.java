@@ -0,0 +1,21 @@
+package battlecode.server.compaction;
+
+import battlecode.engine.signal.Signal;
+
+/**
+ * Runs several compactors one after the other.
+ */
+class CompactorChain extends SignalCompactor {
+
+    private final SignalCompactor[] compactors;
+
+    CompactorChain(SignalCompactor[] compactors) {
+        this.compactors = compactors;
+    }
+
+    public Signal[] compact(Signal[] signals) {
+        for (SignalCompactor c : compactors)
+            signals = c.compact(signals);
+        return signals;
+    }
+}
@@ -0,0 +1,70 @@
+package battlecode.server.compaction;
+
+import battlecode.server.Config;
+import battlecode.server.Server;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Produces signal compactors from the bc.server.signal-compactor option.
+ * <p/>
+ * The option is a comma-separated list of compactors, which are run in order.
+ * Each entry is either "none", "state" (see {@link StateCompactor}), "batch"
+ * (see {@link BatchCompactor}) or the fully qualified name of a
+ * {@link SignalCompactor} subclass with a public no-argument constructor.
+ */
+public class CompactorFactory {
+
+    /**
+     * Creates the compactor configured by the given options.
+     *
+     * @param options command-line/configuration file options
+     * @return a compactor; never null
+     */
+    public static SignalCompactor createCompactor(Config options) {
+        String spec = options.get("bc.server.signal-compactor");
+        if (spec == null)
+            return new NullCompactor();
+
+        List<SignalCompactor> compactors = new ArrayList<SignalCompactor>();
+        for (String name : spec.split(",")) {
+            name = name.trim();
+            if (name.length() == 0 || "none".equals(name))
+                continue;
+            SignalCompactor c = createCompactor(name);
+            if (c != null)
+                compactors.add(c);
+        }
+
+        if (compactors.isEmpty())
+            return new NullCompactor();
+        if (compactors.size() == 1)
+            return compactors.get(0);
+        return new CompactorChain(compactors.toArray(new SignalCompactor[compactors.size()]));
+    }
+
+    private static SignalCompactor createCompactor(String name) {
+        if ("state".equals(name))
+            return new StateCompactor();
+        if ("batch".equals(name))
+            return new BatchCompactor();
+        try {
+            return Class.forName(name).asSubclass(SignalCompactor.class).getConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            Server.warn("unknown signal compactor " + name + ", ignoring");
+        } catch (ClassCastException e) {
+            Server.warn(name + " is not a signal compactor, ignoring");
+        } catch (NoSuchMethodException e) {
+            Server.warn("signal compactor " + name + " has no public no-argument constructor, ignoring");
+        } catch (InvocationTargetException e) {
+            Server.warn("signal compactor " + name + " failed to start, ignoring: " + e.getCause());
+        } catch (InstantiationException e) {
+            Server.warn("signal compactor " + name + " can't be created, ignoring: " + e);
+        } catch (IllegalAccessException e) {
+            Server.warn("signal compactor " + name + " can't be created, ignoring: " + e);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,13 @@
+package battlecode.server.compaction;
+
+import battlecode.engine.signal.Signal;
+
+/**
+ * A compactor that passes every signal through unchanged.
+ */
+class NullCompactor extends SignalCompactor {
+
+    public Signal[] compact(Signal[] signals) {
+        return signals;
+    }
+}
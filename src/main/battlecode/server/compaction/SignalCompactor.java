@@ -0,0 +1,25 @@
+package battlecode.server.compaction;
+
+import battlecode.engine.signal.Signal;
+
+/**
+ * Rewrites the signals of a round before they are sent to the proxies. A
+ * compactor may drop or merge signals, but a client that replays the
+ * compacted signals must end the round in the same state as one that replays
+ * the original signals.
+ *
+ * @see CompactorFactory
+ * @see CompactionVerifier
+ */
+public abstract class SignalCompactor {
+
+    /**
+     * Compacts the signals of one round. The given array must not be
+     * modified.
+     *
+     * @param signals the signals raised during the round, in order
+     * @return the compacted signals, in order; may be the given array if
+     *         nothing was removed
+     */
+    public abstract Signal[] compact(Signal[] signals);
+}
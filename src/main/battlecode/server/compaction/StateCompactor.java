@@ -0,0 +1,94 @@
+package battlecode.server.compaction;
+
+import battlecode.common.MapLocation;
+import battlecode.engine.signal.Signal;
+import battlecode.world.signal.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Drops signals whose effect on the client is overwritten later in the same
+ * round.
+ * <p/>
+ * Movement, direction, control bit and indicator string signals each set a
+ * piece of per-robot state outright, so only the last one of each kind for a
+ * robot (and string index) is kept. A mine signal that repeats the previous
+ * mine signal at the same location is dropped as well. All other signals are
+ * events and are passed through, and the kept signals stay in their original
+ * order.
+ * <p/>
+ * The end-of-round state seen by the client is unchanged, but intermediate
+ * states within a round are not replayed; for example, an attack animation
+ * may start from a robot's final location rather than the one it had when it
+ * attacked.
+ */
+public class StateCompactor extends SignalCompactor {
+
+    private final Set<Integer> moved = new HashSet<Integer>();
+
+    private final Set<Integer> turned = new HashSet<Integer>();
+
+    private final Set<Integer> controlled = new HashSet<Integer>();
+
+    private final Set<Long> indicated = new HashSet<Long>();
+
+    private final Map<MapLocation, MineSignal> mines = new HashMap<MapLocation, MineSignal>();
+
+    public Signal[] compact(Signal[] signals) {
+        boolean[] dropped = new boolean[signals.length];
+        int count = signals.length;
+
+        // Keep the last state signal of each kind, so walk backwards.
+        for (int i = signals.length - 1; i >= 0; i--) {
+            Signal s = signals[i];
+            boolean first;
+            if (s instanceof MovementSignal)
+                first = moved.add(((MovementSignal) s).getRobotID());
+            else if (s instanceof SetDirectionSignal)
+                first = turned.add(((SetDirectionSignal) s).getRobotID());
+            else if (s instanceof ControlBitsSignal)
+                first = controlled.add(((ControlBitsSignal) s).getRobotID());
+            else if (s instanceof IndicatorStringSignal) {
+                IndicatorStringSignal iss = (IndicatorStringSignal) s;
+                first = indicated.add(((long) iss.getRobotID() << 32) | (iss.getStringIndex() & 0xffffffffL));
+            } else
+                continue;
+            if (!first) {
+                dropped[i] = true;
+                count--;
+            }
+        }
+
+        // Adding or removing the same mine twice in a row has no effect.
+        for (int i = 0; i < signals.length; i++) {
+            if (!(signals[i] instanceof MineSignal))
+                continue;
+            MineSignal s = (MineSignal) signals[i];
+            MineSignal previous = mines.put(s.getMineLoc(), s);
+            if (previous != null && previous.getMineTeam() == s.getMineTeam()
+                    && previous.shouldAdd() == s.shouldAdd()) {
+                dropped[i] = true;
+                count--;
+            }
+        }
+
+        moved.clear();
+        turned.clear();
+        controlled.clear();
+        indicated.clear();
+        mines.clear();
+
+        if (count == signals.length)
+            return signals;
+        Signal[] result = new Signal[count];
+        int j = 0;
+        for (int i = 0; i < signals.length; i++) {
+            if (!dropped[i])
+                result[j++] = signals[i];
+        }
+        return result;
+    }
+}
@@ -47,11 +47,9 @@ class TCPController extends Controller {
         this.listenerThread.setDaemon(true);
         this.listenerThread.start();
 
-        try {
-            Thread.sleep(1000);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        // Give the client up to a second to send the match parameters, but
+        // go on as soon as they arrive.
+        listener.awaitFirstObject(1000);
     }
 
     /**
@@ -79,6 +77,11 @@ class TCPController extends Controller {
          */
         private boolean isRunning = true;
 
+        /**
+         * Whether or not an object has been received and passed on yet.
+         */
+        private boolean received = false;
+
         /**
          * Creates a listener on the given socket.
          *
@@ -89,6 +92,25 @@ class TCPController extends Controller {
             this.input = input;
         }
 
+        /**
+         * Waits until the first object from the client has been passed on to
+         * the observers.
+         *
+         * @param timeout the longest time to wait, in milliseconds
+         */
+        public synchronized void awaitFirstObject(long timeout) {
+            long end = System.currentTimeMillis() + timeout;
+            long left = timeout;
+            while (!received && left > 0) {
+                try {
+                    wait(left);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                left = end - System.currentTimeMillis();
+            }
+        }
+
         /**
          * Closes the connection and stops listening for control data.
          *
@@ -118,6 +140,10 @@ class TCPController extends Controller {
                     setChanged();
                     notifyObservers(data);
                     clearChanged();
+                    synchronized (this) {
+                        received = true;
+                        notifyAll();
+                    }
                 } catch (IOException e) {
                     if (isRunning)
                         Server.error("error getting data from client: "
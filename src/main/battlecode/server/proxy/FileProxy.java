@@ -67,8 +67,9 @@ public class FileProxy extends Proxy {
             if (!file.exists() && file.getParentFile() != null)
                 file.getParentFile().mkdirs();
 
-            temp = File.createTempFile("battlecode", ".tmp", new File(System
-                    .getProperty("user.dir")));
+            // Keep the temp file next to the destination, so that it can be
+            // renamed into place in one step.
+            temp = File.createTempFile("battlecode", ".tmp", file.getAbsoluteFile().getParentFile());
             temp.deleteOnExit();
 
             fileWriter = new FileOutputStream(temp);
@@ -96,10 +97,12 @@ public class FileProxy extends Proxy {
             out.write(buffer.toByteArray());
             out.close();
         } else {
-            // Move the file to its desired location.
-            if (file.exists())
-                file.delete();
+            // Move the file to its desired location. Renaming over an
+            // existing file fails on some platforms, so only then is it
+            // deleted first.
             boolean result = renameTo(temp, file);
+            if (!result && file.delete())
+                result = renameTo(temp, file);
             if (!result)
                 Server.warn("unable to rename match file");
         }
@@ -115,4 +118,8 @@ public class FileProxy extends Proxy {
             return;
         super.writeObject(o);
     }
+
+    public boolean isLive() {
+        return false;
+    }
 }
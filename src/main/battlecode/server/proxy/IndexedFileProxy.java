@@ -0,0 +1,87 @@
+package battlecode.server.proxy;
+
+import battlecode.serial.RoundKeyframe;
+import battlecode.serial.io.IndexedMatchWriter;
+import battlecode.serial.notification.Notification;
+import battlecode.server.Server;
+
+import java.io.*;
+
+/**
+ * This class saves match data in the indexed match file format, which allows
+ * viewers to seek to any round without replaying the whole match.
+ *
+ * @see battlecode.serial.io.IndexedMatchReader
+ */
+public class IndexedFileProxy extends Proxy {
+
+    /**
+     * The original file.
+     */
+    protected File file;
+
+    /**
+     * The temp file.
+     */
+    protected File temp;
+
+    protected IndexedMatchWriter writer;
+
+    /**
+     * Creates a new IndexedFileProxy that utilizes the file given by the
+     * specified filename.
+     *
+     * @param fileName The name of the file to write to.
+     * @throws IOException if the file cannot be opened or written to.
+     */
+    IndexedFileProxy(String fileName) throws IOException {
+        super();
+
+        // Create directories if necessary.
+        file = new File(fileName);
+        if (!file.exists() && file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+
+        // Keep the temp file next to the destination, so that it can be
+        // renamed into place in one step.
+        temp = File.createTempFile("battlecode", ".tmp", file.getAbsoluteFile().getParentFile());
+        temp.deleteOnExit();
+    }
+
+    protected OutputStream getOutputStream() throws IOException {
+        return null;
+    }
+
+    public void open() throws IOException {
+        writer = new IndexedMatchWriter(new FileOutputStream(temp));
+    }
+
+    public void close() throws IOException {
+        writer.close();
+
+        // Move the file to its desired location, as FileProxy does.
+        boolean result = temp.renameTo(file);
+        if (!result && file.delete())
+            result = temp.renameTo(file);
+        if (!result)
+            Server.warn("unable to rename match file");
+    }
+
+    public void writeObject(Object o) throws IOException {
+        if (o instanceof Notification)
+            return;
+        writer.write(o);
+    }
+
+    public void writeKeyframe(RoundKeyframe keyframe) throws IOException {
+        writer.write(keyframe);
+    }
+
+    public boolean needsKeyframes() {
+        return true;
+    }
+
+    public boolean isLive() {
+        return false;
+    }
+}
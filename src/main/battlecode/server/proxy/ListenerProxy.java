@@ -0,0 +1,92 @@
+package battlecode.server.proxy;
+
+import battlecode.serial.GameStats;
+import battlecode.serial.MatchFooter;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+import battlecode.server.MatchListener;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Passes match data straight to a {@link MatchListener}, collecting rounds
+ * into batches of a fixed size.
+ */
+public class ListenerProxy extends Proxy {
+
+    private final MatchListener listener;
+
+    private final int batchSize;
+
+    private List<RoundDelta> rounds;
+
+    private List<RoundStats> stats;
+
+    private GameStats gameStats;
+
+    /**
+     * @param listener  the listener to pass data to
+     * @param batchSize the number of rounds to pass at once; the last batch
+     *                  of a match may be smaller
+     */
+    public ListenerProxy(MatchListener listener, int batchSize) {
+        this.listener = listener;
+        this.batchSize = Math.max(batchSize, 1);
+        newBatch();
+    }
+
+    protected OutputStream getOutputStream() throws IOException {
+        return null;
+    }
+
+    public void writeHeader(MatchHeader header) {
+        listener.matchStarted(header);
+    }
+
+    public void writeRound(RoundDelta round) {
+        rounds.add(round);
+    }
+
+    public void writeStats(RoundStats roundStats) {
+        stats.add(roundStats);
+        if (rounds.size() >= batchSize)
+            flush();
+    }
+
+    public void writeObject(Object o) {
+        if (o instanceof GameStats)
+            gameStats = (GameStats) o;
+    }
+
+    public void writeFooter(MatchFooter footer) {
+        flush();
+        listener.matchFinished(gameStats, footer);
+        gameStats = null;
+    }
+
+    public void close() {
+        flush();
+    }
+
+    public boolean isLive() {
+        return false;
+    }
+
+    private void flush() {
+        if (rounds.isEmpty())
+            return;
+        List<RoundDelta> r = rounds;
+        List<RoundStats> s = stats;
+        newBatch();
+        listener.roundsCompleted(r, s);
+    }
+
+    private void newBatch() {
+        rounds = new ArrayList<RoundDelta>(batchSize);
+        stats = new ArrayList<RoundStats>(batchSize);
+    }
+}
@@ -0,0 +1,52 @@
+package battlecode.server.proxy;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class is a factory for streams that read match data back. It detects
+ * whether a match file is gzipped and whether it holds XML or binary match
+ * data, so callers don't need to know how the file was written.
+ *
+ * @see battlecode.serial.io.MappedMatchReader
+ */
+public class MatchInputFactory {
+
+    /**
+     * Opens a match file for reading.
+     *
+     * @param f the match file, gzipped or not, in XML or binary format
+     * @return a stream that reads the objects in the match file
+     * @throws IOException if the file could not be opened
+     */
+    public static ObjectInputStream createInput(File f) throws IOException {
+        return createInput(new FileInputStream(f));
+    }
+
+    /**
+     * Creates a stream that reads match data from another stream.
+     *
+     * @param stream the stream to read, gzipped or not, in XML or binary format
+     * @return a stream that reads the objects in the match data
+     * @throws IOException if the stream could not be read
+     */
+    public static ObjectInputStream createInput(InputStream stream) throws IOException {
+        InputStream in = new BufferedInputStream(stream, 1 << 16);
+        if (peek(in) == 0x1f8b)
+            in = new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16);
+        if (peek(in) == (ObjectStreamConstants.STREAM_MAGIC & 0xffff))
+            return new ObjectInputStream(in);
+        else
+            return new StreamingXmlInputStream(in);
+    }
+
+    /**
+     * @return the first two bytes of the stream, without consuming them
+     */
+    private static int peek(InputStream in) throws IOException {
+        in.mark(2);
+        int magic = (in.read() << 8) | in.read();
+        in.reset();
+        return magic;
+    }
+}
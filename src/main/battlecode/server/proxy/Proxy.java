@@ -3,6 +3,7 @@ package battlecode.server.proxy;
 import battlecode.serial.MatchFooter;
 import battlecode.serial.MatchHeader;
 import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundKeyframe;
 import battlecode.serial.RoundStats;
 
 import java.io.IOException;
@@ -116,4 +117,34 @@ public abstract class Proxy {
     public void writeStats(RoundStats stats) throws IOException {
         writeObject(stats);
     }
+
+    /**
+     * Writes a state keyframe to the recipient. Most recipients can rebuild
+     * the state from the round deltas, so by default keyframes are dropped.
+     *
+     * @param keyframe the keyframe to write
+     * @throws IOException if the recipient could not be written to
+     */
+    public void writeKeyframe(RoundKeyframe keyframe) throws IOException {
+    }
+
+    /**
+     * Determines whether someone is watching the match data as it is written.
+     * Matches are only paced to a target rate while a live proxy is attached.
+     *
+     * @return true if this proxy has a live recipient
+     */
+    public boolean isLive() {
+        return true;
+    }
+
+    /**
+     * Determines whether this proxy wants state keyframes. Keyframes are only
+     * computed if at least one proxy wants them.
+     *
+     * @return true if keyframes should be passed to writeKeyframe
+     */
+    public boolean needsKeyframes() {
+        return false;
+    }
 }
@@ -24,6 +24,19 @@ public class ProxyFactory {
             };
     }
 
+    /**
+     * Creates a Proxy that sends match data to any number of spectators
+     * connecting on the given port.
+     *
+     * @param port the port to listen on
+     * @return a new Proxy for sending match data to spectators
+     */
+    public static Proxy createSpectatorProxy(int port) {
+        Config options = Config.getGlobalConfig();
+        return new SpectatorProxy(port, options.getInt("bc.server.spectator-buffer"),
+                Boolean.parseBoolean(options.get("bc.server.output-xml")));
+    }
+
     /**
      * This method creates a Proxy for writing match data to a file.
      *
@@ -32,12 +45,26 @@ public class ProxyFactory {
      * @throws IOException if the Proxy could not be created
      */
     public static Proxy createProxyFromFile(String fileName) throws IOException {
-        if (Boolean.parseBoolean(Config.getGlobalConfig().get("bc.server.output-xml")))
+        if (Boolean.parseBoolean(Config.getGlobalConfig().get("bc.server.indexed-output")))
+            return new IndexedFileProxy(fileName);
+        else if (Boolean.parseBoolean(Config.getGlobalConfig().get("bc.server.output-xml")))
             return createXStreamProxyFromFile(fileName);
         else
             return new FileProxy(fileName);
     }
 
+    /**
+     * Creates a Proxy for writing match data to a plain binary file, whatever
+     * the output options say.
+     *
+     * @param fileName the name of the file to use for saving match data
+     * @return a new Proxy for writing match data to binary file
+     * @throws IOException if the Proxy could not be created
+     */
+    public static Proxy createBinaryProxyFromFile(String fileName) throws IOException {
+        return new FileProxy(fileName);
+    }
+
     /**
      * This method creates a Proxy for writing match data in a text format.
      *
@@ -50,7 +77,7 @@ public class ProxyFactory {
         return new FileProxy(fileName) {
 
             public OutputStream getOutputStream() throws IOException {
-                return XStreamProxy.getXStream().createObjectOutputStream(stream);
+                return new StreamingXmlOutputStream(stream);
             }
 
             public void writeObject(Object o) throws IOException {
@@ -0,0 +1,447 @@
+package battlecode.server.proxy;
+
+import battlecode.engine.signal.Signal;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundKeyframe;
+import battlecode.serial.RoundStats;
+import battlecode.serial.notification.Notification;
+import battlecode.server.Server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ * Sends match data to any number of spectators, who may connect at any time.
+ * <p/>
+ * Each object is serialized once, and the bytes are queued separately for
+ * every spectator. A single selector thread accepts connections and writes to
+ * the spectators without blocking, so a slow spectator never holds up the
+ * engine or the other spectators; one that falls too far behind is
+ * disconnected.
+ * <p/>
+ * A spectator that connects in the middle of a match first gets the match
+ * header, then the most recent state keyframe, then the rounds since that
+ * keyframe, and then the live rounds. The keyframe is sent as rounds, since
+ * that is all a viewer understands: empty rounds up to the keyframe's round,
+ * so that round numbers line up, and then one round that spawns every robot
+ * and mine and sets everything else the keyframe holds.
+ */
+public class SpectatorProxy extends Proxy implements Runnable {
+
+    /**
+     * How long spectators are given to receive the rest of the match after
+     * the proxy is closed.
+     */
+    private static final long LINGER_MILLIS = 5000;
+
+    /**
+     * A connected spectator and the data waiting to be sent to it.
+     */
+    private static class Spectator {
+
+        final SocketChannel channel;
+
+        final Queue<ByteBuffer> pending = new LinkedList<ByteBuffer>();
+
+        long pendingBytes;
+
+        Spectator(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final int port;
+
+    private final long bufferLimit;
+
+    private final boolean xml;
+
+    private ServerSocketChannel serverChannel;
+
+    private Selector selector;
+
+    private Thread thread;
+
+    private final List<Spectator> spectators = new ArrayList<Spectator>();
+
+    /**
+     * Set when there is new data for the selector thread to send.
+     */
+    private volatile boolean dirty;
+
+    private volatile boolean closing;
+
+    // The following are only used by the thread writing match data.
+
+    private ByteArrayOutputStream bytes;
+
+    private ObjectOutputStream encoder;
+
+    /**
+     * The start of every stream; sent to each spectator when it connects.
+     */
+    private byte[] streamHeader;
+
+    /**
+     * What a spectator needs to catch up with the current match. Guarded by
+     * this proxy's lock.
+     */
+    private final List<byte[]> catchUp = new ArrayList<byte[]>();
+
+    /**
+     * The number of catch-up entries written before the first round, which
+     * are kept when a keyframe replaces the rounds before it.
+     */
+    private int catchUpPrefix;
+
+    private boolean roundsStarted;
+
+    /**
+     * The number of rounds sent in the current match.
+     */
+    private int rounds;
+
+    /**
+     * The stats of the last round sent, which go with the rounds that stand
+     * in for a keyframe.
+     */
+    private RoundStats lastStats;
+
+    /**
+     * Creates a proxy that listens for spectators on the given port.
+     *
+     * @param port        the port to listen on
+     * @param bufferLimit the most bytes that may be waiting to be sent to one
+     *                    spectator before it is disconnected
+     * @param xml         whether to send XML rather than serialized objects
+     */
+    SpectatorProxy(int port, long bufferLimit, boolean xml) {
+        super();
+        this.port = port;
+        this.bufferLimit = bufferLimit;
+        this.xml = xml;
+    }
+
+    protected OutputStream getOutputStream() throws IOException {
+        return null;
+    }
+
+    public void open() throws IOException {
+        bytes = new ByteArrayOutputStream();
+        encoder = xml ? new StreamingXmlOutputStream(bytes) : new ObjectOutputStream(bytes);
+        encoder.flush();
+        streamHeader = bytes.toByteArray();
+        bytes.reset();
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        thread = new Thread(this, "spectator-server");
+        thread.setDaemon(true);
+        thread.start();
+        Server.say("accepting spectators on port " + port);
+    }
+
+    /**
+     * Stops accepting spectators and returns straight away. The spectators
+     * that are connected get up to {@link #LINGER_MILLIS} to receive the rest
+     * of the match before they are disconnected.
+     */
+    public void close() throws IOException {
+        encoder.close();
+        if (bytes.size() > 0)
+            broadcast(bytes.toByteArray(), false);
+        closing = true;
+        serverChannel.close();
+        selector.wakeup();
+
+        // Not a daemon, so that the end of the last match still gets out
+        // if the server exits right away.
+        Thread linger = new Thread("spectator-linger") {
+            public void run() {
+                try {
+                    thread.join(LINGER_MILLIS);
+                } catch (InterruptedException e) {
+                }
+                disconnectAll();
+            }
+        };
+        linger.start();
+    }
+
+    private void disconnectAll() {
+        synchronized (this) {
+            for (Spectator s : spectators) {
+                try {
+                    s.channel.close();
+                } catch (IOException e) {
+                }
+            }
+            spectators.clear();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            Server.warn("couldn't close the spectator server: " + e.getMessage());
+        }
+    }
+
+    public void writeObject(Object o) throws IOException {
+        if (o instanceof MatchHeader) {
+            synchronized (this) {
+                catchUp.clear();
+            }
+            catchUpPrefix = 0;
+            roundsStarted = false;
+            rounds = 0;
+            lastStats = null;
+        } else if (o instanceof RoundDelta) {
+            roundsStarted = true;
+            rounds++;
+        } else if (o instanceof RoundStats)
+            lastStats = (RoundStats) o;
+
+        byte[] chunk = encode(o);
+        boolean keep = !(o instanceof Notification);
+        broadcast(chunk, keep);
+        if (keep && !roundsStarted)
+            catchUpPrefix++;
+    }
+
+    /**
+     * Keyframes are only sent to spectators that connect later, in place of
+     * the rounds before the keyframe, which are forgotten.
+     */
+    public void writeKeyframe(RoundKeyframe keyframe) throws IOException {
+        byte[] chunk = encodeRounds(keyframe);
+        synchronized (this) {
+            catchUp.subList(catchUpPrefix, catchUp.size()).clear();
+            catchUp.add(chunk);
+        }
+    }
+
+    public boolean needsKeyframes() {
+        return true;
+    }
+
+    /**
+     * @return true if any spectators are connected
+     */
+    public synchronized boolean isLive() {
+        return !spectators.isEmpty();
+    }
+
+    /**
+     * Serializes an object on its own, so that it can be appended to any
+     * spectator's stream.
+     */
+    private byte[] encode(Object o) throws IOException {
+        encoder.reset();
+        encoder.writeObject(o);
+        encoder.flush();
+        byte[] chunk = bytes.toByteArray();
+        bytes.reset();
+        return chunk;
+    }
+
+    /**
+     * Serializes the rounds that stand in for a keyframe: empty rounds for
+     * all but the last round sent so far, and then the keyframe as a round.
+     * The empty rounds and their stats are written as one object each time,
+     * so they take a few bytes per round.
+     */
+    private byte[] encodeRounds(RoundKeyframe keyframe) throws IOException {
+        encoder.reset();
+        RoundDelta empty = new RoundDelta(new Signal[0]);
+        for (int i = 0; i < rounds - 1; i++) {
+            encoder.writeObject(empty);
+            if (lastStats != null)
+                encoder.writeObject(lastStats);
+        }
+        encoder.writeObject(keyframe.toRoundDelta());
+        if (lastStats != null)
+            encoder.writeObject(lastStats);
+        encoder.flush();
+        byte[] chunk = bytes.toByteArray();
+        bytes.reset();
+        return chunk;
+    }
+
+    /**
+     * Queues data for every connected spectator.
+     *
+     * @param keep whether spectators that connect later should get it too
+     */
+    private void broadcast(byte[] chunk, boolean keep) {
+        synchronized (this) {
+            if (keep)
+                catchUp.add(chunk);
+            for (Spectator s : spectators)
+                enqueue(s, chunk);
+        }
+        dirty = true;
+        selector.wakeup();
+    }
+
+    private void enqueue(Spectator s, byte[] chunk) {
+        synchronized (s) {
+            s.pending.add(ByteBuffer.wrap(chunk));
+            s.pendingBytes += chunk.length;
+        }
+    }
+
+    /**
+     * Runs the selector loop until the proxy is closed and every spectator
+     * has been sent everything.
+     */
+    public void run() {
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                if (closing && allSent())
+                    break;
+
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable())
+                        accept();
+                    else {
+                        Spectator s = (Spectator) key.attachment();
+                        if (key.isReadable())
+                            read(s);
+                        if (key.isValid() && key.isWritable())
+                            send(s);
+                    }
+                }
+
+                if (dirty) {
+                    dirty = false;
+                    updateInterest();
+                }
+                if (closing && allSent())
+                    break;
+            }
+        } catch (ClosedSelectorException e) {
+        } catch (IOException e) {
+            Server.warn("spectator server stopped: " + e.getMessage());
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        try {
+            channel = serverChannel.accept();
+        } catch (ClosedChannelException e) {
+            // closed while the connection was waiting
+            return;
+        }
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Spectator s = new Spectator(channel);
+        synchronized (this) {
+            enqueue(s, streamHeader);
+            for (byte[] chunk : catchUp)
+                enqueue(s, chunk);
+            spectators.add(s);
+        }
+        channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, s);
+        Server.say("spectator connected from " + channel.socket().getRemoteSocketAddress());
+    }
+
+    /**
+     * Spectators have nothing to say, so input is only read to notice when
+     * they disconnect.
+     */
+    private void read(Spectator s) {
+        ByteBuffer discard = ByteBuffer.allocate(256);
+        try {
+            if (s.channel.read(discard) < 0)
+                drop(s, "spectator disconnected");
+        } catch (IOException e) {
+            drop(s, "spectator disconnected: " + e.getMessage());
+        }
+    }
+
+    private void send(Spectator s) {
+        try {
+            synchronized (s) {
+                while (!s.pending.isEmpty()) {
+                    ByteBuffer buf = s.pending.peek();
+                    int n = s.channel.write(buf);
+                    s.pendingBytes -= n;
+                    if (buf.hasRemaining())
+                        break;
+                    s.pending.remove();
+                }
+                if (s.pending.isEmpty())
+                    s.channel.keyFor(selector).interestOps(SelectionKey.OP_READ);
+            }
+        } catch (IOException e) {
+            drop(s, "spectator disconnected: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Asks the selector to tell us when spectators with new data can be
+     * written to, and drops those that have fallen too far behind.
+     */
+    private void updateInterest() {
+        List<Spectator> current;
+        synchronized (this) {
+            current = new ArrayList<Spectator>(spectators);
+        }
+        for (Spectator s : current) {
+            boolean tooSlow;
+            boolean hasPending;
+            synchronized (s) {
+                tooSlow = s.pendingBytes > bufferLimit;
+                hasPending = !s.pending.isEmpty();
+            }
+            if (tooSlow)
+                drop(s, "dropping spectator that fell behind by more than " + bufferLimit + " bytes");
+            else if (hasPending) {
+                SelectionKey key = s.channel.keyFor(selector);
+                if (key != null && key.isValid())
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    private synchronized boolean allSent() {
+        for (Spectator s : spectators) {
+            synchronized (s) {
+                if (!s.pending.isEmpty())
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private void drop(Spectator s, String reason) {
+        synchronized (this) {
+            spectators.remove(s);
+        }
+        Object address = s.channel.socket().getRemoteSocketAddress();
+        try {
+            s.channel.close();
+        } catch (IOException e) {
+        }
+        Server.say(reason + " (" + address + ")");
+    }
+}
@@ -0,0 +1,389 @@
+package battlecode.server.proxy;
+
+import battlecode.common.*;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+import battlecode.world.signal.*;
+
+import javax.xml.stream.*;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads match data written by {@link StreamingXmlOutputStream} or by the
+ * XStream object output stream.
+ * <p/>
+ * Round deltas, round stats and the common signals are decoded by hand from
+ * the StAX event stream. Any other element is copied out as a standalone
+ * document and unmarshalled by XStream, so every object XStream can read can
+ * also be read here.
+ */
+public class StreamingXmlInputStream extends ObjectInputStream {
+
+    private static final int MOVEMENT = 1;
+    private static final int SET_DIRECTION = 2;
+    private static final int ENERGON_CHANGE = 3;
+    private static final int SHIELD_CHANGE = 4;
+    private static final int BYTECODES_USED = 5;
+    private static final int FLUX_CHANGE = 6;
+    private static final int ATTACK = 7;
+    private static final int INDICATOR_STRING = 8;
+    private static final int CONTROL_BITS = 9;
+    private static final int MINE = 10;
+    private static final int DEATH = 11;
+    private static final int SPAWN = 12;
+    private static final int MOVEMENT_BATCH = 13;
+    private static final int SET_DIRECTION_BATCH = 14;
+    private static final int ATTACK_BATCH = 15;
+    private static final int INDICATOR_STRING_BATCH = 16;
+
+    private static final Map<String, Integer> decoders = new HashMap<String, Integer>();
+
+    static {
+        decoders.put("sig.MovementSignal", MOVEMENT);
+        decoders.put("sig.SetDirectionSignal", SET_DIRECTION);
+        decoders.put("sig.EnergonChangeSignal", ENERGON_CHANGE);
+        decoders.put("sig.ShieldChangeSignal", SHIELD_CHANGE);
+        decoders.put("sig.BytecodesUsedSignal", BYTECODES_USED);
+        decoders.put("sig.FluxChangeSignal", FLUX_CHANGE);
+        decoders.put("sig.AttackSignal", ATTACK);
+        decoders.put("sig.IndicatorStringSignal", INDICATOR_STRING);
+        decoders.put("sig.ControlBitsSignal", CONTROL_BITS);
+        decoders.put("sig.MineSignal", MINE);
+        decoders.put("sig.DeathSignal", DEATH);
+        decoders.put("sig.SpawnSignal", SPAWN);
+        decoders.put("sig.MovementBatchSignal", MOVEMENT_BATCH);
+        decoders.put("sig.SetDirectionBatchSignal", SET_DIRECTION_BATCH);
+        decoders.put("sig.AttackBatchSignal", ATTACK_BATCH);
+        decoders.put("sig.IndicatorStringBatchSignal", INDICATOR_STRING_BATCH);
+    }
+
+    private final InputStream stream;
+
+    private final XMLStreamReader in;
+
+    private final XMLOutputFactory copyFactory = XMLOutputFactory.newInstance();
+
+    private final List<Signal> signals = new ArrayList<Signal>();
+
+    private boolean done;
+
+    public StreamingXmlInputStream(InputStream stream) throws IOException {
+        super();
+        this.stream = stream;
+        try {
+            in = XMLInputFactory.newInstance().createXMLStreamReader(stream);
+            // Move into the object-stream element.
+            if (in.nextTag() != XMLStreamConstants.START_ELEMENT)
+                throw new StreamCorruptedException("expected object-stream element");
+        } catch (XMLStreamException e) {
+            throw wrap(e);
+        }
+    }
+
+    protected Object readObjectOverride() throws IOException, ClassNotFoundException {
+        if (done)
+            throw new EOFException();
+        try {
+            if (in.nextTag() == XMLStreamConstants.END_ELEMENT) {
+                done = true;
+                throw new EOFException();
+            }
+            String name = in.getLocalName();
+            if ("ser.RoundDelta".equals(name))
+                return readRoundDelta();
+            else if ("ser.RoundStats".equals(name))
+                return readRoundStats();
+            else
+                return readFallback();
+        } catch (XMLStreamException e) {
+            throw wrap(e);
+        }
+    }
+
+    public int available() throws IOException {
+        return 0;
+    }
+
+    public void close() throws IOException {
+        try {
+            in.close();
+        } catch (XMLStreamException e) {
+            throw wrap(e);
+        }
+        stream.close();
+    }
+
+    private RoundDelta readRoundDelta() throws XMLStreamException, IOException {
+        signals.clear();
+        while (in.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if ("null".equals(in.getLocalName())) {
+                signals.add(null);
+                in.nextTag();
+            } else
+                signals.add(readSignal());
+        }
+        RoundDelta delta = new RoundDelta();
+        delta.setSignals(signals.toArray(new Signal[signals.size()]));
+        return delta;
+    }
+
+    private RoundStats readRoundStats() throws XMLStreamException, IOException {
+        double[] gathered = parseDoubles(attribute("gatheredPoints"));
+        double[] points = parseDoubles(attribute("points"));
+        in.nextTag();
+        return new RoundStats(points[0], points[1], gathered[0], gathered[1]);
+    }
+
+    /**
+     * Reads the signal at the current start element, leaving the reader at
+     * its end element.
+     */
+    private Signal readSignal() throws XMLStreamException, IOException {
+        Integer decoder = decoders.get(in.getLocalName());
+        if (decoder == null || in.getAttributeValue(null, "reference") != null)
+            return (Signal) readFallback();
+        Signal s;
+        switch (decoder) {
+            case MOVEMENT:
+                s = new MovementSignal(parseInt(attribute("robotID")),
+                        parseLocation(attribute("newLoc")),
+                        Boolean.parseBoolean(attribute("isMovingForward")),
+                        parseInt(attribute("delay")));
+                break;
+            case SET_DIRECTION:
+                s = new SetDirectionSignal(parseInt(attribute("robotID")),
+                        parseEnum(Direction.class, attribute("dir")));
+                break;
+            case ENERGON_CHANGE:
+                s = new EnergonChangeSignal(parseInts(attribute("robotIDs")),
+                        parseDoubles(attribute("energon")));
+                break;
+            case SHIELD_CHANGE:
+                s = new ShieldChangeSignal(parseInts(attribute("robotIDs")),
+                        parseDoubles(attribute("shield")));
+                break;
+            case BYTECODES_USED:
+                s = new BytecodesUsedSignal(parseInts(attribute("robotIDs")),
+                        parseInts(attribute("numBytecodes")));
+                break;
+            case FLUX_CHANGE:
+                if (attribute("robotIDs") != null)
+                    return (Signal) readFallback();
+                s = new FluxChangeSignal(parseDoubles(attribute("flux")));
+                break;
+            case ATTACK:
+                s = new AttackSignal(parseInt(attribute("robotID")),
+                        parseLocation(attribute("targetLoc")),
+                        parseEnum(RobotLevel.class, attribute("targetHeight")));
+                break;
+            case INDICATOR_STRING:
+                s = new IndicatorStringSignal(parseInt(attribute("robotID")),
+                        parseInt(attribute("stringIndex")),
+                        attribute("newString"));
+                break;
+            case CONTROL_BITS:
+                s = new ControlBitsSignal(parseInt(attribute("robotID")),
+                        Long.parseLong(attribute("controlBits")));
+                break;
+            case MINE:
+                s = new MineSignal(parseLocation(attribute("mineLoc")),
+                        parseEnum(Team.class, attribute("mineTeam")),
+                        Boolean.parseBoolean(attribute("birth")));
+                break;
+            case DEATH:
+                s = new DeathSignal(parseInt(attribute("objectID")));
+                break;
+            case SPAWN:
+                s = new SpawnSignal(parseInt(attribute("robotID")),
+                        parseInt(attribute("parentID")),
+                        parseLocation(attribute("loc")),
+                        parseEnum(RobotType.class, attribute("type")),
+                        parseEnum(Team.class, attribute("team")));
+                break;
+            case MOVEMENT_BATCH:
+                s = new MovementBatchSignal(parseInts(attribute("robotIDs")),
+                        parseInts(attribute("xs")),
+                        parseInts(attribute("ys")),
+                        parseInts(attribute("codes")));
+                break;
+            case SET_DIRECTION_BATCH:
+                s = new SetDirectionBatchSignal(parseInts(attribute("robotIDs")),
+                        parseInts(attribute("dirs")));
+                break;
+            case ATTACK_BATCH:
+                s = new AttackBatchSignal(parseInts(attribute("robotIDs")),
+                        parseInts(attribute("xs")),
+                        parseInts(attribute("ys")),
+                        parseInts(attribute("heights")));
+                break;
+            case INDICATOR_STRING_BATCH:
+                s = new IndicatorStringBatchSignal(parseInts(attribute("robotIDs")),
+                        parseInts(attribute("stringIndices")),
+                        readStrings());
+                break;
+            default:
+                throw new StreamCorruptedException("unknown decoder " + decoder);
+        }
+        if (in.nextTag() != XMLStreamConstants.END_ELEMENT)
+            throw new StreamCorruptedException("unexpected child of " + in.getLocalName());
+        return s;
+    }
+
+    /**
+     * Reads a child element holding a string array, leaving the reader at
+     * its end element.
+     */
+    private String[] readStrings() throws XMLStreamException, IOException {
+        if (in.nextTag() != XMLStreamConstants.START_ELEMENT)
+            throw new StreamCorruptedException("expected a string array");
+        List<String> strings = new ArrayList<String>();
+        while (in.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if ("null".equals(in.getLocalName())) {
+                strings.add(null);
+                in.nextTag();
+            } else
+                strings.add(in.getElementText());
+        }
+        return strings.toArray(new String[strings.size()]);
+    }
+
+    /**
+     * Copies the element at the current position into a standalone document
+     * and lets XStream unmarshal it.
+     */
+    private Object readFallback() throws XMLStreamException, IOException {
+        StringWriter buffer = new StringWriter();
+        XMLStreamWriter copy = copyFactory.createXMLStreamWriter(buffer);
+        int depth = 0;
+        do {
+            switch (in.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    copy.writeStartElement(in.getLocalName());
+                    for (int i = 0; i < in.getAttributeCount(); i++)
+                        copy.writeAttribute(in.getAttributeLocalName(i), in.getAttributeValue(i));
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    copy.writeEndElement();
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    copy.writeCharacters(in.getText());
+                    break;
+            }
+            if (depth > 0)
+                in.next();
+        } while (depth > 0);
+        copy.close();
+        try {
+            return XStreamProxy.getXStream().fromXML(buffer.toString());
+        } catch (RuntimeException e) {
+            IOException ioe = new StreamCorruptedException(e.getMessage());
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+    private String attribute(String name) {
+        return in.getAttributeValue(null, name);
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> cls, String value) {
+        return value == null ? null : Enum.valueOf(cls, value);
+    }
+
+    private static MapLocation parseLocation(String value) throws StreamCorruptedException {
+        if (value == null)
+            return null;
+        int comma = value.indexOf(',');
+        if (comma < 0)
+            throw new StreamCorruptedException("Invalid MapLocation");
+        return new MapLocation(parseInt(value, 0, comma), parseInt(value, comma + 1, value.length()));
+    }
+
+    private static int parseInt(String value) throws StreamCorruptedException {
+        if (value == null)
+            return 0;
+        return parseInt(value, 0, value.length());
+    }
+
+    /**
+     * Parses a decimal integer from part of a string without allocating a
+     * substring.
+     */
+    private static int parseInt(String value, int start, int end) throws StreamCorruptedException {
+        boolean negative = false;
+        if (start < end && value.charAt(start) == '-') {
+            negative = true;
+            start++;
+        }
+        if (start >= end)
+            throw new StreamCorruptedException("Invalid int: " + value);
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                throw new StreamCorruptedException("Invalid int: " + value);
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    private static int count(String value) {
+        if (value.length() == 0)
+            return 0;
+        int n = 1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == ',')
+                n++;
+        }
+        return n;
+    }
+
+    private static int[] parseInts(String value) throws StreamCorruptedException {
+        if (value == null)
+            return null;
+        int[] result = new int[count(value)];
+        int start = 0;
+        for (int i = 0; i < result.length; i++) {
+            int end = value.indexOf(',', start);
+            if (end < 0)
+                end = value.length();
+            result[i] = parseInt(value, start, end);
+            start = end + 1;
+        }
+        return result;
+    }
+
+    private static double[] parseDoubles(String value) throws StreamCorruptedException {
+        if (value == null)
+            return null;
+        double[] result = new double[count(value)];
+        int start = 0;
+        try {
+            for (int i = 0; i < result.length; i++) {
+                int end = value.indexOf(',', start);
+                if (end < 0)
+                    end = value.length();
+                result[i] = Double.parseDouble(value.substring(start, end));
+                start = end + 1;
+            }
+        } catch (NumberFormatException e) {
+            throw new StreamCorruptedException("Invalid double []: " + value);
+        }
+        return result;
+    }
+
+    private static IOException wrap(XMLStreamException e) {
+        IOException ioe = new IOException(e.getMessage());
+        ioe.initCause(e);
+        return ioe;
+    }
+}
@@ -0,0 +1,346 @@
+package battlecode.server.proxy;
+
+import battlecode.common.MapLocation;
+import battlecode.common.Team;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+import battlecode.world.signal.*;
+import com.thoughtworks.xstream.io.xml.PrettyPrintWriter;
+
+import java.io.*;
+
+/**
+ * Writes match data byte for byte as the object output stream created by
+ * {@link XStreamProxy#getXStream()} does, but without reflection.
+ * <p/>
+ * Round deltas, round stats and every signal with public accessors are
+ * written by hand-written emitters directly to the same pretty printing
+ * writer XStream uses, so the indentation, escaping and empty elements come
+ * out the same, and primitive arrays are formatted without boxing their
+ * elements. Anything else (match headers, footers, stats, notifications,
+ * and the few signals without accessors) is marshalled by XStream onto that
+ * writer.
+ */
+public class StreamingXmlOutputStream extends ObjectOutputStream {
+
+    private final PrettyPrintWriter out;
+
+    private final StringBuilder builder = new StringBuilder();
+
+    public StreamingXmlOutputStream(OutputStream stream) throws IOException {
+        super();
+        out = new PrettyPrintWriter(new OutputStreamWriter(stream, "UTF-8"));
+        out.startNode("object-stream");
+    }
+
+    protected void writeObjectOverride(Object o) throws IOException {
+        if (o == null) {
+            out.startNode("null");
+            out.endNode();
+        } else if (o instanceof RoundDelta)
+            writeRoundDelta((RoundDelta) o);
+        else if (o instanceof RoundStats)
+            writeRoundStats((RoundStats) o);
+        else
+            XStreamProxy.getXStream().marshal(o, out);
+    }
+
+    /**
+     * XStream object streams do not support reset, so neither does this one.
+     */
+    public void reset() {
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        out.endNode();
+        out.close();
+    }
+
+    private void writeRoundDelta(RoundDelta delta) {
+        out.startNode("ser.RoundDelta");
+        Signal[] signals = delta.getSignals();
+        if (signals != null) {
+            for (Signal s : signals) {
+                if (s == null) {
+                    out.startNode("null");
+                    out.endNode();
+                } else
+                    writeSignal(s);
+            }
+        }
+        out.endNode();
+    }
+
+    private void writeRoundStats(RoundStats stats) {
+        out.startNode("ser.RoundStats");
+        builder.setLength(0);
+        builder.append(stats.getGatheredPoints(Team.A)).append(',')
+                .append(stats.getGatheredPoints(Team.B));
+        out.addAttribute("gatheredPoints", builder.toString());
+        builder.setLength(0);
+        builder.append(stats.getPoints(Team.A)).append(',')
+                .append(stats.getPoints(Team.B));
+        out.addAttribute("points", builder.toString());
+        out.endNode();
+    }
+
+    /**
+     * Writes a single signal. The most frequent signals are checked first;
+     * each branch starts the signal's element and adds its attributes and
+     * children, and the element is ended below.
+     */
+    private void writeSignal(Signal s) {
+        if (s instanceof MovementSignal) {
+            MovementSignal m = (MovementSignal) s;
+            out.startNode("sig.MovementSignal");
+            attribute("robotID", m.getRobotID());
+            attribute("newLoc", m.getNewLoc());
+            attribute("isMovingForward", m.isMovingForward());
+            attribute("delay", m.getDelay());
+        } else if (s instanceof SetDirectionSignal) {
+            SetDirectionSignal d = (SetDirectionSignal) s;
+            out.startNode("sig.SetDirectionSignal");
+            attribute("robotID", d.getRobotID());
+            attribute("dir", d.getDirection());
+        } else if (s instanceof EnergonChangeSignal) {
+            EnergonChangeSignal e = (EnergonChangeSignal) s;
+            out.startNode("sig.EnergonChangeSignal");
+            attribute("robotIDs", e.getRobotIDs());
+            attribute("energon", e.getEnergon());
+        } else if (s instanceof ShieldChangeSignal) {
+            ShieldChangeSignal e = (ShieldChangeSignal) s;
+            out.startNode("sig.ShieldChangeSignal");
+            attribute("robotIDs", e.getRobotIDs());
+            attribute("shield", e.getShield());
+        } else if (s instanceof BytecodesUsedSignal) {
+            BytecodesUsedSignal b = (BytecodesUsedSignal) s;
+            out.startNode("sig.BytecodesUsedSignal");
+            attribute("robotIDs", b.getRobotIDs());
+            attribute("numBytecodes", b.getNumBytecodes());
+        } else if (s instanceof FluxChangeSignal) {
+            FluxChangeSignal f = (FluxChangeSignal) s;
+            out.startNode("sig.FluxChangeSignal");
+            attribute("robotIDs", f.getRobotIDs());
+            attribute("flux", f.getFlux());
+        } else if (s instanceof AttackSignal) {
+            AttackSignal a = (AttackSignal) s;
+            out.startNode("sig.AttackSignal");
+            attribute("robotID", a.getRobotID());
+            attribute("targetLoc", a.getTargetLoc());
+            attribute("targetHeight", a.getTargetHeight());
+        } else if (s instanceof IndicatorStringSignal) {
+            IndicatorStringSignal i = (IndicatorStringSignal) s;
+            out.startNode("sig.IndicatorStringSignal");
+            attribute("robotID", i.getRobotID());
+            attribute("stringIndex", i.getStringIndex());
+            attribute("newString", i.getNewString());
+        } else if (s instanceof MovementBatchSignal) {
+            MovementBatchSignal m = (MovementBatchSignal) s;
+            out.startNode("sig.MovementBatchSignal");
+            attribute("robotIDs", m.getRobotIDs());
+            attribute("xs", m.getXs());
+            attribute("ys", m.getYs());
+            attribute("codes", m.getCodes());
+        } else if (s instanceof SetDirectionBatchSignal) {
+            SetDirectionBatchSignal d = (SetDirectionBatchSignal) s;
+            out.startNode("sig.SetDirectionBatchSignal");
+            attribute("robotIDs", d.getRobotIDs());
+            attribute("dirs", d.getDirs());
+        } else if (s instanceof AttackBatchSignal) {
+            AttackBatchSignal a = (AttackBatchSignal) s;
+            out.startNode("sig.AttackBatchSignal");
+            attribute("robotIDs", a.getRobotIDs());
+            attribute("xs", a.getXs());
+            attribute("ys", a.getYs());
+            attribute("heights", a.getHeights());
+        } else if (s instanceof IndicatorStringBatchSignal) {
+            IndicatorStringBatchSignal i = (IndicatorStringBatchSignal) s;
+            out.startNode("sig.IndicatorStringBatchSignal");
+            attribute("robotIDs", i.getRobotIDs());
+            attribute("stringIndices", i.getStringIndices());
+            out.startNode("newStrings");
+            for (String string : i.getNewStrings()) {
+                if (string == null)
+                    out.startNode("null");
+                else {
+                    out.startNode("string");
+                    out.setValue(string);
+                }
+                out.endNode();
+            }
+            out.endNode();
+        } else if (s instanceof ControlBitsSignal) {
+            ControlBitsSignal c = (ControlBitsSignal) s;
+            out.startNode("sig.ControlBitsSignal");
+            attribute("robotID", c.getRobotID());
+            out.addAttribute("controlBits", Long.toString(c.getControlBits()));
+        } else if (s instanceof MineSignal) {
+            MineSignal m = (MineSignal) s;
+            out.startNode("sig.MineSignal");
+            attribute("mineLoc", m.getMineLoc());
+            attribute("mineTeam", m.getMineTeam());
+            attribute("birth", m.shouldAdd());
+        } else if (s instanceof DeathSignal) {
+            out.startNode("sig.DeathSignal");
+            attribute("objectID", ((DeathSignal) s).getObjectID());
+        } else if (s instanceof SpawnSignal) {
+            SpawnSignal sp = (SpawnSignal) s;
+            out.startNode("sig.SpawnSignal");
+            attribute("robotID", sp.getRobotID());
+            attribute("parentID", sp.getParentID());
+            attribute("loc", sp.getLoc());
+            attribute("type", sp.getType());
+            attribute("team", sp.getTeam());
+        } else if (s instanceof CaptureSignal) {
+            CaptureSignal c = (CaptureSignal) s;
+            out.startNode("sig.CaptureSignal");
+            attribute("robotID", c.getRobotID());
+            attribute("parentID", c.getParentID());
+            attribute("loc", c.getLoc());
+            attribute("type", c.getType());
+            attribute("team", c.getTeam());
+            attribute("hasHandling", c.getHandling());
+        } else if (s instanceof BroadcastSignal) {
+            out.startNode("sig.BroadcastSignal");
+            attribute("robotID", ((BroadcastSignal) s).getRobotID());
+        } else if (s instanceof EnergonTransferSignal) {
+            EnergonTransferSignal e = (EnergonTransferSignal) s;
+            out.startNode("sig.EnergonTransferSignal");
+            attribute("robotID", e.getRobotID());
+            attribute("targetLoc", e.getTargetLoc());
+            attribute("targetHeight", e.getTargetHeight());
+            attribute("amount", e.getAmount());
+        } else if (s instanceof TransferFluxSignal) {
+            TransferFluxSignal t = (TransferFluxSignal) s;
+            out.startNode("sig.TransferFluxSignal");
+            attribute("fromID", t.fromID);
+            attribute("toID", t.toID);
+            attribute("amount", t.amount);
+        } else if (s instanceof MovementOverrideSignal) {
+            MovementOverrideSignal m = (MovementOverrideSignal) s;
+            out.startNode("sig.MovementOverrideSignal");
+            attribute("robotID", m.getRobotID());
+            attribute("newLoc", m.getNewLoc());
+        } else if (s instanceof HatSignal) {
+            HatSignal h = (HatSignal) s;
+            out.startNode("sig.HatSignal");
+            attribute("robotID", h.robotID);
+            attribute("hat", h.hat);
+        } else if (s instanceof MatchObservationSignal) {
+            MatchObservationSignal m = (MatchObservationSignal) s;
+            out.startNode("sig.MatchObservationSignal");
+            attribute("robotID", m.getRobotID());
+            attribute("observation", m.getObservation());
+        } else if (s instanceof NodeBirthSignal) {
+            out.startNode("sig.NodeBirthSignal");
+            attribute("location", ((NodeBirthSignal) s).location);
+        } else if (s instanceof ResearchSignal) {
+            ResearchSignal r = (ResearchSignal) s;
+            out.startNode("sig.ResearchSignal");
+            attribute("robotID", r.getRobotID());
+            attribute("team", r.getTeam());
+            if (r.getUpgrade() != null) {
+                out.startNode("upgrade");
+                out.setValue(r.getUpgrade().name());
+                out.endNode();
+            }
+        } else if (s instanceof RegenSignal) {
+            out.startNode("sig.RegenSignal");
+            attribute("robotID", ((RegenSignal) s).robotID);
+        } else if (s instanceof ShieldSignal) {
+            out.startNode("sig.ShieldSignal");
+            attribute("robotID", ((ShieldSignal) s).robotID);
+        } else if (s instanceof IronShieldSignal) {
+            out.startNode("sig.IronShieldSignal");
+            attribute("robotID", ((IronShieldSignal) s).robotID);
+        } else if (s instanceof ScanSignal) {
+            out.startNode("sig.ScanSignal");
+            attribute("robotID", ((ScanSignal) s).robotID);
+        } else if (s instanceof TurnOffSignal) {
+            TurnOffSignal t = (TurnOffSignal) s;
+            out.startNode("sig.TurnOffSignal");
+            attribute("robotID", t.robotID);
+            attribute("voluntary", t.voluntary);
+        } else if (s instanceof TurnOnSignal) {
+            TurnOnSignal t = (TurnOnSignal) s;
+            out.startNode("sig.TurnOnSignal");
+            attribute("robotIDs", t.robotIDs);
+            attribute("sourceID", t.sourceID);
+            attribute("broadcast", t.broadcast);
+        } else if (s instanceof LoadSignal) {
+            LoadSignal l = (LoadSignal) s;
+            out.startNode("sig.LoadSignal");
+            attribute("transportID", l.transportID);
+            attribute("passengerID", l.passengerID);
+        } else if (s instanceof UnloadSignal) {
+            UnloadSignal u = (UnloadSignal) s;
+            out.startNode("sig.UnloadSignal");
+            attribute("transportID", u.transportID);
+            attribute("passengerID", u.passengerID);
+            attribute("unloadLoc", u.unloadLoc);
+        } else {
+            XStreamProxy.getXStream().marshal(s, out);
+            return;
+        }
+        out.endNode();
+    }
+
+    private void attribute(String name, int value) {
+        out.addAttribute(name, Integer.toString(value));
+    }
+
+    private void attribute(String name, double value) {
+        out.addAttribute(name, Double.toString(value));
+    }
+
+    private void attribute(String name, boolean value) {
+        out.addAttribute(name, value ? "true" : "false");
+    }
+
+    private void attribute(String name, String value) {
+        if (value != null)
+            out.addAttribute(name, value);
+    }
+
+    private void attribute(String name, Enum<?> value) {
+        if (value != null)
+            out.addAttribute(name, value.name());
+    }
+
+    private void attribute(String name, MapLocation value) {
+        if (value != null) {
+            builder.setLength(0);
+            builder.append(value.x).append(',').append(value.y);
+            out.addAttribute(name, builder.toString());
+        }
+    }
+
+    private void attribute(String name, int[] values) {
+        if (values != null) {
+            builder.setLength(0);
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0)
+                    builder.append(',');
+                builder.append(values[i]);
+            }
+            out.addAttribute(name, builder.toString());
+        }
+    }
+
+    private void attribute(String name, double[] values) {
+        if (values != null) {
+            builder.setLength(0);
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0)
+                    builder.append(',');
+                builder.append(values[i]);
+            }
+            out.addAttribute(name, builder.toString());
+        }
+    }
+}
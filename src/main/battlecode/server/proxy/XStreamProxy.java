@@ -20,6 +20,9 @@ import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.zip.GZIPInputStream;
 
 public class XStreamProxy extends Proxy {
@@ -288,7 +291,7 @@ public class XStreamProxy extends Proxy {
     }
 
     protected OutputStream getOutputStream() throws IOException {
-        return getXStream().createObjectOutputStream(stream);
+        return new StreamingXmlOutputStream(stream);
     }
 
     // In "compute and view match synchronously" mode, we can get
@@ -308,13 +311,87 @@ public class XStreamProxy extends Proxy {
     static private final int EX_IOERR = 74;
 
     public static void usage() {
-        System.err.println("Usage: XStreamProxy [-z] [file]");
+        System.err.println("Usage: XStreamProxy [-z] [-b] [file]");
         System.exit(EX_USAGE);
     }
 
+    /**
+     * Writes the given objects to an XML stream.
+     *
+     * @param objects   the objects to write
+     * @param streaming whether to use the streaming writer or XStream
+     * @return the XML bytes
+     */
+    static byte[] toXML(List<Object> objects, boolean streaming) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = streaming ? new StreamingXmlOutputStream(bytes)
+                : getXStream().createObjectOutputStream(bytes);
+        for (Object o : objects)
+            output.writeObject(o);
+        output.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads every object from an XML stream.
+     *
+     * @param xml       the XML bytes
+     * @param streaming whether to use the streaming reader or XStream
+     * @return the objects read
+     */
+    static List<Object> fromXML(byte[] xml, boolean streaming) throws IOException, ClassNotFoundException {
+        InputStream bytes = new ByteArrayInputStream(xml);
+        ObjectInputStream input = streaming ? new StreamingXmlInputStream(bytes)
+                : getXStream().createObjectInputStream(bytes);
+        List<Object> objects = new ArrayList<Object>();
+        try {
+            while (true)
+                objects.add(input.readObject());
+        } catch (EOFException e) {
+            input.close();
+        }
+        return objects;
+    }
+
+    /**
+     * Compares the throughput of XStream and the streaming XML transcoder on
+     * the given match data, and checks that the two write the same bytes.
+     */
+    public static void benchmark(List<Object> objects) throws IOException, ClassNotFoundException {
+        final int warmup = 3;
+        final int iterations = 10;
+        String[] names = {"xstream", "streaming"};
+        byte[][] xml = new byte[2][];
+        for (int k = 0; k < 2; k++) {
+            boolean streaming = k == 1;
+            xml[k] = toXML(objects, streaming);
+            for (int i = 0; i < warmup; i++) {
+                toXML(objects, streaming);
+                fromXML(xml[k], streaming);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                toXML(objects, streaming);
+            double writeTime = (System.nanoTime() - start) / 1e9 / iterations;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                fromXML(xml[k], streaming);
+            double readTime = (System.nanoTime() - start) / 1e9 / iterations;
+
+            double mb = xml[k].length / (1024.0 * 1024.0);
+            System.err.println(String.format("%-9s write %8.2f MB/s %10.0f objects/s, read %8.2f MB/s %10.0f objects/s",
+                    names[k], mb / writeTime, objects.size() / writeTime,
+                    mb / readTime, objects.size() / readTime));
+        }
+        System.err.println("byte identical: " + Arrays.equals(xml[1], xml[0]));
+    }
+
     public static void main(String[] args) {
         Options options = new Options();
         options.addOption("z", "gzip", false, "open a gzip compressed file");
+        options.addOption("b", "benchmark", false, "compare XStream and streaming transcoder throughput");
         CommandLine cl = null;
         try {
             cl = new GnuParser().parse(options, args);
@@ -324,24 +401,35 @@ public class XStreamProxy extends Proxy {
         }
         XStreamProxy proxy = null;
         try {
-            InputStream stream;
+            ObjectInputStream input;
             switch (cl.getArgs().length) {
                 case 0:
-                    stream = System.in;
+                    InputStream stream = System.in;
+                    if (cl.hasOption('z'))
+                        stream = new GZIPInputStream(stream);
+                    input = new ObjectInputStream(new BufferedInputStream(stream));
                     break;
                 case 1:
-                    stream = new FileInputStream(cl.getArgs()[0]);
+                    // detects gzip by itself
+                    input = MatchInputFactory.createInput(new File(cl.getArgs()[0]));
                     break;
                 default:
                     usage();
                     return;
             }
-            if (cl.hasOption('z'))
-                stream = new GZIPInputStream(stream);
-            proxy = new XStreamProxy(System.out);
+            if (cl.hasOption('b')) {
+                List<Object> objects = new ArrayList<Object>();
+                try {
+                    while (true)
+                        objects.add(input.readObject());
+                } catch (EOFException e) {
+                    benchmark(objects);
+                }
+                return;
+            }
+            proxy = new XStreamProxy(new BufferedOutputStream(System.out));
             System.out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
             proxy.open();
-            ObjectInputStream input = new ObjectInputStream(stream);
             while (true) {
                 proxy.writeObject(input.readObject());
             }
@@ -0,0 +1,265 @@
+package battlecode.tournament;
+
+import battlecode.serial.MatchResult;
+
+import java.io.*;
+import java.util.Properties;
+
+/**
+ * A series of matches between two teams, run by one worker JVM so that team
+ * memory carries over from one match to the next.
+ */
+public class MatchJob {
+
+    private final String id;
+
+    private final String teamA;
+
+    private final String teamB;
+
+    private final String[] maps;
+
+    private final int bestOf;
+
+    private final File dir;
+
+    private int attempts;
+
+    private MatchResult[] results;
+
+    private String failure;
+
+    /**
+     * Options for this job that take precedence over everything else.
+     */
+    private final Properties overrides = new Properties();
+
+    private boolean cancelled;
+
+    private Process process;
+
+    private long startTime, endTime;
+
+    /**
+     * @param id     a name for the job, unique within the tournament
+     * @param teamA  the team that plays as team A
+     * @param teamB  the team that plays as team B
+     * @param maps   the maps to play, in order
+     * @param bestOf the length of the series
+     * @param dir    where to write the job's files
+     */
+    public MatchJob(String id, String teamA, String teamB, String[] maps,
+                    int bestOf, File dir) {
+        this.id = id;
+        this.teamA = teamA;
+        this.teamB = teamB;
+        this.maps = maps;
+        this.bestOf = bestOf;
+        this.dir = dir;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTeamA() {
+        return teamA;
+    }
+
+    public String getTeamB() {
+        return teamB;
+    }
+
+    public String[] getMaps() {
+        return maps;
+    }
+
+    public int getBestOf() {
+        return bestOf;
+    }
+
+    /**
+     * @return the match file the worker saves the series to
+     */
+    public File getMatchFile() {
+        return new File(dir, id + ".rms");
+    }
+
+    /**
+     * @return the file the worker writes the match results to
+     */
+    public File getResultFile() {
+        return new File(dir, id + ".result");
+    }
+
+    /**
+     * @return the file the worker's output is logged to
+     */
+    public File getLogFile() {
+        return new File(dir, id + ".log");
+    }
+
+    /**
+     * @return the configuration file the worker is started with
+     */
+    public File getConfigFile() {
+        return new File(dir, id + ".conf");
+    }
+
+    /**
+     * @return the number of times this job has been started
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    void attempt() {
+        attempts++;
+    }
+
+    /**
+     * @return the results of the series, or null if the job hasn't finished
+     *         or failed
+     */
+    public MatchResult[] getResults() {
+        return results;
+    }
+
+    void setResults(MatchResult[] results) {
+        this.results = results;
+    }
+
+    /**
+     * @return why the job failed, or null if it didn't
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    void setFailure(String failure) {
+        this.failure = failure;
+    }
+
+    /**
+     * Sets an option for this job alone.
+     */
+    public void setOption(String key, String value) {
+        overrides.setProperty(key, value);
+    }
+
+    /**
+     * Stops the job: it won't be started if it hasn't been, and its worker is
+     * killed if it's running.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        if (process != null)
+            process.destroy();
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Remembers the worker running this job, so that it can be cancelled.
+     */
+    synchronized void setProcess(Process process) {
+        this.process = process;
+        if (cancelled && process != null)
+            process.destroy();
+    }
+
+    /**
+     * @return how long the job's workers ran, in milliseconds
+     */
+    public long getSimulationTime() {
+        return endTime - startTime;
+    }
+
+    /**
+     * @return when the job's first worker started, or 0 if none has
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    void setTimes(long startTime, long endTime) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    /**
+     * Builds the worker's configuration: the base configuration, the
+     * tournament's match options, the options for this series, and the
+     * options set for this job, in order of precedence.
+     *
+     * @param base    the configuration file from the manifest, or null
+     * @param options the bc.* options from the manifest
+     */
+    Properties buildConfig(String base, Properties options) throws IOException {
+        Properties config = new Properties();
+        if (base != null) {
+            InputStream in = new FileInputStream(base);
+            try {
+                config.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        config.putAll(options);
+        config.setProperty("bc.server.mode", "headless");
+        config.setProperty("bc.dialog.skip", "true");
+        config.setProperty("bc.game.team-a", teamA);
+        config.setProperty("bc.game.team-b", teamB);
+        StringBuilder mapList = new StringBuilder();
+        for (String map : maps) {
+            if (mapList.length() > 0)
+                mapList.append(',');
+            mapList.append(map);
+        }
+        config.setProperty("bc.game.maps", mapList.toString());
+        config.setProperty("bc.server.best-of", Integer.toString(bestOf));
+        config.setProperty("bc.server.save-file", getMatchFile().getPath());
+        config.setProperty("bc.server.result-file", getResultFile().getPath());
+        config.putAll(overrides);
+        return config;
+    }
+
+    /**
+     * Writes the worker's configuration file.
+     */
+    void writeConfig(Properties config) throws IOException {
+        dir.mkdirs();
+        OutputStream out = new FileOutputStream(getConfigFile());
+        try {
+            config.store(out, "series " + id);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the results the worker wrote.
+     *
+     * @return the results, or null if the worker didn't write any
+     */
+    MatchResult[] readResults() throws IOException {
+        File file = getResultFile();
+        if (!file.exists())
+            return null;
+        ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return (MatchResult[]) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            in.close();
+        }
+    }
+
+    public String toString() {
+        return id + " (" + teamA + " vs. " + teamB + ")";
+    }
+}
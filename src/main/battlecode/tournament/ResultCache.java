@@ -0,0 +1,294 @@
+package battlecode.tournament;
+
+import battlecode.serial.MatchResult;
+import battlecode.server.Config;
+import battlecode.world.GameWorldFactory;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Stores the results and match files of finished series, so that a series
+ * that has been played before is not simulated again.
+ * <p/>
+ * The engine is deterministic given the players' class files, the maps (which
+ * include the random seed), the starting team memory and the engine, so a
+ * series is keyed by a hash of the class files in both teams' packages, the
+ * map files in order, the length of the series, the engine version, every
+ * bc.engine.* and bc.game.* option that can change how a match plays out and
+ * every bc.server.* option that changes what is written to the match file.
+ * <p/>
+ * Each entry is a pair of files in the cache directory named after the key:
+ * the serialized MatchResult array and the match file.
+ */
+public class ResultCache {
+
+    /**
+     * Options that only change what is logged or how fast the engine runs.
+     */
+    private static final Set<String> IGNORED_OPTIONS = new HashSet<String>(Arrays.asList(
+            "bc.engine.silence-a", "bc.engine.silence-b", "bc.engine.gc",
+            "bc.engine.gc-rounds",
+            "bc.game.team-a", "bc.game.team-b", "bc.game.maps", "bc.game.map-path"));
+
+    /**
+     * Server options that change the format or contents of the match file.
+     */
+    private static final Set<String> MATCH_FILE_OPTIONS = new HashSet<String>(Arrays.asList(
+            "bc.server.output-xml", "bc.server.indexed-output",
+            "bc.server.keyframe-interval", "bc.server.signal-compactor"));
+
+    private final File dir;
+
+    private final String[] classPaths;
+
+    /**
+     * The content hashes of teams that have been looked at already.
+     */
+    private final Map<String, String> teamHashes = new HashMap<String, String>();
+
+    private String engineHash;
+
+    public ResultCache(File dir) {
+        this.dir = dir;
+        classPaths = System.getProperty("java.class.path").split(File.pathSeparator);
+        dir.mkdirs();
+    }
+
+    /**
+     * Computes the cache key of a series.
+     *
+     * @param job    the series
+     * @param config the configuration the series would be run with
+     * @return the key, as a hex string
+     */
+    public synchronized String key(MatchJob job, Properties config) throws IOException {
+        MessageDigest digest = newDigest();
+        update(digest, "engine " + engineHash());
+        update(digest, "team-a " + teamHash(job.getTeamA()));
+        update(digest, "team-b " + teamHash(job.getTeamB()));
+        String mapPath = config.getProperty("bc.game.map-path", "maps");
+        for (String map : job.getMaps())
+            update(digest, "map " + fileHash(GameWorldFactory.mapFile(map, mapPath)));
+        update(digest, "best-of " + job.getBestOf());
+
+        List<String> keys = new ArrayList<String>(config.stringPropertyNames());
+        Collections.sort(keys);
+        for (String key : keys) {
+            if ((key.startsWith("bc.engine.") || key.startsWith("bc.game."))
+                    && !IGNORED_OPTIONS.contains(key) || MATCH_FILE_OPTIONS.contains(key))
+                update(digest, key + "=" + config.getProperty(key));
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Looks up a series.
+     *
+     * @return the stored results, or null if the series isn't in the cache
+     */
+    public MatchResult[] get(String key) {
+        File file = resultFile(key);
+        if (!file.exists() || !matchFile(key).exists())
+            return null;
+        try {
+            ObjectInputStream in = new ObjectInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                return (MatchResult[]) in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Copies the stored match file of a series.
+     */
+    public void copyMatchFile(String key, File to) throws IOException {
+        copy(matchFile(key), to);
+    }
+
+    /**
+     * Stores the results and match file of a series. The files are written
+     * under temporary names and then renamed, so that a cache shared by
+     * several tournaments never has half-written entries.
+     */
+    public void put(String key, MatchResult[] results, File matchFile) throws IOException {
+        File tempMatch = new File(dir, key + ".rms.tmp");
+        copy(matchFile, tempMatch);
+        rename(tempMatch, matchFile(key));
+
+        File tempResult = new File(dir, key + ".result.tmp");
+        ObjectOutputStream out = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempResult)));
+        try {
+            out.writeObject(results);
+        } finally {
+            out.close();
+        }
+        rename(tempResult, resultFile(key));
+    }
+
+    private File resultFile(String key) {
+        return new File(dir, key + ".result");
+    }
+
+    private File matchFile(String key) {
+        return new File(dir, key + ".rms");
+    }
+
+    /**
+     * Hashes every class file in a team's package, and its subpackages, in
+     * every directory and jar on the classpath.
+     */
+    private String teamHash(String team) throws IOException {
+        String hash = teamHashes.get(team);
+        if (hash != null)
+            return hash;
+
+        SortedMap<String, String> files = new TreeMap<String, String>();
+        for (String path : classPaths) {
+            File f = new File(path);
+            if (f.isDirectory())
+                addClassFiles(new File(f, team.replace('.', File.separatorChar)), team.replace('.', '/'), files);
+            else if (f.getName().endsWith(".jar") && f.exists())
+                addJarClassFiles(f, team.replace('.', '/') + "/", files);
+        }
+        if (files.isEmpty())
+            throw new FileNotFoundException("no class files for team " + team);
+
+        MessageDigest digest = newDigest();
+        for (Map.Entry<String, String> e : files.entrySet())
+            update(digest, e.getKey() + " " + e.getValue());
+        hash = hex(digest.digest());
+        teamHashes.put(team, hash);
+        return hash;
+    }
+
+    private void addClassFiles(File dir, String prefix, Map<String, String> files) throws IOException {
+        File[] children = dir.listFiles();
+        if (children == null)
+            return;
+        for (File child : children) {
+            String name = prefix + "/" + child.getName();
+            if (child.isDirectory())
+                addClassFiles(child, name, files);
+            else if (child.getName().endsWith(".class") && !files.containsKey(name))
+                files.put(name, fileHash(child));
+        }
+    }
+
+    private void addJarClassFiles(File jar, String prefix, Map<String, String> files) throws IOException {
+        JarFile jarFile = new JarFile(jar);
+        try {
+            for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements(); ) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (name.startsWith(prefix) && name.endsWith(".class") && !files.containsKey(name))
+                    files.put(name, streamHash(jarFile.getInputStream(entry)));
+            }
+        } finally {
+            jarFile.close();
+        }
+    }
+
+    /**
+     * Identifies the engine by its version, and by the contents of the jar it
+     * was loaded from, or of every engine class file if it was loaded from a
+     * directory of classes, so that a rebuilt engine never gets stale results.
+     */
+    private String engineHash() throws IOException {
+        if (engineHash == null) {
+            String hash = String.valueOf(Config.version());
+            String location = Config.class.getProtectionDomain().getCodeSource().getLocation().getPath();
+            File f = new File(location);
+            if (f.isFile())
+                hash += " " + fileHash(f);
+            else if (f.isDirectory()) {
+                SortedMap<String, String> files = new TreeMap<String, String>();
+                addClassFiles(new File(f, "battlecode"), "battlecode", files);
+                MessageDigest digest = newDigest();
+                for (Map.Entry<String, String> e : files.entrySet())
+                    update(digest, e.getKey() + " " + e.getValue());
+                hash += " " + hex(digest.digest());
+            }
+            engineHash = hash;
+        }
+        return engineHash;
+    }
+
+    private static String fileHash(File f) throws IOException {
+        return streamHash(new FileInputStream(f));
+    }
+
+    private static String streamHash(InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        try {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) >= 0)
+                digest.update(buf, 0, n);
+        } finally {
+            in.close();
+        }
+        return hex(digest.digest());
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        InputStream in = new FileInputStream(from);
+        try {
+            OutputStream out = new FileOutputStream(to);
+            try {
+                byte[] buf = new byte[65536];
+                int n;
+                while ((n = in.read(buf)) >= 0)
+                    out.write(buf, 0, n);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            to.delete();
+            if (!from.renameTo(to))
+                throw new IOException("couldn't rename " + from);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String s) {
+        try {
+            digest.update(s.getBytes("UTF-8"));
+            digest.update((byte) '\n');
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package battlecode.tournament;
+
+import battlecode.serial.MatchResult;
+
+/**
+ * The outcome of a finished series between two teams.
+ */
+public class Series {
+
+    private final MatchJob job;
+
+    private final int winsA;
+
+    private final int winsB;
+
+    private final String winner;
+
+    /**
+     * Scores a finished job. A series that ends level goes to team A, which
+     * is the higher seed in a bracket. A failed job has no winner.
+     */
+    public Series(MatchJob job) {
+        this.job = job;
+        int a = 0, b = 0;
+        if (job.getResults() != null) {
+            for (MatchResult r : job.getResults()) {
+                String w = r.getWinnerName();
+                if (job.getTeamA().equals(w))
+                    a++;
+                else if (job.getTeamB().equals(w))
+                    b++;
+            }
+        }
+        winsA = a;
+        winsB = b;
+        if (job.getResults() == null)
+            winner = null;
+        else
+            winner = b > a ? job.getTeamB() : job.getTeamA();
+    }
+
+    /**
+     * A worker stops a series once a team has won more than half of it, but
+     * it also stops early, with the results so far, when a match fails.
+     *
+     * @return whether the results of a job decide its series: a team has
+     *         won more than half of it, or every map has been played
+     */
+    public static boolean decides(MatchJob job, MatchResult[] results) {
+        if (results == null || results.length == 0)
+            return false;
+        if (results.length >= job.getMaps().length)
+            return true;
+        int a = 0, b = 0;
+        for (MatchResult r : results) {
+            String w = r.getWinnerName();
+            if (job.getTeamA().equals(w))
+                a++;
+            else if (job.getTeamB().equals(w))
+                b++;
+        }
+        return Math.max(a, b) > job.getBestOf() / 2;
+    }
+
+    public MatchJob getJob() {
+        return job;
+    }
+
+    public int getWinsA() {
+        return winsA;
+    }
+
+    public int getWinsB() {
+        return winsB;
+    }
+
+    /**
+     * @return the winning team, or null if the series is a forfeit
+     */
+    public String getWinner() {
+        return winner;
+    }
+
+    /**
+     * @return the losing team, or null if the series is a forfeit
+     */
+    public String getLoser() {
+        if (winner == null)
+            return null;
+        return winner.equals(job.getTeamA()) ? job.getTeamB() : job.getTeamA();
+    }
+
+    /**
+     * @return true if the series was never played because its worker kept
+     *         failing
+     */
+    public boolean isForfeit() {
+        return job.getResults() == null;
+    }
+
+    public String toString() {
+        return String.format("%s %d - %d %s%s", job.getTeamA(), winsA, winsB,
+                job.getTeamB(), isForfeit() ? " (failed: " + job.getFailure() + ")" : "");
+    }
+}
@@ -0,0 +1,209 @@
+package battlecode.tournament;
+
+import battlecode.serial.ExtensibleMetadata;
+import battlecode.serial.MatchFooter;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.MatchResult;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+import battlecode.server.proxy.Proxy;
+import battlecode.server.proxy.ProxyFactory;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A series whose maps are all played at once, each by its own worker. The
+ * series is decided as soon as the results of the maps it would have played
+ * one after another are in, and the rest are cancelled.
+ * <p/>
+ * Since the maps are played independently, team memory does not carry over
+ * from one match of the series to the next.
+ */
+public class SpeculativeSeries {
+
+    private final MatchJob series;
+
+    private final MatchJob[] parts;
+
+    private final MatchResult[] results;
+
+    /**
+     * Why each part failed, or null if it hasn't.
+     */
+    private final String[] failures;
+
+    private final boolean xml;
+
+    private int length = -1;
+
+    private long decidedTime;
+
+    /**
+     * @param series the series as it would be played sequentially
+     * @param xml    whether the series' match file should be XML
+     */
+    public SpeculativeSeries(MatchJob series, boolean xml) {
+        this.series = series;
+        this.xml = xml;
+        String[] maps = series.getMaps();
+        parts = new MatchJob[maps.length];
+        results = new MatchResult[maps.length];
+        failures = new String[maps.length];
+        for (int i = 0; i < maps.length; i++) {
+            parts[i] = new MatchJob(String.format("%s-map%d", series.getId(), i + 1),
+                    series.getTeamA(), series.getTeamB(), new String[]{maps[i]}, 1,
+                    series.getMatchFile().getParentFile());
+            // Parts are merged into the series' match file, so they are
+            // always written in the plain binary format.
+            parts[i].setOption("bc.server.output-xml", "false");
+            parts[i].setOption("bc.server.indexed-output", "false");
+        }
+    }
+
+    public MatchJob getSeries() {
+        return series;
+    }
+
+    public MatchJob[] getParts() {
+        return parts;
+    }
+
+    /**
+     * @return true once the outcome of the series is known
+     */
+    public boolean isDecided() {
+        return length >= 0;
+    }
+
+    /**
+     * Takes the result of a finished part. Once the series is decided, the
+     * parts that don't count are cancelled and the series job gets the
+     * results of the parts that do.
+     * <p/>
+     * A part that failed only forfeits the series if its map would have been
+     * played sequentially, that is, if the maps before it don't decide the
+     * series. Until that is known, the other parts are waited for.
+     *
+     * @return true if this part decided the series
+     */
+    public boolean accept(MatchJob part) {
+        if (isDecided())
+            return false;
+        int index = Arrays.asList(parts).indexOf(part);
+
+        if (part.getResults() == null)
+            failures[index] = part.getFailure();
+        else
+            results[index] = part.getResults()[0];
+
+        // Replay the series in map order, as far as the results go.
+        int aWins = 0, bWins = 0;
+        for (int i = 0; i < results.length && (results[i] != null || failures[i] != null); i++) {
+            if (results[i] == null) {
+                series.setFailure("map " + series.getMaps()[i] + " failed: " + failures[i]);
+                decide(0);
+                return true;
+            }
+            String winner = results[i].getWinnerName();
+            if (series.getTeamA().equals(winner))
+                aWins++;
+            else if (series.getTeamB().equals(winner))
+                bWins++;
+            if (Math.max(aWins, bWins) > series.getBestOf() / 2 || i == results.length - 1) {
+                series.setResults(Arrays.copyOf(results, i + 1));
+                decide(i + 1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void decide(int length) {
+        this.length = length;
+        decidedTime = System.currentTimeMillis();
+        for (int i = length; i < parts.length; i++)
+            parts[i].cancel();
+    }
+
+    /**
+     * Writes the match files of the parts that count into the series' match
+     * file, in map order, and deletes the parts' match files.
+     */
+    public void writeMatchFile() throws IOException {
+        Proxy proxy = xml ? ProxyFactory.createXStreamProxyFromFile(series.getMatchFile().getPath())
+                : ProxyFactory.createBinaryProxyFromFile(series.getMatchFile().getPath());
+        proxy.open();
+        try {
+            for (int i = 0; i < length; i++)
+                copyMatches(parts[i].getMatchFile(), proxy);
+        } finally {
+            proxy.close();
+        }
+        for (MatchJob part : parts)
+            part.getMatchFile().delete();
+    }
+
+    private void copyMatches(File file, Proxy proxy) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))));
+        try {
+            while (true) {
+                Object o;
+                try {
+                    o = in.readObject();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (o instanceof MatchHeader)
+                    proxy.writeHeader((MatchHeader) o);
+                else if (o instanceof RoundDelta)
+                    proxy.writeRound((RoundDelta) o);
+                else if (o instanceof RoundStats)
+                    proxy.writeStats((RoundStats) o);
+                else if (o instanceof MatchFooter)
+                    proxy.writeFooter((MatchFooter) o);
+                else {
+                    // Each part only knows about its own map.
+                    if (o instanceof ExtensibleMetadata)
+                        ((ExtensibleMetadata) o).put("maps", series.getMaps());
+                    proxy.writeObject(o);
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the time spent playing maps that turned out not to count, in
+     *         milliseconds
+     */
+    public long getWastedTime() {
+        long wasted = 0;
+        for (int i = Math.max(length, 0); i < parts.length; i++)
+            wasted += parts[i].getSimulationTime();
+        return wasted;
+    }
+
+    /**
+     * @return how much sooner the series was decided than if its maps had
+     *         been played one after another, in milliseconds
+     */
+    public long getTimeSaved() {
+        if (length <= 0)
+            return 0;
+        long sequential = 0;
+        long start = Long.MAX_VALUE;
+        for (MatchJob part : parts) {
+            if (part.getStartTime() > 0)
+                start = Math.min(start, part.getStartTime());
+        }
+        for (int i = 0; i < length; i++)
+            sequential += parts[i].getSimulationTime();
+        return start == Long.MAX_VALUE ? 0 : sequential - (decidedTime - start);
+    }
+}
@@ -0,0 +1,262 @@
+package battlecode.tournament;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A work queue kept in a directory, usually on a file system shared by
+ * several machines. Jobs move between subdirectories by renaming, which is
+ * atomic even over NFS, so no other locking is needed:
+ * <ul>
+ * <li><b>new</b> holds jobs waiting for a worker;</li>
+ * <li><b>claimed</b> holds jobs a worker is running. The worker touches the
+ * file regularly, and a claim that hasn't been touched for a while is put
+ * back in new. Whether a claim has been touched is told by whether its
+ * modification time changes, not by comparing it with this machine's clock,
+ * which may not agree with the clocks of the workers or the file server. A worker only publishes a job while it still holds the
+ * claim, so a job that was withdrawn or given to another worker is
+ * published at most once;</li>
+ * <li><b>done</b> holds the match file, results and log of each finished job,
+ * or a failure message;</li>
+ * <li><b>tmp</b> holds files being written, before they are renamed into
+ * place.</li>
+ * </ul>
+ * A job is a properties file holding the configuration to run it with. Jobs
+ * are named by whoever submits them; coordinators that share a spool must
+ * use names that can't collide.
+ */
+public class Spool {
+
+    private final File newDir, claimedDir, doneDir, tmpDir;
+
+    /**
+     * The modification time last seen of each claim, and when, by this
+     * process's clock, it was first seen.
+     */
+    private final Map<String, long[]> heartbeats = new HashMap<String, long[]>();
+
+    public Spool(File dir) {
+        newDir = new File(dir, "new");
+        claimedDir = new File(dir, "claimed");
+        doneDir = new File(dir, "done");
+        tmpDir = new File(dir, "tmp");
+        newDir.mkdirs();
+        claimedDir.mkdirs();
+        doneDir.mkdirs();
+        tmpDir.mkdirs();
+    }
+
+    private static final String[] DONE_SUFFIXES = {".rms", ".result", ".log", ".failed"};
+
+    /**
+     * Adds a job to the queue.
+     */
+    public void submit(String id, Properties config) throws IOException {
+        clearDone(id);
+        File temp = temp(id + ".job");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            config.store(out, "spooled job " + id);
+        } finally {
+            out.close();
+        }
+        rename(temp, new File(newDir, id + ".job"));
+    }
+
+    /**
+     * Takes a job off the queue, unless another worker takes it first.
+     *
+     * @return the job's configuration, or null if it has already been claimed
+     */
+    public Properties claim(String id) throws IOException {
+        File claimed = claimedFile(id);
+        if (!new File(newDir, id + ".job").renameTo(claimed))
+            return null;
+        claimed.setLastModified(System.currentTimeMillis());
+        Properties config = new Properties();
+        InputStream in = new FileInputStream(claimed);
+        try {
+            config.load(in);
+        } finally {
+            in.close();
+        }
+        return config;
+    }
+
+    /**
+     * @return the ids of the waiting jobs, oldest first
+     */
+    public String[] waiting() {
+        File[] files = newDir.listFiles();
+        if (files == null)
+            return new String[0];
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long d = a.lastModified() - b.lastModified();
+                return d < 0 ? -1 : d > 0 ? 1 : a.getName().compareTo(b.getName());
+            }
+        });
+        String[] ids = new String[files.length];
+        int n = 0;
+        for (File f : files) {
+            String name = f.getName();
+            if (name.endsWith(".job"))
+                ids[n++] = name.substring(0, name.length() - 4);
+        }
+        return Arrays.copyOf(ids, n);
+    }
+
+    /**
+     * Tells other processes that a claimed job is still being worked on.
+     */
+    public void heartbeat(String id) {
+        claimedFile(id).setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Puts a claimed job back in the queue.
+     */
+    public void release(String id) {
+        claimedFile(id).renameTo(new File(newDir, id + ".job"));
+    }
+
+    /**
+     * Puts back in the queue every claimed job that hasn't had a heartbeat
+     * for the given time, since its worker has presumably died. A claim's
+     * time starts when this method first sees it, so it has to be called
+     * regularly, and a claim is only put back after being seen unchanged
+     * for the whole time.
+     *
+     * @return the number of jobs put back
+     */
+    public synchronized int requeueStale(long timeout) {
+        File[] files = claimedDir.listFiles();
+        if (files == null)
+            return 0;
+        long now = System.currentTimeMillis();
+        Map<String, long[]> seen = new HashMap<String, long[]>();
+        int count = 0;
+        for (File f : files) {
+            String name = f.getName();
+            String job;
+            // a worker that dies while publishing leaves its claim renamed
+            if (name.endsWith(".publishing"))
+                job = name.substring(0, name.length() - ".publishing".length()) + ".job";
+            else if (name.endsWith(".job"))
+                job = name;
+            else
+                continue;
+            long modified = f.lastModified();
+            long[] heartbeat = heartbeats.get(name);
+            if (heartbeat == null || heartbeat[0] != modified)
+                heartbeat = new long[]{modified, now};
+            if (now - heartbeat[1] > timeout && f.renameTo(new File(newDir, job)))
+                count++;
+            else
+                seen.put(name, heartbeat);
+        }
+        // forget the claims that have gone
+        heartbeats.clear();
+        heartbeats.putAll(seen);
+        return count;
+    }
+
+    /**
+     * Removes a job from the queue, wherever it is, along with anything it
+     * has published.
+     */
+    public void withdraw(String id) {
+        new File(newDir, id + ".job").delete();
+        claimedFile(id).delete();
+        clearDone(id);
+    }
+
+    /**
+     * Publishes a finished job's files, result last, and drops its claim.
+     * Nothing is published if the claim has gone, because the job was
+     * withdrawn or put back in the queue; the claim is taken out of the
+     * queue's hands first, so that it can't go while the files are being
+     * published.
+     *
+     * @param matchFile  the match file, or null if the job failed
+     * @param resultFile the serialized results, or null if the job failed
+     * @param logFile    the job's log
+     * @param failure    why the job failed, or null
+     * @return whether the job was published
+     */
+    public boolean publish(String id, File matchFile, File resultFile, File logFile,
+                           String failure) throws IOException {
+        File publishing = new File(claimedDir, id + ".publishing");
+        if (!claimedFile(id).renameTo(publishing))
+            return false;
+        try {
+            publishFiles(id, matchFile, resultFile, logFile, failure);
+        } finally {
+            publishing.delete();
+        }
+        return true;
+    }
+
+    private void publishFiles(String id, File matchFile, File resultFile, File logFile,
+                              String failure) throws IOException {
+        if (logFile != null && logFile.exists())
+            rename(logFile, done(id, ".log"));
+        if (failure != null) {
+            File temp = temp(id + ".failed");
+            Writer out = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+            try {
+                out.write(failure);
+            } finally {
+                out.close();
+            }
+            rename(temp, done(id, ".failed"));
+        } else {
+            rename(matchFile, done(id, ".rms"));
+            rename(resultFile, done(id, ".result"));
+        }
+    }
+
+    private void clearDone(String id) {
+        for (String suffix : DONE_SUFFIXES)
+            done(id, suffix).delete();
+    }
+
+    /**
+     * @return a file in the done directory
+     */
+    public File done(String id, String suffix) {
+        return new File(doneDir, id + suffix);
+    }
+
+    /**
+     * @return a file name in the tmp directory that no other process will
+     *         use
+     */
+    public File temp(String name) {
+        return new File(tmpDir, processName() + "-" + name);
+    }
+
+    private File claimedFile(String id) {
+        return new File(claimedDir, id + ".job");
+    }
+
+    static void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            to.delete();
+            if (!from.renameTo(to))
+                throw new IOException("couldn't rename " + from + " to " + to);
+        }
+    }
+
+    /**
+     * @return a name for this process that is unique across machines
+     */
+    static String processName() {
+        return ManagementFactory.getRuntimeMXBean().getName();
+    }
+}
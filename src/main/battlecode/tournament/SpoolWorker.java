@@ -0,0 +1,139 @@
+package battlecode.tournament;
+
+import battlecode.server.Config;
+import battlecode.server.Server;
+
+import java.io.*;
+import java.util.Properties;
+
+/**
+ * Takes jobs from a {@link Spool} and runs them in this JVM, one at a time,
+ * until it has been idle for bc.spool.idle-exit milliseconds (or forever, if
+ * that is 0). Run as many of these as there are cores, on as many machines as
+ * share the spool directory.
+ * <p/>
+ * Like a resident {@link Worker}, a spool worker exits when it should be
+ * recycled, or when a job needs engine options that differ from the ones it
+ * started with; the job is put back in the queue for another worker.
+ */
+public class SpoolWorker implements Runnable {
+
+    private final Spool spool;
+
+    private final Worker worker;
+
+    private final long pollInterval;
+
+    private final long heartbeat;
+
+    private final long idleExit;
+
+    private volatile String current;
+
+    public SpoolWorker(Config options) {
+        spool = new Spool(new File(options.get("bc.spool.dir")));
+        worker = new Worker(options);
+        pollInterval = options.getInt("bc.spool.poll-interval");
+        heartbeat = options.getInt("bc.spool.heartbeat");
+        idleExit = options.getInt("bc.spool.idle-exit");
+        if (pollInterval <= 0 || heartbeat <= 0)
+            throw new IllegalArgumentException("bc.spool.poll-interval and bc.spool.heartbeat must be positive");
+    }
+
+    public void run() {
+        Worker.preload();
+        startHeartbeat();
+        Server.say("spool worker " + Spool.processName() + " waiting for jobs");
+
+        long idleSince = System.currentTimeMillis();
+        try {
+            while (true) {
+                boolean ran = false;
+                for (String id : spool.waiting()) {
+                    Properties config = spool.claim(id);
+                    if (config == null)
+                        continue;
+                    ran = true;
+                    if (!runJob(id, config))
+                        return;
+                    break;
+                }
+                if (ran)
+                    idleSince = System.currentTimeMillis();
+                else if (idleExit > 0 && System.currentTimeMillis() - idleSince > idleExit)
+                    return;
+                else
+                    Thread.sleep(pollInterval);
+            }
+        } catch (IOException e) {
+            Server.warn("spool worker stopped: " + e.getMessage());
+        } catch (InterruptedException e) {
+        }
+    }
+
+    /**
+     * Runs a claimed job and publishes what it produced.
+     *
+     * @return whether this worker should take more jobs
+     */
+    private boolean runJob(String id, Properties config) throws IOException {
+        current = id;
+        try {
+            Server.say("running " + id);
+            File matchFile = spool.temp(id + ".rms");
+            File resultFile = spool.temp(id + ".result");
+            File logFile = spool.temp(id + ".log");
+            config.setProperty("bc.server.save-file", matchFile.getPath());
+
+            Worker.Reply reply = worker.run(new Worker.Request(config, logFile.getPath()));
+            if (reply.rejected) {
+                spool.release(id);
+                return false;
+            }
+
+            String failure = reply.failure;
+            if (failure == null) {
+                ObjectOutputStream out = new ObjectOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(resultFile)));
+                try {
+                    out.writeObject(reply.results);
+                } finally {
+                    out.close();
+                }
+                if (!matchFile.exists())
+                    failure = "no match file was written";
+            }
+            if (!spool.publish(id, matchFile, resultFile, logFile, failure)) {
+                Server.warn("dropped the results of " + id + ", which was withdrawn or given to another worker");
+                matchFile.delete();
+                resultFile.delete();
+                logFile.delete();
+            }
+            return !reply.retiring;
+        } finally {
+            current = null;
+        }
+    }
+
+    /**
+     * Touches the claim of the running job regularly, so that it isn't
+     * mistaken for the claim of a dead worker.
+     */
+    private void startHeartbeat() {
+        Thread t = new Thread("spool-heartbeat") {
+            public void run() {
+                try {
+                    while (true) {
+                        Thread.sleep(heartbeat);
+                        String id = current;
+                        if (id != null)
+                            spool.heartbeat(id);
+                    }
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
+}
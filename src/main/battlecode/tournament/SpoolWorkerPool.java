@@ -0,0 +1,88 @@
+package battlecode.tournament;
+
+import battlecode.serial.MatchResult;
+import battlecode.server.Server;
+
+import java.io.*;
+import java.util.Properties;
+
+/**
+ * A worker pool that hands its jobs to {@link SpoolWorker}s through a spool
+ * directory, instead of running them itself. The pool's threads only wait
+ * for results, so there should be at least as many of them as there are
+ * spool workers.
+ * <p/>
+ * While waiting, the pool puts back in the queue any claim that hasn't had a
+ * heartbeat for the manifest's spool-timeout.
+ * <p/>
+ * Jobs are spooled under their ids prefixed with the manifest's tournament
+ * id, so that several tournaments can share a spool.
+ */
+public class SpoolWorkerPool extends WorkerPool {
+
+    private final Spool spool;
+
+    private final String prefix;
+
+    private final long timeout;
+
+    private final long pollInterval;
+
+    private long lastRequeue;
+
+    public SpoolWorkerPool(TournamentManifest manifest) {
+        super(manifest);
+        spool = new Spool(manifest.getSpoolDir());
+        prefix = manifest.getTournamentId() + "-";
+        timeout = manifest.getSpoolTimeout();
+        pollInterval = Math.max(10, Math.min(1000, timeout / 4));
+    }
+
+    protected MatchResult[] runJob(MatchJob job, Properties config) throws IOException, InterruptedException {
+        job.writeConfig(config);
+        String id = prefix + job.getId();
+        spool.submit(id, config);
+
+        while (true) {
+            Thread.sleep(pollInterval);
+            requeueStale();
+
+            if (job.isCancelled()) {
+                spool.withdraw(id);
+                throw new IOException("cancelled");
+            }
+
+            File log = spool.done(id, ".log");
+            File failed = spool.done(id, ".failed");
+            File result = spool.done(id, ".result");
+            if (failed.exists()) {
+                if (log.exists())
+                    Spool.rename(log, job.getLogFile());
+                BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(failed), "UTF-8"));
+                try {
+                    throw new IOException(in.readLine());
+                } finally {
+                    in.close();
+                    failed.delete();
+                }
+            }
+            if (result.exists()) {
+                if (log.exists())
+                    Spool.rename(log, job.getLogFile());
+                Spool.rename(spool.done(id, ".rms"), job.getMatchFile());
+                Spool.rename(result, job.getResultFile());
+                return job.readResults();
+            }
+        }
+    }
+
+    private synchronized void requeueStale() {
+        long now = System.currentTimeMillis();
+        if (now - lastRequeue < pollInterval)
+            return;
+        lastRequeue = now;
+        int count = spool.requeueStale(timeout);
+        if (count > 0)
+            Server.warn("requeued " + count + " jobs whose workers stopped responding");
+    }
+}
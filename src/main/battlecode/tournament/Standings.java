@@ -0,0 +1,133 @@
+package battlecode.tournament;
+
+import battlecode.serial.MatchResult;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Keeps the win/loss record of every team and writes it to a text file.
+ */
+public class Standings {
+
+    private static class Record {
+
+        final String team;
+        final int seed;
+        int seriesWon;
+        int seriesLost;
+        int matchesWon;
+        int matchesLost;
+        long rounds;
+        int matches;
+        boolean eliminated;
+
+        Record(String team, int seed) {
+            this.team = team;
+            this.seed = seed;
+        }
+    }
+
+    private final Map<String, Record> records = new LinkedHashMap<String, Record>();
+
+    private final List<Series> played = new ArrayList<Series>();
+
+    private final File file;
+
+    public Standings(String[] teams, File file) {
+        for (int i = 0; i < teams.length; i++)
+            records.put(teams[i], new Record(teams[i], i + 1));
+        this.file = file;
+    }
+
+    /**
+     * Records the outcome of a series. A forfeit is listed with the other
+     * series but counts for neither team.
+     *
+     * @param eliminating whether the loser is out of the tournament
+     */
+    public void add(Series series, boolean eliminating) {
+        played.add(series);
+        if (series.isForfeit())
+            return;
+        Record winner = records.get(series.getWinner());
+        Record loser = records.get(series.getLoser());
+        winner.seriesWon++;
+        loser.seriesLost++;
+        if (eliminating)
+            loser.eliminated = true;
+
+        MatchJob job = series.getJob();
+        for (MatchResult r : job.getResults()) {
+            String w = r.getWinnerName();
+            for (Record rec : new Record[]{records.get(job.getTeamA()), records.get(job.getTeamB())}) {
+                if (rec.team.equals(w))
+                    rec.matchesWon++;
+                else if (w != null)
+                    rec.matchesLost++;
+                rec.rounds += r.getRounds();
+                rec.matches++;
+            }
+        }
+    }
+
+    /**
+     * @return the teams, best first: by series won, then matches won, then
+     *         seed
+     */
+    public List<String> ranking() {
+        List<Record> list = sorted();
+        List<String> teams = new ArrayList<String>(list.size());
+        for (Record r : list)
+            teams.add(r.team);
+        return teams;
+    }
+
+    private List<Record> sorted() {
+        List<Record> list = new ArrayList<Record>(records.values());
+        Collections.sort(list, new Comparator<Record>() {
+            public int compare(Record a, Record b) {
+                if (a.eliminated != b.eliminated)
+                    return a.eliminated ? 1 : -1;
+                if (a.seriesWon != b.seriesWon)
+                    return b.seriesWon - a.seriesWon;
+                if (a.matchesWon != b.matchesWon)
+                    return b.matchesWon - a.matchesWon;
+                return a.seed - b.seed;
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Writes the standings, followed by every series played so far. The file
+     * is replaced atomically, so it can be watched while the tournament runs.
+     */
+    public void write() throws IOException {
+        if (file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+        File temp = new File(file.getPath() + ".tmp");
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(temp)));
+        try {
+            out.printf("%-4s %-20s %4s %6s %6s %6s %6s %10s%n", "rank", "team", "seed",
+                    "s-won", "s-lost", "m-won", "m-lost", "avg-rounds");
+            int rank = 1;
+            for (Record r : sorted()) {
+                out.printf("%-4d %-20s %4d %6d %6d %6d %6d %10.1f%s%n", rank++, r.team, r.seed,
+                        r.seriesWon, r.seriesLost, r.matchesWon, r.matchesLost,
+                        r.matches == 0 ? 0. : (double) r.rounds / r.matches,
+                        r.eliminated ? " (eliminated)" : "");
+            }
+            out.println();
+            for (Series s : played)
+                out.println(s);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file))
+                throw new IOException("couldn't rename " + temp);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package battlecode.tournament;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Describes a tournament: the teams, the maps, the format and how to run the
+ * matches. Manifests are properties files, for example:
+ * <pre>
+ * teams=team001,team002,team003,team004
+ * maps=glass,fortress,caves
+ * format=round-robin
+ * best-of=3
+ * workers=8
+ * output-dir=tournament
+ * cache-dir=results-cache
+ * cache-verify=0.05
+ * speculative=false
+ * warm-workers=true
+ * spool-dir=/mnt/scratch/spool
+ * tournament-id=qualifying
+ * bc.server.signal-compactor=state
+ * </pre>
+ * The teams are listed in seed order, which matters for brackets. Any bc.*
+ * properties in the manifest are passed on to the matches; the last line
+ * above, for instance, makes the matches write compacted match files.
+ */
+public class TournamentManifest {
+
+    /**
+     * The ways teams can be paired up.
+     */
+    public static enum Format {
+        /**
+         * Every team plays every other team once.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * Single elimination; the winner of each series advances.
+         */
+        BRACKET
+    }
+
+    private final Properties properties;
+
+    private final String[] teams;
+
+    private final String[] maps;
+
+    private final Format format;
+
+    private final int bestOf;
+
+    private final int workers;
+
+    private final int retries;
+
+    private final File outputDir;
+
+    private final File standingsFile;
+
+    public TournamentManifest(File file) throws IOException {
+        this(load(file));
+    }
+
+    public TournamentManifest(Properties properties) {
+        this.properties = properties;
+
+        teams = list(properties.getProperty("teams"));
+        maps = list(properties.getProperty("maps"));
+        if (teams.length < 2)
+            throw new IllegalArgumentException("a tournament needs at least two teams");
+        if (maps.length == 0)
+            throw new IllegalArgumentException("a tournament needs at least one map");
+
+        format = Format.valueOf(properties.getProperty("format", "round-robin")
+                .trim().toUpperCase().replace('-', '_'));
+
+        bestOf = Integer.parseInt(properties.getProperty("best-of", Integer.toString(maps.length)).trim());
+        if (bestOf < 1 || bestOf > maps.length)
+            throw new IllegalArgumentException("best-of must be between 1 and the number of maps");
+
+        int w = Integer.parseInt(properties.getProperty("workers", "0").trim());
+        workers = w > 0 ? w : Runtime.getRuntime().availableProcessors();
+
+        retries = Integer.parseInt(properties.getProperty("retries", "2").trim());
+
+        if (getSpoolTimeout() <= 0)
+            throw new IllegalArgumentException("spool-timeout must be positive");
+
+        outputDir = new File(properties.getProperty("output-dir", "tournament"));
+        standingsFile = new File(properties.getProperty("standings",
+                new File(outputDir, "standings.txt").getPath()));
+    }
+
+    private static Properties load(File file) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        return properties;
+    }
+
+    private static String[] list(String value) {
+        List<String> list = new ArrayList<String>();
+        if (value != null) {
+            for (String s : value.split(",")) {
+                s = s.trim();
+                if (s.length() > 0)
+                    list.add(s);
+            }
+        }
+        return list.toArray(new String[list.size()]);
+    }
+
+    /**
+     * @return the teams, in seed order
+     */
+    public String[] getTeams() {
+        return teams;
+    }
+
+    public String[] getMaps() {
+        return maps;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the number of maps in a series; a series ends as soon as one
+     *         team has won more than half of this many matches
+     */
+    public int getBestOf() {
+        return bestOf;
+    }
+
+    /**
+     * @return the number of matches to run at once; defaults to the number of
+     *         processors
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return how many times a crashed job is run again before giving up
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    public File getStandingsFile() {
+        return standingsFile;
+    }
+
+    /**
+     * @return true if all maps of a series should be played at once, each in
+     *         its own worker, at the cost of team memory not carrying over
+     */
+    public boolean isSpeculative() {
+        return Boolean.parseBoolean(properties.getProperty("speculative", "false").trim());
+    }
+
+    /**
+     * @return true if jobs should be sent to resident worker JVMs rather than
+     *         each getting a new JVM
+     */
+    public boolean isWarmWorkers() {
+        return Boolean.parseBoolean(properties.getProperty("warm-workers", "false").trim());
+    }
+
+    /**
+     * @return how many jobs a resident worker runs before it is replaced
+     */
+    public int getWorkerMaxMatches() {
+        return Integer.parseInt(properties.getProperty("worker-max-matches", "50").trim());
+    }
+
+    /**
+     * @return the fraction of its heap a resident worker may still be using
+     *         after a job before it is replaced
+     */
+    public double getWorkerMaxMemory() {
+        return Double.parseDouble(properties.getProperty("worker-max-memory", "0.75").trim());
+    }
+
+    /**
+     * @return the spool directory to hand jobs to spool workers through, or
+     *         null to run them on this machine
+     */
+    public File getSpoolDir() {
+        String dir = properties.getProperty("spool-dir", "").trim();
+        return dir.length() == 0 ? null : new File(dir);
+    }
+
+    /**
+     * @return the name that this tournament's jobs are given in a spool, so
+     *         that they can't be mistaken for another tournament's; by
+     *         default, the name of this process, which no other process uses
+     */
+    public String getTournamentId() {
+        String id = properties.getProperty("tournament-id", "").trim();
+        return id.length() == 0 ? Spool.processName() : id;
+    }
+
+    /**
+     * @return how long a spool worker may go without a heartbeat before its
+     *         job is given to another worker, in milliseconds
+     */
+    public long getSpoolTimeout() {
+        return Long.parseLong(properties.getProperty("spool-timeout", "60000").trim());
+    }
+
+    /**
+     * @return the directory of the result cache, or null if results aren't
+     *         cached
+     */
+    public File getCacheDir() {
+        String dir = properties.getProperty("cache-dir", "").trim();
+        return dir.length() == 0 ? null : new File(dir);
+    }
+
+    /**
+     * @return the fraction of cached series to play again to check that they
+     *         still come out the same
+     */
+    public double getCacheVerify() {
+        return Double.parseDouble(properties.getProperty("cache-verify", "0").trim());
+    }
+
+    /**
+     * @return the configuration file workers should use, or null for the
+     *         default
+     */
+    public String getConfigFile() {
+        return properties.getProperty("config");
+    }
+
+    /**
+     * @return extra arguments for worker JVMs, such as -Xmx
+     */
+    public String[] getJvmArgs() {
+        String args = properties.getProperty("jvm-args", "").trim();
+        return args.length() == 0 ? new String[0] : args.split("\\s+");
+    }
+
+    /**
+     * @return the bc.* options to pass on to every match
+     */
+    public Properties getMatchOptions() {
+        Properties options = new Properties();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith("bc."))
+                options.setProperty(key, properties.getProperty(key));
+        }
+        return options;
+    }
+
+    /**
+     * Gets any other manifest property.
+     */
+    public String get(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue);
+    }
+}
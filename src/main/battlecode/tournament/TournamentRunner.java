@@ -0,0 +1,261 @@
+package battlecode.tournament;
+
+import battlecode.server.Server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a whole tournament on this machine. Series are handed to a pool of
+ * worker JVMs as soon as both of their teams are known, and the standings
+ * file is rewritten after every series.
+ * <p/>
+ * In a round robin every pair of teams plays one series, with the higher seed
+ * as team A. In a bracket the teams are seeded into a single elimination
+ * draw, padded with byes to a power of two, where the first seed meets the
+ * last, the second seed the second to last, and so on.
+ * <p/>
+ * In speculative mode all maps of a series are started at once, and the maps
+ * that turn out not to be needed once a team has clinched the series are
+ * cancelled. See {@link SpeculativeSeries}.
+ * <p/>
+ * A series whose worker keeps failing is a forfeit, which has no winner. In
+ * a round robin it is left out of the standings; in a bracket nobody
+ * advances from it, so the rest of that part of the draw is not played.
+ * Either way the tournament is incomplete until it is run again, which
+ * with a result cache only plays the series that are missing.
+ */
+public class TournamentRunner {
+
+    private final TournamentManifest manifest;
+
+    private final WorkerPool pool;
+
+    private final Standings standings;
+
+    private int jobCount;
+
+    /**
+     * The number of jobs given to the pool that haven't come back yet.
+     */
+    private int pending;
+
+    /**
+     * For speculative series: the series each part belongs to.
+     */
+    private final Map<MatchJob, SpeculativeSeries> speculative = new HashMap<MatchJob, SpeculativeSeries>();
+
+    private final List<SpeculativeSeries> speculated = new ArrayList<SpeculativeSeries>();
+
+    /**
+     * The series that were forfeited, which have to be rerun.
+     */
+    private final List<MatchJob> forfeits = new ArrayList<MatchJob>();
+
+    /**
+     * For brackets: the teams in each stage of the draw, with null for byes
+     * and for winners that aren't known yet. Stage 0 holds the seeds.
+     */
+    private String[][] stages;
+
+    /**
+     * For brackets: the stage and slot that each series' winner goes to, by
+     * series id.
+     */
+    private final Map<String, int[]> destinations = new HashMap<String, int[]>();
+
+    public TournamentRunner(TournamentManifest manifest) {
+        this(manifest, createPool(manifest));
+    }
+
+    private static WorkerPool createPool(TournamentManifest manifest) {
+        if (manifest.getSpoolDir() != null)
+            return new SpoolWorkerPool(manifest);
+        else if (manifest.isWarmWorkers())
+            return new WarmWorkerPool(manifest);
+        else
+            return new WorkerPool(manifest);
+    }
+
+    public TournamentRunner(TournamentManifest manifest, WorkerPool pool) {
+        this.manifest = manifest;
+        this.pool = pool;
+        standings = new Standings(manifest.getTeams(), manifest.getStandingsFile());
+    }
+
+    /**
+     * Runs every series in the tournament and waits for them to finish.
+     *
+     * @return the standings
+     */
+    public Standings run() throws InterruptedException {
+        Server.say(String.format("running a %s tournament of %d teams on %d workers",
+                manifest.getFormat().name().toLowerCase().replace('_', '-'),
+                manifest.getTeams().length, manifest.getWorkers()));
+        long start = System.currentTimeMillis();
+        manifest.getOutputDir().mkdirs();
+
+        if (manifest.getFormat() == TournamentManifest.Format.ROUND_ROBIN)
+            startRoundRobin();
+        else
+            startBracket();
+
+        try {
+            while (pending > 0) {
+                MatchJob job = pool.take();
+                pending--;
+                SpeculativeSeries parent = speculative.remove(job);
+                if (parent == null)
+                    finished(job);
+                else if (parent.accept(job)) {
+                    try {
+                        parent.writeMatchFile();
+                    } catch (IOException e) {
+                        Server.warn("couldn't write the match file of " + parent.getSeries() + ": " + e.getMessage());
+                    }
+                    finished(parent.getSeries());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        if (!speculated.isEmpty()) {
+            long wasted = 0, saved = 0;
+            for (SpeculativeSeries s : speculated) {
+                wasted += s.getWastedTime();
+                saved += s.getTimeSaved();
+            }
+            Server.say(String.format("speculation: %.1f s spent on maps that didn't count, %.1f s of series latency saved",
+                    wasted / 1000., saved / 1000.));
+        }
+
+        String cacheReport = pool.cacheReport();
+        if (cacheReport != null)
+            Server.say(cacheReport);
+        if (!forfeits.isEmpty()) {
+            Server.warn(String.format("%d series failed and must be rerun before the %s is complete: %s",
+                    forfeits.size(), manifest.getFormat() == TournamentManifest.Format.ROUND_ROBIN ?
+                    "standings are" : "bracket is", forfeits));
+        }
+        Server.say(String.format("tournament finished in %.1f s; standings are in %s",
+                (System.currentTimeMillis() - start) / 1000., manifest.getStandingsFile()));
+        return standings;
+    }
+
+    /**
+     * @return true if every series that was started has a winner
+     */
+    public boolean isComplete() {
+        return forfeits.isEmpty();
+    }
+
+    private void finished(MatchJob job) {
+        Series series = new Series(job);
+        int[] destination = destinations.remove(job.getId());
+        if (series.isForfeit()) {
+            forfeits.add(job);
+            Server.warn("series " + job + " failed: " + job.getFailure()
+                    + (destination != null ? "; nobody advances from it until it is rerun" : ""));
+        } else
+            Server.say(series.toString());
+
+        standings.add(series, destination != null);
+        writeStandings();
+        if (destination != null && !series.isForfeit())
+            advance(destination[0], destination[1], series.getWinner());
+    }
+
+    private void startRoundRobin() {
+        String[] teams = manifest.getTeams();
+        for (int i = 0; i < teams.length; i++) {
+            for (int j = i + 1; j < teams.length; j++)
+                submit(teams[i], teams[j]);
+        }
+    }
+
+    private void startBracket() {
+        String[] teams = manifest.getTeams();
+        int size = 1;
+        while (size < teams.length)
+            size *= 2;
+        int stageCount = Integer.numberOfTrailingZeros(size) + 1;
+        stages = new String[stageCount][];
+        for (int s = 0; s < stageCount; s++)
+            stages[s] = new String[size >> s];
+        System.arraycopy(teams, 0, stages[0], 0, teams.length);
+
+        // Seeds facing byes advance straight away.
+        for (int i = 0; i < size / 2; i++) {
+            if (stages[0][size - 1 - i] == null)
+                advance(1, i, stages[0][i]);
+            else
+                submit(stages[0][i], stages[0][size - 1 - i], 1, i);
+        }
+    }
+
+    /**
+     * Puts a team into a slot of the draw, and starts its next series if its
+     * opponent is known.
+     */
+    private void advance(int stage, int slot, String team) {
+        String[] slots = stages[stage];
+        slots[slot] = team;
+        if (slots.length == 1) {
+            Server.say(team + " wins the tournament");
+            return;
+        }
+        int opponent = slots.length - 1 - slot;
+        if (slots[opponent] == null)
+            return;
+        int high = Math.min(slot, opponent);
+        submit(slots[high], slots[slots.length - 1 - high], stage + 1, high);
+    }
+
+    private void submit(String teamA, String teamB, int stage, int slot) {
+        destinations.put(submit(teamA, teamB).getId(), new int[]{stage, slot});
+    }
+
+    private MatchJob submit(String teamA, String teamB) {
+        String id = String.format("series-%04d-%s-vs-%s", ++jobCount, teamA, teamB);
+        MatchJob job = new MatchJob(id, teamA, teamB, manifest.getMaps(),
+                manifest.getBestOf(), manifest.getOutputDir());
+        if (manifest.isSpeculative()) {
+            SpeculativeSeries series = new SpeculativeSeries(job,
+                    Boolean.parseBoolean(manifest.getMatchOptions().getProperty("bc.server.output-xml")));
+            speculated.add(series);
+            for (MatchJob part : series.getParts()) {
+                speculative.put(part, series);
+                pending++;
+                pool.submit(part);
+            }
+        } else {
+            pending++;
+            pool.submit(job);
+        }
+        return job;
+    }
+
+    private void writeStandings() {
+        try {
+            standings.write();
+        } catch (IOException e) {
+            Server.warn("couldn't write standings: " + e.getMessage());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("usage: TournamentRunner <manifest>");
+            System.exit(64);
+        }
+        TournamentRunner runner = new TournamentRunner(new TournamentManifest(new File(args[0])));
+        runner.run();
+        if (!runner.isComplete())
+            System.exit(1);
+    }
+}
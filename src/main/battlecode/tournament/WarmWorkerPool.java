@@ -0,0 +1,167 @@
+package battlecode.tournament;
+
+import battlecode.serial.MatchResult;
+import battlecode.server.Server;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A worker pool that keeps a resident {@link Worker} JVM for each of its
+ * threads and sends it one job after another, instead of starting a new JVM
+ * for every job. A worker that exits, whether it crashed or retired, is
+ * replaced when the next job comes along.
+ */
+public class WarmWorkerPool extends WorkerPool {
+
+    /**
+     * A running worker and the streams used to talk to it.
+     */
+    private class Handle {
+
+        final Process process;
+
+        final ObjectOutputStream requests;
+
+        final ObjectInputStream replies;
+
+        Handle() throws IOException {
+            List<String> command = new ArrayList<String>();
+            command.add(java);
+            for (String arg : jvmArgs)
+                command.add(arg);
+            command.add("-Dbc.worker.max-matches=" + maxMatches);
+            command.add("-Dbc.worker.max-memory=" + maxMemory);
+            command.add("-cp");
+            command.add(classpath);
+            command.add(Worker.class.getName());
+
+            process = new ProcessBuilder(command).start();
+            pump(process.getErrorStream());
+            requests = new ObjectOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            requests.flush();
+            replies = new ObjectInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        void close() {
+            try {
+                requests.close();
+            } catch (IOException e) {
+            }
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                process.destroy();
+            }
+        }
+    }
+
+    private final int maxMatches;
+
+    private final double maxMemory;
+
+    private final ThreadLocal<Handle> handles = new ThreadLocal<Handle>();
+
+    private final List<Handle> all = new ArrayList<Handle>();
+
+    private int started;
+
+    public WarmWorkerPool(TournamentManifest manifest) {
+        super(manifest);
+        maxMatches = manifest.getWorkerMaxMatches();
+        maxMemory = manifest.getWorkerMaxMemory();
+    }
+
+    /**
+     * Sends a job to this thread's worker, starting one if needed, and waits
+     * for the reply.
+     */
+    protected MatchResult[] runJob(MatchJob job, Properties config) throws IOException, InterruptedException {
+        job.writeConfig(config);
+        while (true) {
+            Handle handle = handles.get();
+            if (handle == null) {
+                handle = new Handle();
+                handles.set(handle);
+                synchronized (this) {
+                    all.add(handle);
+                    started++;
+                }
+            }
+
+            Worker.Reply reply;
+            job.setProcess(handle.process);
+            try {
+                handle.requests.reset();
+                handle.requests.writeObject(new Worker.Request(config, job.getLogFile().getPath()));
+                handle.requests.flush();
+                reply = (Worker.Reply) handle.replies.readObject();
+            } catch (EOFException e) {
+                retire(handle);
+                throw new IOException("worker exited");
+            } catch (IOException e) {
+                retire(handle);
+                throw new IOException("worker died: " + e.getMessage());
+            } catch (ClassNotFoundException e) {
+                retire(handle);
+                throw new IOException(e.getMessage());
+            } finally {
+                job.setProcess(null);
+            }
+
+            if (reply.retiring)
+                retire(handle);
+            if (reply.rejected)
+                continue;
+            if (reply.failure != null)
+                throw new IOException(reply.failure);
+            return reply.results;
+        }
+    }
+
+    private void retire(Handle handle) {
+        handles.remove();
+        synchronized (this) {
+            all.remove(handle);
+        }
+        handle.close();
+    }
+
+    /**
+     * Stops the workers once the queued jobs are done, and then the resident
+     * JVMs.
+     */
+    public void shutdown() {
+        super.shutdown();
+        List<Handle> remaining;
+        synchronized (this) {
+            remaining = new ArrayList<Handle>(all);
+            all.clear();
+        }
+        for (Handle handle : remaining)
+            handle.close();
+        Server.say("warm worker pool started " + started + " JVMs");
+    }
+
+    /**
+     * Copies a worker's own error output, which is only used outside of
+     * jobs, to ours.
+     */
+    private static void pump(final InputStream in) {
+        Thread t = new Thread("worker-stderr") {
+            public void run() {
+                try {
+                    byte[] buf = new byte[4096];
+                    int n;
+                    while ((n = in.read(buf)) >= 0)
+                        System.err.write(buf, 0, n);
+                } catch (IOException e) {
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
+}
@@ -0,0 +1,226 @@
+package battlecode.tournament;
+
+import battlecode.serial.MatchResult;
+import battlecode.server.Config;
+import battlecode.server.Server;
+import battlecode.server.ServerFactory;
+import battlecode.server.proxy.XStreamProxy;
+
+import java.io.*;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A resident worker JVM that runs match jobs one after another, so that
+ * class loading, the instrumenter's tables and JIT compilation are paid for
+ * once rather than for every series.
+ * <p/>
+ * Jobs arrive on standard input as serialized {@link Request}s, and a
+ * {@link Reply} is written to standard output for each. Standard output and
+ * standard error are redirected to each job's log file while it runs.
+ * <p/>
+ * The engine resets its own state at the start of every match, but a few
+ * engine options are read only once per JVM, so a job whose options differ
+ * from the first job's is turned away and the worker exits. The worker also
+ * exits after bc.worker.max-matches jobs, or when more than
+ * bc.worker.max-memory of the heap is still in use after a job.
+ */
+public class Worker {
+
+    /**
+     * Engine options that are read into static fields the first time they
+     * are needed.
+     */
+    private static final String[] STATIC_OPTIONS = {
+            "bc.engine.upkeep", "bc.engine.lazy-instrumenter", "bc.engine.fast-hash"
+    };
+
+    /**
+     * A job for a worker.
+     */
+    public static class Request implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final Properties config;
+
+        final String logFile;
+
+        public Request(Properties config, String logFile) {
+            this.config = config;
+            this.logFile = logFile;
+        }
+    }
+
+    /**
+     * What a worker says when it has finished a job.
+     */
+    public static class Reply implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The results of the job, or null if it failed or was turned away.
+         */
+        final MatchResult[] results;
+
+        /**
+         * Why the job failed, or null.
+         */
+        final String failure;
+
+        /**
+         * Whether the job was turned away without being run.
+         */
+        final boolean rejected;
+
+        /**
+         * Whether the worker is about to exit.
+         */
+        final boolean retiring;
+
+        Reply(MatchResult[] results, String failure, boolean rejected, boolean retiring) {
+            this.results = results;
+            this.failure = failure;
+            this.rejected = rejected;
+            this.retiring = retiring;
+        }
+    }
+
+    private final int maxMatches;
+
+    private final double maxMemory;
+
+    private final PrintStream stdout;
+
+    private final PrintStream stderr;
+
+    private Properties staticOptions;
+
+    private int matches;
+
+    Worker(Config options) {
+        maxMatches = options.getInt("bc.worker.max-matches");
+        maxMemory = options.getDouble("bc.worker.max-memory");
+        stdout = System.out;
+        stderr = System.err;
+    }
+
+    /**
+     * Loads the classes and tables every match needs. A failure here is only
+     * reported, since the first job will run into it again and fail with a
+     * better explanation in its log.
+     */
+    static void preload() {
+        ClassLoader loader = Worker.class.getClassLoader();
+        try {
+            for (String name : new String[]{
+                    "battlecode.engine.instrumenter.MethodCostUtil",
+                    "battlecode.engine.instrumenter.ClassReferenceUtil",
+                    "battlecode.engine.instrumenter.IndividualClassLoader",
+                    "battlecode.engine.Engine",
+                    "battlecode.world.GameWorld",
+                    "battlecode.world.XMLMapHandler",
+                    "battlecode.server.Match"})
+                Class.forName(name, true, loader);
+            XStreamProxy.getXStream();
+        } catch (Throwable e) {
+            Server.warn("couldn't preload the engine: " + e);
+        }
+    }
+
+    private void serve(InputStream in, OutputStream out) throws IOException {
+        ObjectOutputStream replies = new ObjectOutputStream(new BufferedOutputStream(out));
+        replies.flush();
+        ObjectInputStream requests = new ObjectInputStream(new BufferedInputStream(in));
+
+        while (true) {
+            Request request;
+            try {
+                request = (Request) requests.readObject();
+            } catch (EOFException e) {
+                return;
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e.getMessage());
+            }
+
+            Reply reply = run(request);
+            replies.reset();
+            replies.writeObject(reply);
+            replies.flush();
+            if (reply.retiring)
+                return;
+        }
+    }
+
+    Reply run(Request request) {
+        Properties jobStatic = new Properties();
+        for (String key : STATIC_OPTIONS)
+            jobStatic.setProperty(key, String.valueOf(request.config.getProperty(key)));
+        if (staticOptions == null)
+            staticOptions = jobStatic;
+        else if (!staticOptions.equals(jobStatic))
+            return new Reply(null, "the job's engine options differ from this worker's", true, true);
+
+        Config options = new Config(new String[]{"-c", "-"});
+        for (String key : request.config.stringPropertyNames())
+            options.set(key, request.config.getProperty(key));
+        // Results go back over the pipe.
+        options.set("bc.server.result-file", "");
+        Config.setGlobalConfig(options);
+
+        MatchResult[] results = null;
+        String failure = null;
+        PrintStream log = null;
+        try {
+            log = new PrintStream(new BufferedOutputStream(new FileOutputStream(request.logFile)), true);
+            System.setOut(log);
+            System.setErr(log);
+            Server server = ServerFactory.createHeadlessServer(options,
+                    options.get("bc.server.save-file"));
+            server.run();
+            List<MatchResult> list = server.getResults();
+            if (list.isEmpty())
+                failure = "no matches finished";
+            else
+                results = list.toArray(new MatchResult[list.size()]);
+        } catch (Throwable e) {
+            failure = e.toString();
+            if (log != null)
+                e.printStackTrace(log);
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+            if (log != null)
+                log.close();
+        }
+
+        matches++;
+        return new Reply(results, failure, false, shouldRetire());
+    }
+
+    private boolean shouldRetire() {
+        if (matches >= maxMatches)
+            return true;
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        if (used <= maxMemory * runtime.maxMemory())
+            return false;
+        System.gc();
+        used = runtime.totalMemory() - runtime.freeMemory();
+        return used > maxMemory * runtime.maxMemory();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config options = new Config(new String[]{"-c", "-"});
+        Config.setGlobalConfig(options);
+
+        // Nothing but replies may go to standard output.
+        OutputStream out = new FileOutputStream(FileDescriptor.out);
+        System.setOut(System.err);
+
+        preload();
+        new Worker(options).serve(System.in, out);
+        System.exit(0);
+    }
+}
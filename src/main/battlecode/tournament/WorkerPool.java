@@ -0,0 +1,305 @@
+package battlecode.tournament;
+
+import battlecode.serial.MatchResult;
+import battlecode.server.Server;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.*;
+
+/**
+ * Runs match jobs in separate JVMs, a fixed number at a time. Each worker is
+ * started with this JVM's classpath and a configuration file written for its
+ * job, and runs battlecode.server.Main in headless mode. A worker that exits
+ * without writing its results is started again, up to a fixed number of
+ * times.
+ * <p/>
+ * If a result cache is set, a series that has been played before is taken
+ * from the cache instead, except for a random fraction of them which are
+ * played again to check that the engine really is deterministic.
+ * <p/>
+ * Finished jobs, successful or not, are put on the completion queue.
+ */
+public class WorkerPool {
+
+    private final ExecutorService executor;
+
+    private final BlockingQueue<MatchJob> completed = new LinkedBlockingQueue<MatchJob>();
+
+    private final String configFile;
+
+    private final Properties matchOptions;
+
+    protected final String[] jvmArgs;
+
+    private final int retries;
+
+    protected final String java;
+
+    protected final String classpath;
+
+    private ResultCache cache;
+
+    private double verifyFraction;
+
+    private final Random random = new Random();
+
+    private int hits, misses, verified, mismatches;
+
+    public WorkerPool(TournamentManifest manifest) {
+        this(manifest.getWorkers(), manifest.getRetries(), manifest.getConfigFile(),
+                manifest.getMatchOptions(), manifest.getJvmArgs());
+        if (manifest.getCacheDir() != null)
+            setCache(new ResultCache(manifest.getCacheDir()), manifest.getCacheVerify());
+    }
+
+    /**
+     * @param workers      the number of jobs to run at once
+     * @param retries      how many times to run a failed job again
+     * @param configFile   the base configuration file for workers, or null
+     * @param matchOptions bc.* options for every match
+     * @param jvmArgs      extra arguments for worker JVMs
+     */
+    public WorkerPool(int workers, int retries, String configFile,
+                      Properties matchOptions, String[] jvmArgs) {
+        this.retries = retries;
+        this.configFile = configFile;
+        this.matchOptions = matchOptions;
+        this.jvmArgs = jvmArgs;
+        java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        classpath = System.getProperty("java.class.path");
+        executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private int count;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "tournament-worker-" + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Sets the cache of series results.
+     *
+     * @param cache          the cache, or null for none
+     * @param verifyFraction the fraction of cache hits to play again anyway
+     */
+    public void setCache(ResultCache cache, double verifyFraction) {
+        this.cache = cache;
+        this.verifyFraction = verifyFraction;
+    }
+
+    /**
+     * Queues a job to run as soon as a worker is free.
+     */
+    public void submit(final MatchJob job) {
+        executor.execute(new Runnable() {
+            public void run() {
+                execute(job);
+                completed.add(job);
+            }
+        });
+    }
+
+    /**
+     * Waits for the next job to finish.
+     *
+     * @return the job, with either its results or its failure set
+     */
+    public MatchJob take() throws InterruptedException {
+        return completed.take();
+    }
+
+    /**
+     * Stops the workers once the queued jobs are done.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Describes how well the result cache worked.
+     *
+     * @return the report, or null if there is no cache
+     */
+    public synchronized String cacheReport() {
+        if (cache == null)
+            return null;
+        return String.format("result cache: %d hits, %d misses, %d hits verified, %d nondeterministic",
+                hits, misses, verified, mismatches);
+    }
+
+    private void execute(MatchJob job) {
+        if (job.isCancelled()) {
+            job.setFailure("cancelled");
+            return;
+        }
+
+        Properties config;
+        try {
+            config = job.buildConfig(configFile, matchOptions);
+        } catch (IOException e) {
+            job.setFailure(e.getMessage());
+            return;
+        }
+
+        String key = null;
+        MatchResult[] cached = null;
+        if (cache != null) {
+            try {
+                key = cache.key(job, config);
+                cached = cache.get(key);
+                if (cached != null && !Series.decides(job, cached))
+                    cached = null;
+            } catch (IOException e) {
+                Server.warn("couldn't look up series " + job + " in the result cache: " + e.getMessage());
+            }
+        }
+        if (cached != null) {
+            boolean verify;
+            synchronized (this) {
+                hits++;
+                verify = random.nextDouble() < verifyFraction;
+            }
+            if (!verify) {
+                try {
+                    cache.copyMatchFile(key, job.getMatchFile());
+                    job.setResults(cached);
+                    return;
+                } catch (IOException e) {
+                    Server.warn("couldn't copy the cached match file of " + job + ": " + e.getMessage());
+                }
+            }
+        } else if (cache != null) {
+            synchronized (this) {
+                misses++;
+            }
+        }
+
+        simulate(job, config);
+
+        MatchResult[] results = job.getResults();
+        if (results == null || key == null)
+            return;
+        if (cached != null) {
+            boolean same = sameOutcome(cached, results);
+            synchronized (this) {
+                verified++;
+                if (!same)
+                    mismatches++;
+            }
+            if (!same)
+                Server.warn("series " + job + " played out differently from its cached result; the engine or a player is nondeterministic");
+        }
+        try {
+            cache.put(key, results, job.getMatchFile());
+        } catch (IOException e) {
+            Server.warn("couldn't store series " + job + " in the result cache: " + e.getMessage());
+        }
+    }
+
+    private static boolean sameOutcome(MatchResult[] a, MatchResult[] b) {
+        if (a.length != b.length)
+            return false;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i].getWinner() != b[i].getWinner() || a[i].getRounds() != b[i].getRounds()
+                    || !a[i].getMap().equals(b[i].getMap()))
+                return false;
+        }
+        return true;
+    }
+
+    private void simulate(MatchJob job, Properties config) {
+        long start = System.currentTimeMillis();
+        try {
+            simulateWithRetries(job, config);
+        } finally {
+            job.setTimes(start, System.currentTimeMillis());
+        }
+    }
+
+    private void simulateWithRetries(MatchJob job, Properties config) {
+        String failure = null;
+        while (job.getAttempts() <= retries) {
+            if (job.isCancelled()) {
+                job.setFailure("cancelled");
+                return;
+            }
+            job.attempt();
+            try {
+                MatchResult[] results = runJob(job, config);
+                if (Series.decides(job, results)) {
+                    job.setResults(results);
+                    job.setFailure(null);
+                    return;
+                }
+                if (results == null || results.length == 0)
+                    failure = "worker exited without results";
+                else
+                    failure = String.format("worker exited after %d of %d maps without deciding the series",
+                            results.length, job.getMaps().length);
+            } catch (IOException e) {
+                failure = e.getMessage();
+            } catch (InterruptedException e) {
+                job.setFailure("interrupted");
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (job.isCancelled()) {
+                job.setFailure("cancelled");
+                return;
+            }
+            Server.warn(String.format("series %s failed on attempt %d: %s (see %s)",
+                    job, job.getAttempts(), failure, job.getLogFile()));
+        }
+        job.setFailure(failure);
+    }
+
+    /**
+     * Runs a job in a new JVM and waits for it to exit.
+     *
+     * @return the results the worker wrote, or null if there are none
+     */
+    protected MatchResult[] runJob(MatchJob job, Properties config) throws IOException, InterruptedException {
+        job.getResultFile().delete();
+        job.writeConfig(config);
+
+        List<String> command = new ArrayList<String>();
+        command.add(java);
+        for (String arg : jvmArgs)
+            command.add(arg);
+        command.add("-cp");
+        command.add(classpath);
+        command.add("battlecode.server.Main");
+        command.add("-c");
+        command.add(job.getConfigFile().getPath());
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        job.setProcess(process);
+        process.getOutputStream().close();
+
+        OutputStream log = new BufferedOutputStream(new FileOutputStream(job.getLogFile(), job.getAttempts() > 1));
+        InputStream in = process.getInputStream();
+        try {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) >= 0)
+                log.write(buf, 0, n);
+        } finally {
+            in.close();
+            log.close();
+        }
+
+        int status = process.waitFor();
+        job.setProcess(null);
+        if (status != 0)
+            throw new IOException("worker exited with status " + status);
+        return job.readResults();
+    }
+}
@@ -0,0 +1,431 @@
+package battlecode.world;
+
+import battlecode.common.MapLocation;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+import battlecode.common.TerrainTile;
+import battlecode.server.Config;
+import battlecode.world.GameMap.MapProperties;
+import battlecode.world.XMLMapHandler.MineData;
+import battlecode.world.XMLMapHandler.NodeData;
+import battlecode.world.XMLMapHandler.RobotData;
+import battlecode.world.XMLMapHandler.SymbolData;
+import battlecode.world.XMLMapHandler.TerrainData;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * A compact binary form of the XML map files, which is much quicker to load.
+ * A binary map is made from an XML map with
+ * <pre>
+ * java battlecode.world.BinaryMap convert [map names...]
+ * </pre>
+ * which writes <code>name.bmap</code> next to every <code>name.xml</code> in
+ * the map path, or just the ones named. When a map is loaded, its binary
+ * file is used instead of its XML file if the binary file is at least as new,
+ * so an XML map that is edited after it was converted is still loaded from
+ * the XML until it is converted again.
+ * <pre>
+ * java battlecode.world.BinaryMap time [map names...]
+ * </pre>
+ * reports how long every map takes to load in each format.
+ * <p/>
+ * The file is big-endian, and holds:
+ * <ul>
+ * <li>the magic number <code>BCMP</code> and the format version, a short</li>
+ * <li>the width and height of the map, as shorts</li>
+ * <li>the number of map properties, a byte, and then the name (in the form
+ * of {@link DataOutput#writeUTF}) and int value of each</li>
+ * <li>the number of symbols, a short, and then each symbol: a kind byte
+ * followed by the names of the enum constants the symbol is made of, where
+ * an empty name stands for no mine</li>
+ * <li>the symbols of the squares, column by column, as runs of squares with
+ * the same symbol: the length of each run is an unsigned short, and is
+ * followed by the symbol, a byte if there are at most 256 symbols and a short
+ * otherwise</li>
+ * <li>the number of node links, an int, and then the coordinates of the ends
+ * of each as shorts, and a byte that is 1 if the link is one way</li>
+ * </ul>
+ * Enum constants are stored by name, so that binary maps stay valid when
+ * constants are added.
+ */
+class BinaryMap {
+
+    static final String EXTENSION = ".bmap";
+
+    private static final int MAGIC = 0x42434d50; // BCMP
+
+    private static final short VERSION = 1;
+
+    private static final byte TERRAIN = 0, MINE = 1, ROBOT = 2, NODE = 3;
+
+    private BinaryMap() {
+    }
+
+    /**
+     * @return the binary file of a map in a map path, whether or not it exists
+     */
+    static File binaryFile(String mapName, String mapPath) {
+        return new File(mapPath, mapName + EXTENSION);
+    }
+
+    /**
+     * @return whether a map should be loaded from its binary file
+     */
+    static boolean useBinary(File binary, File xml) {
+        return binary.isFile() && (!xml.exists() || binary.lastModified() >= xml.lastModified());
+    }
+
+    /**
+     * Maps a file into memory.
+     */
+    static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes a map in binary form.
+     */
+    static void write(XMLMapHandler handler, OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        SymbolData[][] map = handler.map;
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(handler.mapWidth);
+        out.writeShort(handler.mapHeight);
+
+        out.writeByte(handler.mapProperties.size());
+        for (Map.Entry<MapProperties, Integer> e : handler.mapProperties.entrySet()) {
+            out.writeUTF(e.getKey().name());
+            out.writeInt(e.getValue());
+        }
+
+        // Symbols are shared between the squares that use them.
+        Map<SymbolData, Integer> symbols = new IdentityHashMap<SymbolData, Integer>();
+        List<SymbolData> table = new ArrayList<SymbolData>();
+        for (SymbolData[] column : map) {
+            for (SymbolData d : column) {
+                if (!symbols.containsKey(d)) {
+                    symbols.put(d, table.size());
+                    table.add(d);
+                }
+            }
+        }
+        out.writeShort(table.size());
+        for (SymbolData d : table) {
+            if (d instanceof TerrainData) {
+                out.writeByte(TERRAIN);
+                out.writeUTF(((TerrainData) d).tile.name());
+            } else if (d instanceof MineData) {
+                out.writeByte(MINE);
+                out.writeUTF(((MineData) d).team.name());
+            } else if (d instanceof RobotData) {
+                RobotData r = (RobotData) d;
+                out.writeByte(ROBOT);
+                out.writeUTF(r.type.name());
+                out.writeUTF(r.team.name());
+                out.writeUTF(r.mine == null ? "" : r.mine.name());
+            } else {
+                NodeData n = (NodeData) d;
+                out.writeByte(NODE);
+                out.writeUTF(n.team.name());
+                out.writeUTF(n.mine == null ? "" : n.mine.name());
+            }
+        }
+
+        boolean wide = table.size() > 256;
+        int run = 0, symbol = -1;
+        for (SymbolData[] column : map) {
+            for (SymbolData d : column) {
+                int next = symbols.get(d);
+                if (next != symbol || run == 0xffff) {
+                    writeRun(out, run, symbol, wide);
+                    run = 0;
+                    symbol = next;
+                }
+                run++;
+            }
+        }
+        writeRun(out, run, symbol, wide);
+
+        out.writeInt(handler.nodeLinks.size());
+        for (MapLocation[] link : handler.nodeLinks) {
+            out.writeShort(link[0].x);
+            out.writeShort(link[0].y);
+            out.writeShort(link[1].x);
+            out.writeShort(link[1].y);
+            out.writeByte(link.length > 2 ? 1 : 0);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a map in binary form.
+     *
+     * @param fileName the name of the file, for error messages
+     * @throws IllegalArgumentException if the map is malformed
+     */
+    static XMLMapHandler read(String fileName, ByteBuffer buf) {
+        buf = buf.duplicate();
+        try {
+            if (buf.getInt() != MAGIC)
+                fail(fileName, "it isn't a binary map");
+            short version = buf.getShort();
+            if (version != VERSION)
+                fail(fileName, "it is version " + version + " of the format rather than " + VERSION);
+
+            XMLMapHandler handler = new XMLMapHandler();
+            int width = handler.mapWidth = buf.getShort();
+            int height = handler.mapHeight = buf.getShort();
+            if (width <= 0 || height <= 0)
+                fail(fileName, "its size is " + width + "x" + height);
+
+            int properties = buf.get() & 0xff;
+            for (int i = 0; i < properties; i++)
+                handler.mapProperties.put(valueOf(fileName, MapProperties.class, readName(buf)), buf.getInt());
+
+            int count = buf.getShort() & 0xffff;
+            SymbolData[] table = new SymbolData[count];
+            for (int i = 0; i < count; i++) {
+                byte kind = buf.get();
+                if (kind == TERRAIN)
+                    table[i] = new TerrainData(valueOf(fileName, TerrainTile.class, readName(buf)));
+                else if (kind == MINE)
+                    table[i] = new MineData(valueOf(fileName, Team.class, readName(buf)));
+                else if (kind == ROBOT) {
+                    RobotType type = valueOf(fileName, RobotType.class, readName(buf));
+                    Team team = valueOf(fileName, Team.class, readName(buf));
+                    table[i] = new RobotData(type, team, readMine(fileName, buf));
+                } else if (kind == NODE) {
+                    Team team = valueOf(fileName, Team.class, readName(buf));
+                    table[i] = new NodeData(team, readMine(fileName, buf));
+                } else
+                    fail(fileName, "symbol " + i + " is of unknown kind " + kind);
+            }
+
+            boolean wide = count > 256;
+            SymbolData[][] map = handler.map = new SymbolData[width][height];
+            int run = 0;
+            SymbolData data = null;
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    if (run == 0) {
+                        run = buf.getShort() & 0xffff;
+                        int symbol = wide ? buf.getShort() & 0xffff : buf.get() & 0xff;
+                        if (run == 0 || symbol >= count)
+                            fail(fileName, "the run at square " + x + "," + y + " is malformed");
+                        data = table[symbol];
+                    }
+                    map[x][y] = data;
+                    run--;
+                }
+            }
+            if (run != 0)
+                fail(fileName, "the last run is too long");
+
+            int links = buf.getInt();
+            for (int i = 0; i < links; i++) {
+                MapLocation from = new MapLocation(buf.getShort(), buf.getShort());
+                MapLocation to = new MapLocation(buf.getShort(), buf.getShort());
+                if (buf.get() != 0)
+                    handler.nodeLinks.add(new MapLocation[]{from, to, null});
+                else
+                    handler.nodeLinks.add(new MapLocation[]{from, to});
+            }
+            return handler;
+        } catch (BufferUnderflowException e) {
+            fail(fileName, "it is truncated");
+            return null;
+        }
+    }
+
+    private static void writeRun(DataOutputStream out, int run, int symbol, boolean wide) throws IOException {
+        if (run == 0)
+            return;
+        out.writeShort(run);
+        if (wide)
+            out.writeShort(symbol);
+        else
+            out.writeByte(symbol);
+    }
+
+    private static String readName(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort() & 0xffff];
+        buf.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Team readMine(String fileName, ByteBuffer buf) {
+        String name = readName(buf);
+        return name.length() == 0 ? null : valueOf(fileName, Team.class, name);
+    }
+
+    private static <T extends Enum<T>> T valueOf(String fileName, Class<T> type, String name) {
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            fail(fileName, "there is no " + type.getSimpleName() + " called '" + name + "'");
+            return null;
+        }
+    }
+
+    private static void fail(String fileName, String reason) {
+        XMLMapHandler.fail("can't load '" + fileName + "' because " + reason, "Convert the map from XML again.\n");
+    }
+
+    /**
+     * Converts an XML map to binary, replacing the binary file if there is one.
+     */
+    static File convert(String mapName, String mapPath) throws IOException {
+        XMLMapHandler handler = parseXML(mapName, mapPath);
+        if (handler == null)
+            throw new IOException("couldn't parse " + mapName);
+        File target = binaryFile(mapName, mapPath).getAbsoluteFile();
+        File temp = File.createTempFile(mapName, EXTENSION + ".tmp", target.getParentFile());
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                write(handler, out);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(target)) {
+                target.delete();
+                if (!temp.renameTo(target))
+                    throw new IOException("couldn't replace " + target);
+            }
+        } finally {
+            temp.delete();
+        }
+        return target;
+    }
+
+    static XMLMapHandler parseXML(String mapName, String mapPath) throws IOException {
+        String fileName = XMLMapHandler.mapFileName(mapName, mapPath);
+        InputStream in = new BufferedInputStream(new FileInputStream(fileName));
+        try {
+            return XMLMapHandler.parseMap(fileName, in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the names of the XML maps in a map path
+     */
+    private static List<String> xmlMaps(String mapPath) {
+        List<String> names = new ArrayList<String>();
+        String[] files = new File(mapPath).list();
+        if (files != null) {
+            for (String f : files) {
+                if (f.endsWith(".xml"))
+                    names.add(f.substring(0, f.length() - ".xml".length()));
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Loads every map from XML and from binary, converting the ones that
+     * have no binary file to a temporary file, and prints how long that
+     * takes.
+     */
+    private static void time(List<String> names, String mapPath, int repeats) throws IOException {
+        List<File> binaries = new ArrayList<File>();
+        List<File> temps = new ArrayList<File>();
+        for (String name : names) {
+            File binary = binaryFile(name, mapPath);
+            if (!useBinary(binary, new File(XMLMapHandler.mapFileName(name, mapPath)))) {
+                binary = File.createTempFile(name, EXTENSION);
+                binary.deleteOnExit();
+                FileOutputStream out = new FileOutputStream(binary);
+                try {
+                    write(parseXML(name, mapPath), out);
+                } finally {
+                    out.close();
+                }
+                temps.add(binary);
+            }
+            binaries.add(binary);
+        }
+
+        // One pass to warm up, then the timed ones.
+        long[] xmlTimes = new long[names.size()];
+        long[] binaryTimes = new long[names.size()];
+        for (int pass = 0; pass <= repeats; pass++) {
+            for (int i = 0; i < names.size(); i++) {
+                String name = names.get(i);
+                long start = System.nanoTime();
+                parseXML(name, mapPath);
+                long middle = System.nanoTime();
+                read(name, map(binaries.get(i)));
+                long end = System.nanoTime();
+                if (pass > 0) {
+                    xmlTimes[i] += middle - start;
+                    binaryTimes[i] += end - middle;
+                }
+            }
+        }
+
+        System.out.println("map\txml bytes\tbinary bytes\txml ms\tbinary ms");
+        long xmlBytes = 0, binaryBytes = 0, xmlTotal = 0, binaryTotal = 0;
+        for (int i = 0; i < names.size(); i++) {
+            long x = new File(XMLMapHandler.mapFileName(names.get(i), mapPath)).length();
+            long b = binaries.get(i).length();
+            System.out.println(String.format("%s\t%d\t%d\t%.3f\t%.3f", names.get(i), x, b,
+                    xmlTimes[i] / 1e6 / repeats, binaryTimes[i] / 1e6 / repeats));
+            xmlBytes += x;
+            binaryBytes += b;
+            xmlTotal += xmlTimes[i];
+            binaryTotal += binaryTimes[i];
+        }
+        System.out.println(String.format("all %d maps\t%d\t%d\t%.3f\t%.3f", names.size(), xmlBytes, binaryBytes,
+                xmlTotal / 1e6 / repeats, binaryTotal / 1e6 / repeats));
+        for (File f : temps)
+            f.delete();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || !(args[0].equals("convert") || args[0].equals("time"))) {
+            System.err.println("usage: BinaryMap convert|time [map names...]");
+            System.err.println("maps are looked for in bc.game.map-path; the default is every XML map there");
+            System.exit(1);
+        }
+        String mapPath = Config.getGlobalConfig().get("bc.game.map-path");
+        List<String> names = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : xmlMaps(mapPath);
+        if (args[0].equals("time")) {
+            time(names, mapPath, 50);
+            return;
+        }
+        int failed = 0;
+        for (String name : names) {
+            try {
+                File f = convert(name, mapPath);
+                System.out.println("converted " + name + " to " + f);
+            } catch (IllegalArgumentException e) {
+                System.err.println("couldn't convert " + name);
+                failed++;
+            } catch (IOException e) {
+                System.err.println("couldn't convert " + name + ": " + e.getMessage());
+                failed++;
+            }
+        }
+        if (failed > 0)
+            System.exit(1);
+    }
+}
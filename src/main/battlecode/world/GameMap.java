@@ -3,10 +3,12 @@ package battlecode.world;
 import battlecode.common.Direction;
 import battlecode.common.GameConstants;
 import battlecode.common.MapLocation;
+import battlecode.common.RobotLevel;
 import battlecode.common.RobotType;
 import battlecode.common.TerrainTile;
 import battlecode.serial.GenericGameMap;
 
+import java.io.ObjectStreamException;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.Map;
@@ -34,9 +36,19 @@ public class GameMap implements GenericGameMap {
      */
     private final int mapWidth, mapHeight;
     /**
-     * The tiles on the map.
+     * The tiles on the map. This is what is serialized; the fields below are
+     * worked out from it.
      */
     private final TerrainTile[][] mapTiles;
+    /**
+     * The ordinal of the tile at each location, row by row.
+     */
+    private transient byte[] terrain;
+    /**
+     * For each robot level, a bit for each location, row by row, that is set
+     * if robots at that level can traverse its tile.
+     */
+    private transient long[][] traversable;
     /**
      * The coordinates of the origin.
      */
@@ -80,6 +92,7 @@ public class GameMap implements GenericGameMap {
         this.maxRounds = gm.maxRounds;
         //this.minPoints = gm.minPoints;
 
+        index();
     }
 
     /**
@@ -127,6 +140,38 @@ public class GameMap implements GenericGameMap {
         
         this.mapTiles = mapTiles;
 
+        index();
+    }
+
+    private static final TerrainTile[] TILES = TerrainTile.values();
+
+    private static final RobotLevel[] LEVELS = RobotLevel.values();
+
+    /**
+     * Works out the row-major terrain and the traversability bitsets from
+     * the tile matrix.
+     */
+    private void index() {
+        terrain = new byte[mapWidth * mapHeight];
+        traversable = new long[LEVELS.length][(terrain.length + 63) >>> 6];
+        for (int x = 0; x < mapWidth; x++) {
+            for (int y = 0; y < mapHeight; y++) {
+                int i = y * mapWidth + x;
+                TerrainTile tile = mapTiles[x][y];
+                terrain[i] = (byte) tile.ordinal();
+                for (RobotLevel level : LEVELS) {
+                    if (tile.isTraversableAtHeight(level))
+                        traversable[level.ordinal()][i >>> 6] |= 1L << i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Deserialized maps are copied, so that their terrain gets indexed.
+     */
+    private Object readResolve() throws ObjectStreamException {
+        return new GameMap(this);
     }
 
     public void setTheme(String theme) {
@@ -199,10 +244,37 @@ public class GameMap implements GenericGameMap {
      *         off the map.
      */
     public TerrainTile getTerrainTile(MapLocation location) {
-        if (!onTheMap(location))
+        return getTerrainTile(location.x, location.y);
+    }
+
+    /**
+     * Determines the type of the terrain on the map at the given
+     * coordinates.
+     *
+     * @return the TerrainTile at the given coordinates, and
+     *         TerrainTile.OFF_MAP if they're off the map
+     */
+    public TerrainTile getTerrainTile(int x, int y) {
+        x -= mapOriginX;
+        y -= mapOriginY;
+        if (x < 0 || y < 0 || x >= mapWidth || y >= mapHeight)
             return TerrainTile.OFF_MAP;
 
-        return mapTiles[location.x - mapOriginX][location.y - mapOriginY];
+        return TILES[terrain[y * mapWidth + x]];
+    }
+
+    /**
+     * Determines whether robots at the given level can traverse the terrain
+     * at the given coordinates, which is never the case off the map.
+     */
+    public boolean canMove(int x, int y, RobotLevel level) {
+        x -= mapOriginX;
+        y -= mapOriginY;
+        if (x < 0 || y < 0 || x >= mapWidth || y >= mapHeight)
+            return false;
+
+        int i = y * mapWidth + x;
+        return (traversable[level.ordinal()][i >>> 6] & (1L << i)) != 0;
     }
 
     /**
@@ -254,7 +326,11 @@ public class GameMap implements GenericGameMap {
             BUFFER = buf + GameConstants.VISION_UPGRADE_BONUS;
         }
 
-        private final boolean data[][];
+        /**
+         * A bit for every location that has been seen, row by row, including
+         * a border of BUFFER locations around the map.
+         */
+        private final long[] data;
         private final GameMap map;
         private final int Xwidth;
         private final int Ywidth;
@@ -263,7 +339,7 @@ public class GameMap implements GenericGameMap {
             this.map = map;
             Xwidth = map.mapWidth + (2 * BUFFER);
             Ywidth = map.mapHeight + (2 * BUFFER);
-            data = new boolean[Xwidth][Ywidth];
+            data = new long[(Xwidth * Ywidth + 63) >>> 6];
         }
 
         public void rememberLocations(MapLocation loc, int[] offsetsX, int[] offsetsY) {
@@ -271,7 +347,28 @@ public class GameMap implements GenericGameMap {
             int Y = loc.y - map.mapOriginY + BUFFER;
 
             for (int i = 0; i < offsetsX.length; i++) {
-                data[X + offsetsX[i]][Y + offsetsY[i]] = true;
+                int bit = (Y + offsetsY[i]) * Xwidth + X + offsetsX[i];
+                data[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        /**
+         * Remembers the locations in a vision stamp centered on loc, a row
+         * at a time.
+         */
+        public void rememberLocations(MapLocation loc, VisionStamp stamp) {
+            int X = loc.x - map.mapOriginX + BUFFER + stamp.minX;
+            int Y = loc.y - map.mapOriginY + BUFFER + stamp.minY;
+
+            long[] rows = stamp.rows;
+            for (int r = 0; r < rows.length; r++) {
+                int bit = (Y + r) * Xwidth + X;
+                int word = bit >>> 6;
+                int shift = bit & 63;
+                data[word] |= rows[r] << shift;
+                // the part of the row that spills into the next word
+                if (shift != 0 && (rows[r] >>> (64 - shift)) != 0)
+                    data[word + 1] |= rows[r] >>> (64 - shift);
             }
         }
 
@@ -279,11 +376,61 @@ public class GameMap implements GenericGameMap {
             int X = loc.x - map.mapOriginX + BUFFER;
             int Y = loc.y - map.mapOriginY + BUFFER;
 
-            if (X >= 0 && X < Xwidth && Y >= 0 && Y < Ywidth && data[X][Y])
-                return map.getTerrainTile(loc);
-            else
-                return null;
+            if (X >= 0 && X < Xwidth && Y >= 0 && Y < Ywidth) {
+                int bit = Y * Xwidth + X;
+                if ((data[bit >>> 6] & (1L << bit)) != 0)
+                    return map.getTerrainTile(loc);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The locations a robot sees, as offsets from its own location, in the
+     * form of a bitmask for each row.
+     */
+    public static class VisionStamp {
+
+        private final int minX, minY;
+        /**
+         * Bit k of row r is set if the offset (minX + k, minY + r) is seen.
+         */
+        private final long[] rows;
+
+        public VisionStamp(int[] offsetsX, int[] offsetsY) {
+            int minX = 0, maxX = 0, minY = 0, maxY = 0;
+            for (int i = 0; i < offsetsX.length; i++) {
+                minX = Math.min(minX, offsetsX[i]);
+                maxX = Math.max(maxX, offsetsX[i]);
+                minY = Math.min(minY, offsetsY[i]);
+                maxY = Math.max(maxY, offsetsY[i]);
+            }
+            if (maxX - minX >= 64)
+                throw new IllegalArgumentException("vision is too wide to stamp");
+            this.minX = minX;
+            this.minY = minY;
+            rows = new long[maxY - minY + 1];
+            for (int i = 0; i < offsetsX.length; i++)
+                rows[offsetsY[i] - minY] |= 1L << (offsetsX[i] - minX);
+        }
+    }
+
+    /**
+     * @return the vision stamps of every robot type, in the same order as
+     *         the offsets of {@link #computeVisibleOffsets}
+     */
+    public static Map<RobotType, VisionStamp[]> computeVisionStamps() {
+        Map<RobotType, VisionStamp[]> stamps = new EnumMap<RobotType, VisionStamp[]>(RobotType.class);
+        for (Map.Entry<RobotType, int[][][]> e : computeVisibleOffsets().entrySet()) {
+            int[][][] offsets = e.getValue();
+            VisionStamp[] stampsForType = new VisionStamp[offsets.length];
+            for (int i = 0; i < offsets.length; i++) {
+                if (offsets[i] != null)
+                    stampsForType[i] = new VisionStamp(offsets[i][0], offsets[i][1]);
+            }
+            stamps.put(e.getKey(), stampsForType);
         }
+        return stamps;
     }
 
     public static int[][] computeOffsets360(int radiusSquared) {
@@ -30,6 +30,7 @@ import battlecode.engine.signal.Signal;
 import battlecode.engine.signal.SignalHandler;
 import battlecode.serial.DominationFactor;
 import battlecode.serial.GameStats;
+import battlecode.serial.RoundKeyframe;
 import battlecode.serial.RoundStats;
 import battlecode.world.signal.AttackSignal;
 import battlecode.world.signal.BroadcastSignal;
@@ -77,6 +78,8 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     private double[] lastRoundResources = new double[2];
     private final Map<MapLocation3D, InternalObject> gameObjectsByLoc = new HashMap<MapLocation3D, InternalObject>();
     private double[] teamResources = new double[2];
+    // the resources as of the last FluxChangeSignal, before end of round decay
+    private double[] reportedResources = new double[2];
     private double[] teamSpawnRate = new double[2];
     private int[] teamCapturingNumber = new int[2];
 
@@ -176,7 +179,9 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         }
         removeDead();
         
-        addSignal(new FluxChangeSignal(teamResources));
+        FluxChangeSignal fluxSignal = new FluxChangeSignal(teamResources);
+        reportedResources = fluxSignal.getFlux();
+        addSignal(fluxSignal);
 		addSignal(new ResearchChangeSignal(research));
 
         if (timeLimitReached() && winner == null) {
@@ -495,7 +500,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
 
     public boolean canMove(RobotLevel level, MapLocation loc) {
 
-        return gameMap.getTerrainTile(loc).isTraversableAtHeight(level) && (gameObjectsByLoc.get(new MapLocation3D(loc, level)) == null);
+        return gameMap.canMove(loc.x, loc.y, level) && (gameObjectsByLoc.get(new MapLocation3D(loc, level)) == null);
     }
 
     public void splashDamageGround(MapLocation loc, double damage, double falloutFraction) {
@@ -571,6 +576,59 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         return gameStats;
     }
 
+    public RoundKeyframe getKeyframe() {
+        List<InternalRobot> robots = new ArrayList<InternalRobot>(gameObjectsByID.size());
+        for (InternalObject o : gameObjectsByID.values()) {
+            if (o instanceof InternalRobot)
+                robots.add((InternalRobot) o);
+        }
+        int n = robots.size();
+        int[] robotIDs = new int[n], robotTypes = new int[n], robotTeams = new int[n];
+        int[] robotX = new int[n], robotY = new int[n], directions = new int[n];
+        double[] energon = new double[n], shield = new double[n];
+        long[] controlBits = new long[n];
+        String[][] indicatorStrings = new String[n][];
+        for (int i = 0; i < n; i++) {
+            InternalRobot r = robots.get(i);
+            robotIDs[i] = r.getID();
+            robotTypes[i] = r.type.ordinal();
+            robotTeams[i] = r.getTeam().ordinal();
+            robotX[i] = r.getLocation().x;
+            robotY[i] = r.getLocation().y;
+            directions[i] = r.getDirection() == null ? -1 : r.getDirection().ordinal();
+            energon[i] = r.getEnergonLevel();
+            shield[i] = r.getShieldLevel();
+            controlBits[i] = r.getControlBits();
+            indicatorStrings[i] = r.getIndicatorStrings();
+        }
+
+        int m = mineLocations.size();
+        int[] mineX = new int[m], mineY = new int[m], mineTeams = new int[m];
+        int i = 0;
+        for (Entry<MapLocation, Team> entry : mineLocations.entrySet()) {
+            mineX[i] = entry.getKey().x;
+            mineY[i] = entry.getKey().y;
+            mineTeams[i] = entry.getValue().ordinal();
+            i++;
+        }
+
+        int c = encampmentMap.size();
+        int[] campX = new int[c], campY = new int[c], campTeams = new int[c];
+        i = 0;
+        for (Entry<MapLocation, Team> entry : encampmentMap.entrySet()) {
+            campX[i] = entry.getKey().x;
+            campY[i] = entry.getKey().y;
+            campTeams[i] = entry.getValue().ordinal();
+            i++;
+        }
+
+        double[][] progress = new ResearchChangeSignal(research).progress;
+
+        return new RoundKeyframe(currentRound, robotIDs, robotTypes, robotTeams,
+                robotX, robotY, directions, energon, shield, controlBits, indicatorStrings,
+                mineX, mineY, mineTeams, campX, campY, campTeams, reportedResources.clone(), progress);
+    }
+
     public void beginningOfExecution(int robotID) {
         InternalRobot r = (InternalRobot) getObjectByID(robotID);
         if (r != null)
@@ -746,6 +804,9 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     }
 
     public void visitIndicatorStringSignal(IndicatorStringSignal s) {
+        InternalRobot r = (InternalRobot) getObjectByID(s.getRobotID());
+        if (r != null)
+            r.setIndicatorString(s.getStringIndex(), s.getNewString());
         addSignal(s);
     }
 
@@ -945,23 +1006,24 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         return robots.toArray(new InternalRobot[robots.size()]);
     }
 
-    // TODO: make a faster implementation of this
     public MapLocation[] getAllMapLocationsWithinRadiusSq(MapLocation center, int radiusSquared) {
         ArrayList<MapLocation> locations = new ArrayList<MapLocation>();
 
         int radius = (int) Math.sqrt(radiusSquared);
 
-        int minXPos = center.x - radius;
-        int maxXPos = center.x + radius;
-        int minYPos = center.y - radius;
-        int maxYPos = center.y + radius;
+        // Only look at locations on the map.
+        MapLocation origin = gameMap.getMapOrigin();
+        int minXPos = Math.max(center.x - radius, origin.x);
+        int maxXPos = Math.min(center.x + radius, origin.x + gameMap.getWidth() - 1);
+        int minYPos = Math.max(center.y - radius, origin.y);
+        int maxYPos = Math.min(center.y + radius, origin.y + gameMap.getHeight() - 1);
 
         for (int x = minXPos; x <= maxXPos; x++) {
+            int dx = x - center.x;
             for (int y = minYPos; y <= maxYPos; y++) {
-                MapLocation loc = new MapLocation(x, y);
-                TerrainTile tile = gameMap.getTerrainTile(loc);
-                if (!tile.equals(TerrainTile.OFF_MAP) && loc.distanceSquaredTo(center) < radiusSquared)
-                    locations.add(loc);
+                int dy = y - center.y;
+                if (dx * dx + dy * dy < radiusSquared)
+                    locations.add(new MapLocation(x, y));
             }
         }
 
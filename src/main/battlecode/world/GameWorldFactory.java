@@ -6,6 +6,8 @@ import battlecode.common.Team;
 import battlecode.engine.PlayerFactory;
 import battlecode.world.signal.SpawnSignal;
 
+import java.io.File;
+
 /*
 TODO:
 - make the parser more robust, and with better failure modes
@@ -20,6 +22,16 @@ public class GameWorldFactory {
         return handler.createGameWorld(teamA, teamB, archonMemory);
     }
 
+    /**
+     * @return the file a map is loaded from, which is its binary file if
+     *         that is up to date and its XML file otherwise
+     */
+    public static File mapFile(String mapName, String mapPath) {
+        File xml = new File(XMLMapHandler.mapFileName(mapName, mapPath));
+        File binary = BinaryMap.binaryFile(mapName, mapPath);
+        return BinaryMap.useBinary(binary, xml) ? binary : xml;
+    }
+
     public static InternalRobot createPlayer(GameWorld gw, RobotType type, MapLocation loc, Team t, InternalRobot parent, boolean wakeDelay) {
 
         // first, make the robot
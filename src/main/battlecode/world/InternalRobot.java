@@ -31,13 +31,17 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
     protected volatile boolean energonChanged = true;
     protected volatile boolean shieldChanged = true;
     protected volatile long controlBits;
+    /**
+     * the indicator strings last set, which are only kept for keyframes
+     */
+    private final String[] indicatorStrings = new String[GameConstants.NUMBER_OF_INDICATOR_STRINGS];
     // is this used ever?
     protected volatile boolean hasBeenAttacked = false;
     private static boolean upkeepEnabled = Config.getGlobalConfig().getBoolean("bc.engine.upkeep");
     /**
-     * first index is robot type, second is direction, third is x or y
+     * first index is robot type, second is direction
      */
-    private static final Map<RobotType, int[][][]> offsets = GameMap.computeVisibleOffsets();
+    private static final Map<RobotType, GameMap.VisionStamp[]> stamps = GameMap.computeVisionStamps();
     /**
      * number of bytecodes used in the most recent round
      */
@@ -530,12 +534,12 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
     // TODO this year all robots have 360 vision, probably can make this better
     public void saveMapMemory(MapLocation oldLoc, MapLocation newLoc,
                               boolean fringeOnly) {
-    	int[][] myOffsets;
+    	GameMap.VisionStamp myStamp;
     	if (oldLoc == null)
-    		myOffsets = offsets.get(type)[0];
+    		myStamp = stamps.get(type)[0];
     	else
-    		myOffsets = offsets.get(type)[oldLoc.directionTo(newLoc).ordinal()];
-        mapMemory.rememberLocations(newLoc, myOffsets[0], myOffsets[1]);
+    		myStamp = stamps.get(type)[oldLoc.directionTo(newLoc).ordinal()];
+        mapMemory.rememberLocations(newLoc, myStamp);
     }
 
     public void setControlBits(long l) {
@@ -546,6 +550,18 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
         return controlBits;
     }
 
+    public void setIndicatorString(int stringIndex, String newString) {
+        indicatorStrings[stringIndex] = newString;
+    }
+
+    /**
+     * @return the robot's indicator strings, with null for those that have
+     *         never been set
+     */
+    public String[] getIndicatorStrings() {
+        return indicatorStrings.clone();
+    }
+
     public void setBytecodesUsed(int numBytecodes) {
         bytecodesUsed = numBytecodes;
     }
@@ -0,0 +1,176 @@
+package battlecode.world;
+
+import battlecode.server.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Checks a whole pool of maps for tournament legality at once, several maps
+ * at a time. Run it with
+ * <pre>
+ * java battlecode.world.LegalityChecker [-threads n] [-o report] [map names...]
+ * </pre>
+ * to check the named maps, or every map in bc.game.map-path. Maps are loaded
+ * the way matches load them, from their binary file if it is up to date.
+ * <p/>
+ * The report has a tab-separated line for every map, in the order the maps
+ * were given:
+ * <pre>
+ * map  status  problems  notes  ms  messages
+ * </pre>
+ * where status is <code>legal</code>, <code>illegal</code>,
+ * <code>unloadable</code> or <code>error</code>, notes are things that are
+ * legal but best avoided, and messages are all the problems and then all the
+ * notes, separated by <code>; </code>. Malformed map files are also reported
+ * on standard output as they are found, so when that is where the report
+ * goes, <code>-o</code> keeps the two apart. The exit status is 1 if any map
+ * is not legal.
+ */
+class LegalityChecker {
+
+    /**
+     * The outcome of checking one map.
+     */
+    private static class Report extends XMLMapHandler.LegalityWarning {
+
+        final String map;
+
+        String status;
+
+        long nanos;
+
+        final List<String> problems = new ArrayList<String>();
+
+        final List<String> notes = new ArrayList<String>();
+
+        Report(String map) {
+            this.map = map;
+        }
+
+        public void warn(String s) {
+            problems.add(s);
+            legal = false;
+        }
+
+        public void note(String s) {
+            notes.add(s);
+        }
+
+        String line() {
+            StringBuilder messages = new StringBuilder();
+            for (String s : problems)
+                messages.append(messages.length() == 0 ? "" : "; ").append(s);
+            for (String s : notes)
+                messages.append(messages.length() == 0 ? "" : "; ").append("note: ").append(s);
+            return String.format("%s\t%s\t%d\t%d\t%.1f\t%s", map, status, problems.size(), notes.size(),
+                    nanos / 1e6, messages.toString().replaceAll("[\t\r\n]+", " "));
+        }
+    }
+
+    private LegalityChecker() {
+    }
+
+    static XMLMapHandler load(String mapName, String mapPath) throws IOException {
+        File xml = new File(XMLMapHandler.mapFileName(mapName, mapPath));
+        File binary = BinaryMap.binaryFile(mapName, mapPath);
+        if (BinaryMap.useBinary(binary, xml))
+            return BinaryMap.read(binary.getPath(), BinaryMap.map(binary));
+        return BinaryMap.parseXML(mapName, mapPath);
+    }
+
+    static Report check(String mapName, String mapPath) {
+        Report report = new Report(mapName);
+        long start = System.nanoTime();
+        try {
+            XMLMapHandler handler = load(mapName, mapPath);
+            if (handler == null) {
+                report.status = "unloadable";
+                report.problems.add("couldn't create an XML parser");
+            } else
+                report.status = handler.isTournamentLegal(report) ? "legal" : "illegal";
+        } catch (IOException e) {
+            report.status = "unloadable";
+            report.problems.add(String.valueOf(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            // a malformed map, already described by the error reporter
+            report.status = "unloadable";
+            report.problems.add(e.getMessage() == null ? "malformed map file" : e.getMessage());
+        } catch (RuntimeException e) {
+            report.status = "error";
+            report.problems.add(e.toString());
+        }
+        report.nanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * @return the names of the maps in a map path, XML or binary
+     */
+    static List<String> maps(String mapPath) {
+        Set<String> names = new TreeSet<String>();
+        String[] files = new File(mapPath).list();
+        if (files != null) {
+            for (String f : files) {
+                if (f.endsWith(".xml"))
+                    names.add(f.substring(0, f.length() - ".xml".length()));
+                else if (f.endsWith(BinaryMap.EXTENSION))
+                    names.add(f.substring(0, f.length() - BinaryMap.EXTENSION.length()));
+            }
+        }
+        return new ArrayList<String>(names);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        PrintStream out = System.out;
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length)
+                threads = Math.max(1, Integer.parseInt(args[++i]));
+            else if (args[i].equals("-o") && i + 1 < args.length)
+                out = new PrintStream(new FileOutputStream(args[++i]), true);
+            else if (args[i].startsWith("-")) {
+                System.err.println("usage: LegalityChecker [-threads n] [-o report] [map names...]");
+                System.exit(1);
+            } else
+                names.add(args[i]);
+        }
+        final String mapPath = Config.getGlobalConfig().get("bc.game.map-path");
+        if (names.isEmpty())
+            names = maps(mapPath);
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Report>> futures = new ArrayList<Future<Report>>();
+        for (final String name : names) {
+            futures.add(executor.submit(new Callable<Report>() {
+                public Report call() {
+                    return check(name, mapPath);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        Map<String, Integer> counts = new TreeMap<String, Integer>();
+        out.println("map\tstatus\tproblems\tnotes\tms\tmessages");
+        for (Future<Report> f : futures) {
+            Report report = f.get();
+            out.println(report.line());
+            Integer n = counts.get(report.status);
+            counts.put(report.status, n == null ? 1 : n + 1);
+        }
+        if (out != System.out)
+            out.close();
+
+        System.err.println(String.format("checked %d maps in %.2f s with %d threads: %s", names.size(),
+                (System.nanoTime() - start) / 1e9, threads, counts));
+        Integer legal = counts.get("legal");
+        if ((legal == null ? 0 : legal) != names.size())
+            System.exit(1);
+    }
+}
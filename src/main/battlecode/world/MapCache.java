@@ -0,0 +1,165 @@
+package battlecode.world;
+
+import battlecode.engine.ErrorReporter;
+import battlecode.server.Config;
+import battlecode.server.Server;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps every map that has been loaded in this process, so that a map is
+ * only parsed once however many matches are played on it, and its legality
+ * is only checked once.
+ * <p/>
+ * A map is looked up by the path of its file. If the file's modification
+ * time or length has changed since the map was parsed, the file is read and
+ * hashed again, and reparsed only if its contents have changed, so that
+ * editing a map between matches always takes effect. Maps that fail to
+ * parse are not kept. A map that has an up to date {@link BinaryMap} is
+ * loaded from that instead of its XML.
+ */
+class MapCache {
+
+    private static class Entry {
+
+        long modified;
+
+        long length;
+
+        byte[] digest;
+
+        XMLMapHandler handler;
+
+        Boolean legal;
+    }
+
+    private static final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    private MapCache() {
+    }
+
+    /**
+     * @return the parsed map
+     * @throws IllegalArgumentException if the map can't be read or is
+     *                                  malformed
+     */
+    static synchronized XMLMapHandler load(String mapName, String mapPath) {
+        return entry(mapName, mapPath).handler;
+    }
+
+    /**
+     * @return whether the map is legal for tournaments, checking it only if
+     *         it hasn't been checked since it last changed
+     * @throws IllegalArgumentException if the map can't be read or is
+     *                                  malformed
+     */
+    static synchronized boolean isTournamentLegal(String mapName, String mapPath) {
+        Entry e = entry(mapName, mapPath);
+        if (e.legal == null)
+            e.legal = e.handler.isTournamentLegal();
+        return e.legal;
+    }
+
+    /**
+     * Forgets every map.
+     */
+    static synchronized void clear() {
+        entries.clear();
+    }
+
+    private static Entry entry(String mapName, String mapPath) {
+        File xml = new File(XMLMapHandler.mapFileName(mapName, mapPath)).getAbsoluteFile();
+        File binary = BinaryMap.binaryFile(mapName, mapPath).getAbsoluteFile();
+        boolean useBinary = BinaryMap.useBinary(binary, xml);
+        File file = useBinary ? binary : xml;
+        String fileName = useBinary ? binary.getPath() : XMLMapHandler.mapFileName(mapName, mapPath);
+        String key = file.getPath();
+
+        // Look at the file before reading it, so that a change made while
+        // it is being read is noticed next time.
+        long modified = file.lastModified();
+        long length = file.length();
+        Entry e = entries.get(key);
+        if (e != null && e.modified == modified && e.length == length)
+            return e;
+
+        long start = System.nanoTime();
+        ByteBuffer data = useBinary ? map(binary, fileName) : ByteBuffer.wrap(read(file, fileName));
+        byte[] digest = digest(data);
+        if (e != null && Arrays.equals(e.digest, digest)) {
+            e.modified = modified;
+            e.length = length;
+            return e;
+        }
+
+        entries.remove(key);
+        XMLMapHandler handler;
+        if (useBinary)
+            handler = BinaryMap.read(fileName, data);
+        else
+            handler = XMLMapHandler.parseMap(fileName, new ByteArrayInputStream(data.array()));
+        if (handler == null)
+            throw new IllegalArgumentException("can't parse " + fileName);
+        Server.debug(Config.getGlobalConfig(),
+                String.format("loaded map %s in %.1f ms", file.getName(), (System.nanoTime() - start) / 1e6));
+        e = new Entry();
+        e.modified = modified;
+        e.length = length;
+        e.digest = digest;
+        e.handler = handler;
+        entries.put(key, e);
+        return e;
+    }
+
+    private static ByteBuffer map(File file, String fileName) {
+        try {
+            return BinaryMap.map(file);
+        } catch (IOException e) {
+            XMLMapHandler.cantLoad(fileName, e);
+            return null;
+        }
+    }
+
+    private static byte[] read(File file, String fileName) {
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                long length = file.length();
+                byte[] data = new byte[(int) Math.max(length, 0) + 1];
+                int n = 0, r;
+                while ((r = in.read(data, n, data.length - n)) >= 0) {
+                    n += r;
+                    if (n == data.length)
+                        data = Arrays.copyOf(data, n * 2);
+                }
+                return Arrays.copyOf(data, n);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            XMLMapHandler.cantLoad(fileName, e);
+            return null;
+        }
+    }
+
+    private static byte[] digest(ByteBuffer data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(data.duplicate());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-1, so there's no need to do better
+            ErrorReporter.report(e, false);
+            return null;
+        }
+    }
+}
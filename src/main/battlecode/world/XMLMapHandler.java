@@ -12,8 +12,7 @@ import org.xml.sax.helpers.DefaultHandler;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.InputStream;
 import java.util.*;
 
 /**
@@ -29,11 +28,11 @@ class XMLMapHandler extends DefaultHandler {
     /**
      * Stores all the map properties.
      */
-    private int mapWidth, mapHeight;
-    private SymbolData[][] map = null;
+    int mapWidth, mapHeight;
+    SymbolData[][] map = null;
     private Map<Character, SymbolData> symbolMap = new HashMap<Character, SymbolData>();
 
-    private interface SymbolData {
+    interface SymbolData {
 
         public TerrainTile tile();
         /* Returns {@code true} if createGameObject() does anything. */
@@ -48,7 +47,7 @@ class XMLMapHandler extends DefaultHandler {
         public SymbolData create(Attributes att);
     }
 
-    private static class TerrainData implements SymbolData {
+    static class TerrainData implements SymbolData {
 
         public static final SymbolDataFactory factory = new SymbolDataFactory() {
 
@@ -57,7 +56,7 @@ class XMLMapHandler extends DefaultHandler {
                 return new TerrainData(TerrainTile.valueOf(type));
             }
         };
-        private TerrainTile tile;
+        final TerrainTile tile;
 
         public TerrainData(TerrainTile tile) {
             this.tile = tile;
@@ -78,7 +77,7 @@ class XMLMapHandler extends DefaultHandler {
         }
     }
     
-    private static class MineData implements SymbolData {
+    static class MineData implements SymbolData {
 
         public static final SymbolDataFactory factory = new SymbolDataFactory() {
 
@@ -87,7 +86,7 @@ class XMLMapHandler extends DefaultHandler {
                 return new MineData(Team.valueOf(type));
             }
         };
-        private Team team;
+        final Team team;
 
         public MineData(Team t) {
             this.team = t;
@@ -110,7 +109,7 @@ class XMLMapHandler extends DefaultHandler {
         }
     }
 
-    private static class RobotData implements SymbolData {
+    static class RobotData implements SymbolData {
 
         public static final SymbolDataFactory factory = new SymbolDataFactory() {
 
@@ -159,7 +158,7 @@ class XMLMapHandler extends DefaultHandler {
         }
     }
 
-    private static class NodeData implements SymbolData {
+    static class NodeData implements SymbolData {
 
         public static final SymbolDataFactory factory = new SymbolDataFactory() {
 
@@ -222,7 +221,7 @@ class XMLMapHandler extends DefaultHandler {
     private static final Map<String, SymbolDataFactory> factories = new HashMap<String, SymbolDataFactory>();
     private final ArrayList<SymbolTile> objectsToCreate = new ArrayList<SymbolTile>();
 
-    private ArrayList<MapLocation[]> nodeLinks = new ArrayList<MapLocation[]>();
+    ArrayList<MapLocation[]> nodeLinks = new ArrayList<MapLocation[]>();
 
     static {
         factories.put("TERRAIN", TerrainData.factory);
@@ -237,7 +236,7 @@ class XMLMapHandler extends DefaultHandler {
     /**
      * Used to pass to the GameMap constructor.
      */
-    private Map<MapProperties, Integer> mapProperties = new HashMap<MapProperties, Integer>();
+    Map<MapProperties, Integer> mapProperties = new HashMap<MapProperties, Integer>();
     private int currentRow = 0;
     private int currentCol = 0;
 
@@ -482,16 +481,36 @@ class XMLMapHandler extends DefaultHandler {
 
     }
 
+    /**
+     * The terrain of the map, worked out the first time a game is created.
+     */
+    private TerrainTile[][] terrain;
+
+    private synchronized TerrainTile[][] terrain() {
+        if (terrain == null) {
+            terrain = new TerrainTile[map.length][];
+            for (int i = 0; i < map.length; i++) {
+                terrain[i] = new TerrainTile[map[i].length];
+                for (int j = 0; j < map[i].length; j++)
+                    terrain[i][j] = map[i][j].tile();
+            }
+        }
+        return terrain;
+    }
+
+    /**
+     * Creates a new game on this map. The same handler may be used for any
+     * number of games, since nothing about the map is changed.
+     */
     public GameWorld createGameWorld(String teamA, String teamB, long[][] archonMemory) {
 
         System.out.println("Creating a game%%%%%%%%%");
 
-        TerrainTile[][] mapTiles = new TerrainTile[map.length][];
-        for (int i = 0; i < map.length; i++) {
-            mapTiles[i] = new TerrainTile[map[i].length];
-            for (int j = 0; j < map[i].length; j++)
-                mapTiles[i][j] = map[i][j].tile();
-        }
+        // every game gets its own copy, since GameMap hands out its array
+        TerrainTile[][] terrain = terrain();
+        TerrainTile[][] mapTiles = new TerrainTile[terrain.length][];
+        for (int i = 0; i < terrain.length; i++)
+            mapTiles[i] = terrain[i].clone();
 
         GameMap gm = new GameMap(mapProperties, mapTiles);
         //gm.setTheme(theme);
@@ -518,55 +537,64 @@ class XMLMapHandler extends DefaultHandler {
     }
 
     public boolean isNode(MapLocation l) {
-        return map[l.x][l.y] instanceof NodeData;
+        return l.x >= 0 && l.x < mapWidth && l.y >= 0 && l.y < mapHeight && map[l.x][l.y] instanceof NodeData;
     }
 
     /**
      * My favoritist method of them all!
      */
-    private static void fail(String reason, String thingsToTry) {
+    static void fail(String reason, String thingsToTry) {
         ErrorReporter.report("Malformed map file: " + reason, thingsToTry);
-        RuntimeException e = new IllegalArgumentException();
+        RuntimeException e = new IllegalArgumentException(reason);
         //e.printStackTrace();
         throw e;
     }
 
-    class FloodFill {
-
-        Stack<MapLocation> queue;
-        Set<MapLocation> marked;
-        int n_marked;
-
-        public FloodFill(int x, int y) {
-            queue = new Stack<MapLocation>();
-            marked = new HashSet<MapLocation>();
-            add(x, y);
-        }
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
 
-        public int size() {
-            MapLocation loc;
-            while (!queue.isEmpty()) {
-                loc = queue.pop();
-                add(loc.x + 1, loc.y);
-                add(loc.x - 1, loc.y);
-                add(loc.x, loc.y + 1);
-                add(loc.x, loc.y - 1);
+    /**
+     * Counts the land squares that can be reached from x, y. Squares are
+     * numbered x * mapHeight + y; the ones that have been reached are kept
+     * in a bitset and the ones still to visit in an int stack, which each
+     * square is pushed onto at most once.
+     */
+    private int floodFill(TerrainTile[][] tiles, int x, int y) {
+        long[] marked = new long[(mapWidth * mapHeight + 63) >>> 6];
+        int[] stack = new int[mapWidth * mapHeight];
+        int top = 0;
+        int start = x * mapHeight + y;
+        marked[start >>> 6] |= 1L << start;
+        stack[top++] = start;
+        int count = 1;
+        while (top > 0) {
+            int i = stack[--top];
+            int cx = i / mapHeight, cy = i % mapHeight;
+            for (int d = 0; d < 4; d++) {
+                int nx = cx + DX[d], ny = cy + DY[d];
+                if (nx < 0 || nx >= mapWidth || ny < 0 || ny >= mapHeight || tiles[nx][ny] != TerrainTile.LAND)
+                    continue;
+                int n = nx * mapHeight + ny;
+                if ((marked[n >>> 6] & (1L << n)) != 0)
+                    continue;
+                marked[n >>> 6] |= 1L << n;
+                stack[top++] = n;
+                count++;
             }
-            return n_marked;
         }
+        return count;
+    }
 
-        public void add(int x, int y) {
-            if (x < 0 || x >= mapWidth || y < 0 || y >= mapHeight)
-                return;
-            if (map[x][y].tile() != TerrainTile.LAND)
-                return;
-            MapLocation loc = new MapLocation(x, y);
-            if (marked.contains(loc))
-                return;
-            queue.push(loc);
-            marked.add(loc);
-            n_marked++;
+    /**
+     * The root of a node in a union-find forest kept as an array of parents,
+     * halving the path on the way.
+     */
+    private static int find(int[] parent, int n) {
+        while (parent[n] != n) {
+            parent[n] = parent[parent[n]];
+            n = parent[n];
         }
+        return n;
     }
 
 
@@ -587,15 +615,29 @@ class XMLMapHandler extends DefaultHandler {
             warn("Illegal unit: " + r);
         }
 
+        /**
+         * Reports something that is legal, but that we try to avoid.
+         */
+        public void note(String s) {
+            System.err.println("Warning: " + s);
+        }
+
+    }
+
+    public boolean isTournamentLegal() {
+        return isTournamentLegal(new LegalityWarning());
     }
 
     // TODO this needs to be recoded
     // TODO CORY FIX IT
-    public boolean isTournamentLegal() {
-        LegalityWarning warn = new LegalityWarning();
+    /**
+     * Checks whether the map is legal for tournaments, telling warn about
+     * every problem.
+     */
+    public boolean isTournamentLegal(LegalityWarning warn) {
+        TerrainTile[][] tiles = terrain();
         int x, y, mx, my;
-        SymbolData d, md;
-        boolean baseBad = false, archonsBad = false;
+        SymbolData d;
         // check that the map is symmetric
         for (y = 0, my = mapHeight - 1; my >= y; y++, my--)
             for (x = 0, mx = mapWidth - 1; (my > y) ? (mx >= 0) : (mx >= x); x++, mx--) {
@@ -604,36 +646,23 @@ class XMLMapHandler extends DefaultHandler {
                 }
             }
         int grounds = 0, gx = 0, gy = 0;
-        int nodes = 0, archonsA = 0, baseAx = -1, baseAy = -1;
+        int nodes = 0, baseAx = -1;
         for (y = 0; y < mapHeight; y++) {
             for (x = 0; x < mapWidth; x++) {
                 d = map[x][y];
                 if (d instanceof RobotData) {
-                    RobotData rd = (RobotData) d;
-                    switch (rd.type) {
-//                        case ARCHON:
-//                            if (rd.team == Team.NEUTRAL) {
-//                                warn.warnUnit(rd);
-//                            }
-//                            if (rd.team == Team.A)
-//                                archonsA++;
-//                            break;
-                        default:
-                            warn.warnUnit(rd);
-                    }
+                    warn.warnUnit((RobotData) d);
                 } else if (d instanceof NodeData) {
                     nodes++;
                     if (((NodeData) d).team == Team.A) {
                         if (baseAx != -1) {
                             warn.warn("Team A has more than one power core.");
-                            baseBad = true;
                         } else {
                             baseAx = x;
-                            baseAy = y;
                         }
                     }
                 }
-                if (d.tile() == TerrainTile.LAND) {
+                if (tiles[x][y] == TerrainTile.LAND) {
                     grounds++;
                     gx = x;
                     gy = y;
@@ -642,31 +671,14 @@ class XMLMapHandler extends DefaultHandler {
         }
 
         if (baseAx == -1) {
-            baseBad = true;
             warn.warn("Team A does not have a power core.");
         }
 
-//        if (!(baseBad || archonsBad)) {
-//            for (y = baseAy - 1; y <= baseAy + 1; y++)
-//                for (x = baseAx - 1; x <= baseAx + 1; x++) {
-//                    if (x >= 0 && x < mapWidth && y >= 0 && y < mapHeight) {
-//                        d = map[x][y];
-//                        if (d instanceof RobotData) {
-//                            RobotData rd = (RobotData) d;
-//                            if (rd.type == RobotType.ARCHON && rd.team == Team.A)
-//                                archonsA--;
-//                        }
-//                    }
-//                }
-//            if (archonsA != 0)
-//                warn.warn("Team A has an archon that is not next to its power core.");
-//        }
-
         // check that the ground squares are connected
         if (grounds == 0) {
             warn.warn("There are no land squares on the entire map!");
         } else {
-            int reachable = new FloodFill(gx, gy).size();
+            int reachable = floodFill(tiles, gx, gy);
             if (reachable != grounds) {
                 warn.warn(String.format("There are %d land squares but only %d are reachable from %d,%d", grounds, reachable, gx, gy));
             }
@@ -675,25 +687,30 @@ class XMLMapHandler extends DefaultHandler {
         // these aren't illegal, but we try to avoid them
         for (y = 1; y < mapHeight; y++)
             for (x = 1; x < mapWidth; x++) {
-                TerrainTile ul = map[x - 1][y - 1].tile();
-                TerrainTile ur = map[x][y - 1].tile();
-                TerrainTile dl = map[x - 1][y].tile();
-                TerrainTile dr = map[x][y].tile();
+                TerrainTile ul = tiles[x - 1][y - 1];
+                TerrainTile ur = tiles[x][y - 1];
+                TerrainTile dl = tiles[x - 1][y];
+                TerrainTile dr = tiles[x][y];
                 if (ul == TerrainTile.VOID && dr == TerrainTile.VOID && ur == TerrainTile.LAND && dl == TerrainTile.LAND)
-                    System.err.format("Warning: diagonal passageway at %d, %d\n", x - 1, y);
+                    warn.note(String.format("diagonal passageway at %d, %d", x - 1, y));
                 if (ul == TerrainTile.LAND && dr == TerrainTile.LAND && ur == TerrainTile.VOID && dl == TerrainTile.VOID)
-                    System.err.format("Warning: diagonal passageway at %d, %d\n", x, y);
+                    warn.note(String.format("diagonal passageway at %d, %d", x, y));
             }
-        int rounds = mapProperties.get(MapProperties.MAX_ROUNDS);
-        if (rounds < GameConstants.ROUND_MIN_LIMIT)
+        Integer rounds = mapProperties.get(MapProperties.MAX_ROUNDS);
+        if (rounds == null)
+            warn.warn("There is no round limit.");
+        else if (rounds < GameConstants.ROUND_MIN_LIMIT)
             warn.warn("The round limit is too small.");
         else if (rounds > GameConstants.ROUND_MAX_LIMIT)
             warn.warn("The round limit is too large.");
 
         connected:
         {
-            HashMap<MapLocation, UnionFindNode> nodeMap = new HashMap<MapLocation, UnionFindNode>();
-            UnionFindNode n0, n1;
+            // every square is its own node in the forest, and only the
+            // squares with nodes on them are ever joined
+            int[] parent = new int[mapWidth * mapHeight];
+            for (int i = 0; i < parent.length; i++)
+                parent[i] = i;
             int components = nodes;
             for (MapLocation[] link : nodeLinks) {
                 if (!isNode(link[0])) {
@@ -704,15 +721,12 @@ class XMLMapHandler extends DefaultHandler {
                     warn.warnf("Nodelink contains %d,%d but there is no node there", link[1].x, link[1].y);
                     break connected;
                 }
-                if (!nodeMap.containsKey(link[0]))
-                    nodeMap.put(link[0], new UnionFindNode());
-                if (!nodeMap.containsKey(link[1]))
-                    nodeMap.put(link[1], new UnionFindNode());
-                n0 = nodeMap.get(link[0]);
-                n1 = nodeMap.get(link[1]);
-                if (n0.find() != n1.find())
+                int r0 = find(parent, link[0].x * mapHeight + link[0].y);
+                int r1 = find(parent, link[1].x * mapHeight + link[1].y);
+                if (r0 != r1) {
+                    parent[r0] = r1;
                     components--;
-                n0.union(n1);
+                }
             }
             if (components != 1)
                 warn.warn("The power node graph is disconnected.");
@@ -722,17 +736,42 @@ class XMLMapHandler extends DefaultHandler {
 
     public static boolean isTournamentLegal(String mapName, String mapPath) {
         System.err.format("checking map %s for legality\n", mapName);
-        XMLMapHandler handler;
         try {
-            handler = loadMap(mapName, mapPath);
+            return MapCache.isTournamentLegal(mapName, mapPath);
         } catch (IllegalArgumentException e) {
             System.err.println("failed to load map");
             return false;
         }
-        return handler.isTournamentLegal();
     }
 
+    /**
+     * Loads a map, parsing it only if it hasn't been parsed before or its
+     * file has changed since.
+     *
+     * @throws IllegalArgumentException if the map can't be read or is
+     *                                  malformed
+     * @see MapCache
+     */
     public static XMLMapHandler loadMap(String mapName, String mapPath) {
+        return MapCache.load(mapName, mapPath);
+    }
+
+    static String mapFileName(String mapName, String mapPath) {
+        if (!mapPath.endsWith("/"))
+            mapPath += "/";
+        return mapPath + mapName + ".xml";
+    }
+
+    static void cantLoad(String fileName, Exception e) {
+        fail("can't load '" + fileName + "' because of an exception:\n" + e.getMessage(), "Check that the map name is spelled correctly.\nCheck that the map file is located in the right directory.\nCheck that the map file isn't in use by another application.\n");
+    }
+
+    /**
+     * Parses the contents of a map file.
+     *
+     * @param fileName the name of the file, for error messages
+     */
+    static XMLMapHandler parseMap(String fileName, InputStream file) {
         // Create a new XMLMapHandler.
         XMLMapHandler handler = new XMLMapHandler();
 
@@ -745,18 +784,6 @@ class XMLMapHandler extends DefaultHandler {
             return null;
         }
 
-        // Create an input stream from the file.
-        if (!mapPath.endsWith("/"))
-            mapPath += "/";
-        String fileName = mapPath + mapName + ".xml";
-        FileInputStream file;
-        try {
-            file = new FileInputStream(fileName);
-        } catch (FileNotFoundException e) {
-            fail("can't load '" + fileName + "' because of an exception:\n" + e.getMessage(), "Check that the map name is spelled correctly.\nCheck that the map file is located in the right directory.\nCheck that the map file isn't in use by another application.\n");
-            return null;
-        }
-
         // Parse the file using the handler.
         try {
             parser.parse(file, handler);
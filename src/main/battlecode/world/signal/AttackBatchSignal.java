@@ -0,0 +1,80 @@
+package battlecode.world.signal;
+
+import battlecode.common.MapLocation;
+import battlecode.common.RobotLevel;
+import battlecode.engine.signal.Signal;
+
+/**
+ * Stands for several {@link AttackSignal}s.
+ */
+public class AttackBatchSignal extends BatchSignal {
+
+    private static final long serialVersionUID = 2977402185939618370L;
+
+    private static final RobotLevel[] levels = RobotLevel.values();
+
+    /**
+     * The IDs of the robots that attacked.
+     */
+    private final int[] robotIDs;
+
+    /**
+     * The locations that the robots attacked.
+     */
+    private final int[] xs;
+    private final int[] ys;
+
+    /**
+     * The ordinals of the heights that the robots attacked, or -1 for null.
+     */
+    private final int[] heights;
+
+    public AttackBatchSignal(AttackSignal[] signals) {
+        robotIDs = new int[signals.length];
+        xs = new int[signals.length];
+        ys = new int[signals.length];
+        heights = new int[signals.length];
+        for (int i = 0; i < signals.length; i++) {
+            robotIDs[i] = signals[i].getRobotID();
+            xs[i] = signals[i].getTargetLoc().x;
+            ys[i] = signals[i].getTargetLoc().y;
+            RobotLevel height = signals[i].getTargetHeight();
+            heights[i] = height == null ? -1 : height.ordinal();
+        }
+    }
+
+    public AttackBatchSignal(int[] robotIDs, int[] xs, int[] ys, int[] heights) {
+        this.robotIDs = robotIDs;
+        this.xs = xs;
+        this.ys = ys;
+        this.heights = heights;
+    }
+
+    public int[] getRobotIDs() {
+        return robotIDs;
+    }
+
+    public int[] getXs() {
+        return xs;
+    }
+
+    public int[] getYs() {
+        return ys;
+    }
+
+    public int[] getHeights() {
+        return heights;
+    }
+
+    public int size() {
+        return robotIDs.length;
+    }
+
+    public Signal[] expand() {
+        Signal[] signals = new Signal[robotIDs.length];
+        for (int i = 0; i < signals.length; i++)
+            signals[i] = new AttackSignal(robotIDs[i], new MapLocation(xs[i], ys[i]),
+                    heights[i] < 0 ? null : levels[heights[i]]);
+        return signals;
+    }
+}
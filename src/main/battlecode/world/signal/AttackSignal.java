@@ -41,6 +41,15 @@ public class AttackSignal extends Signal {
         this.targetHeight = targetHeight;
     }
 
+    /**
+     * Creates an attack signal for the robot with the given ID.
+     */
+    public AttackSignal(int robotID, MapLocation targetLoc, RobotLevel targetHeight) {
+        this.robotID = robotID;
+        this.targetLoc = targetLoc;
+        this.targetHeight = targetHeight;
+    }
+
     /**
      * Returns the ID of the robot that just attacked.
      *
@@ -0,0 +1,53 @@
+package battlecode.world.signal;
+
+import battlecode.engine.signal.Signal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A signal that stands for several signals of the same kind, stored as
+ * columns of primitives rather than as separate objects. Batch signals are
+ * only written to match files; the engine never sees them.
+ */
+public abstract class BatchSignal extends Signal {
+
+    private static final long serialVersionUID = -2150458473312474458L;
+
+    /**
+     * @return the number of signals in this batch
+     */
+    public abstract int size();
+
+    /**
+     * Recreates the individual signals in this batch, in order.
+     *
+     * @return the signals this batch stands for
+     */
+    public abstract Signal[] expand();
+
+    /**
+     * Replaces every batch signal in the given array with the signals it
+     * stands for.
+     *
+     * @param signals signals that may contain batches
+     * @return signals without batches; the given array if it has none
+     */
+    public static Signal[] expandAll(Signal[] signals) {
+        List<Signal> expanded = null;
+        for (int i = 0; i < signals.length; i++) {
+            if (signals[i] instanceof BatchSignal) {
+                if (expanded == null) {
+                    expanded = new ArrayList<Signal>(signals.length * 2);
+                    expanded.addAll(Arrays.asList(signals).subList(0, i));
+                }
+                expanded.addAll(Arrays.asList(((BatchSignal) signals[i]).expand()));
+            } else if (expanded != null)
+                expanded.add(signals[i]);
+        }
+        if (expanded == null)
+            return signals;
+        return expanded.toArray(new Signal[expanded.size()]);
+    }
+}
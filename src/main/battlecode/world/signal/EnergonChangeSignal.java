@@ -37,6 +37,14 @@ public class EnergonChangeSignal extends Signal {
         }
     }
 
+    /**
+     * Creates a signal from parallel arrays of robot IDs and energon levels.
+     */
+    public EnergonChangeSignal(int[] robotIDs, double[] energon) {
+        this.robotIDs = robotIDs;
+        this.energon = energon;
+    }
+
     /**
      * Returns the ID of the robot whose energon just changed.
      *
@@ -0,0 +1,66 @@
+package battlecode.world.signal;
+
+import battlecode.engine.signal.Signal;
+
+/**
+ * Stands for several {@link IndicatorStringSignal}s.
+ */
+public class IndicatorStringBatchSignal extends BatchSignal {
+
+    private static final long serialVersionUID = -1583373602563424946L;
+
+    /**
+     * The IDs of the robots whose indicator strings changed.
+     */
+    private final int[] robotIDs;
+
+    /**
+     * The indices of the strings that changed.
+     */
+    private final int[] stringIndices;
+
+    /**
+     * The new strings.
+     */
+    private final String[] newStrings;
+
+    public IndicatorStringBatchSignal(IndicatorStringSignal[] signals) {
+        robotIDs = new int[signals.length];
+        stringIndices = new int[signals.length];
+        newStrings = new String[signals.length];
+        for (int i = 0; i < signals.length; i++) {
+            robotIDs[i] = signals[i].getRobotID();
+            stringIndices[i] = signals[i].getStringIndex();
+            newStrings[i] = signals[i].getNewString();
+        }
+    }
+
+    public IndicatorStringBatchSignal(int[] robotIDs, int[] stringIndices, String[] newStrings) {
+        this.robotIDs = robotIDs;
+        this.stringIndices = stringIndices;
+        this.newStrings = newStrings;
+    }
+
+    public int[] getRobotIDs() {
+        return robotIDs;
+    }
+
+    public int[] getStringIndices() {
+        return stringIndices;
+    }
+
+    public String[] getNewStrings() {
+        return newStrings;
+    }
+
+    public int size() {
+        return robotIDs.length;
+    }
+
+    public Signal[] expand() {
+        Signal[] signals = new Signal[robotIDs.length];
+        for (int i = 0; i < signals.length; i++)
+            signals[i] = new IndicatorStringSignal(robotIDs[i], stringIndices[i], newStrings[i]);
+        return signals;
+    }
+}
@@ -40,6 +40,15 @@ public class IndicatorStringSignal extends Signal {
         this.newString = newString;
     }
 
+    /**
+     * Creates an indicator string signal for the robot with the given ID.
+     */
+    public IndicatorStringSignal(int robotID, int stringIndex, String newString) {
+        this.robotID = robotID;
+        this.stringIndex = stringIndex;
+        this.newString = newString;
+    }
+
     /**
      * Returns the ID of the robot whose indicator string just changed.
      *
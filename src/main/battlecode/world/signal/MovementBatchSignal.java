@@ -0,0 +1,76 @@
+package battlecode.world.signal;
+
+import battlecode.common.MapLocation;
+import battlecode.engine.signal.Signal;
+
+/**
+ * Stands for several {@link MovementSignal}s.
+ */
+public class MovementBatchSignal extends BatchSignal {
+
+    private static final long serialVersionUID = 4381957162207448513L;
+
+    /**
+     * The IDs of the robots that moved.
+     */
+    private final int[] robotIDs;
+
+    /**
+     * The robots' new locations.
+     */
+    private final int[] xs;
+    private final int[] ys;
+
+    /**
+     * For each robot, (delay << 1) | (isMovingForward ? 1 : 0).
+     */
+    private final int[] codes;
+
+    public MovementBatchSignal(MovementSignal[] signals) {
+        robotIDs = new int[signals.length];
+        xs = new int[signals.length];
+        ys = new int[signals.length];
+        codes = new int[signals.length];
+        for (int i = 0; i < signals.length; i++) {
+            robotIDs[i] = signals[i].getRobotID();
+            xs[i] = signals[i].getNewLoc().x;
+            ys[i] = signals[i].getNewLoc().y;
+            codes[i] = (signals[i].getDelay() << 1) | (signals[i].isMovingForward() ? 1 : 0);
+        }
+    }
+
+    public MovementBatchSignal(int[] robotIDs, int[] xs, int[] ys, int[] codes) {
+        this.robotIDs = robotIDs;
+        this.xs = xs;
+        this.ys = ys;
+        this.codes = codes;
+    }
+
+    public int[] getRobotIDs() {
+        return robotIDs;
+    }
+
+    public int[] getXs() {
+        return xs;
+    }
+
+    public int[] getYs() {
+        return ys;
+    }
+
+    public int[] getCodes() {
+        return codes;
+    }
+
+    public int size() {
+        return robotIDs.length;
+    }
+
+    public Signal[] expand() {
+        Signal[] signals = new Signal[robotIDs.length];
+        for (int i = 0; i < signals.length; i++)
+            signals[i] = new MovementSignal(robotIDs[i], new MapLocation(xs[i], ys[i]),
+                    (codes[i] & 1) != 0, codes[i] >> 1);
+        return signals;
+    }
+}
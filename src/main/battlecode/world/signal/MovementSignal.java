@@ -55,6 +55,16 @@ public class MovementSignal extends Signal {
         this.delay = delay;
     }
 
+    /**
+     * Creates a movement signal for the robot with the given ID.
+     */
+    public MovementSignal(int robotID, MapLocation newLoc, boolean isMovingForward, int delay) {
+        this.robotID = robotID;
+        this.newLoc = newLoc;
+        this.isMovingForward = isMovingForward;
+        this.delay = delay;
+    }
+
     /**
      * Returns the ID of the robot that just broadcast.
      *
@@ -31,4 +31,11 @@ public class ResearchChangeSignal extends Signal {
 			}
 		}
     }
+
+    /**
+     * Creates a signal from research progress that is already known.
+     */
+    public ResearchChangeSignal(double[][] progress) {
+        this.progress = progress;
+    }
 }
@@ -0,0 +1,58 @@
+package battlecode.world.signal;
+
+import battlecode.common.Direction;
+import battlecode.engine.signal.Signal;
+
+/**
+ * Stands for several {@link SetDirectionSignal}s.
+ */
+public class SetDirectionBatchSignal extends BatchSignal {
+
+    private static final long serialVersionUID = -6725123305418833396L;
+
+    private static final Direction[] directions = Direction.values();
+
+    /**
+     * The IDs of the robots that turned.
+     */
+    private final int[] robotIDs;
+
+    /**
+     * The ordinals of the robots' new directions, or -1 for null.
+     */
+    private final int[] dirs;
+
+    public SetDirectionBatchSignal(SetDirectionSignal[] signals) {
+        robotIDs = new int[signals.length];
+        dirs = new int[signals.length];
+        for (int i = 0; i < signals.length; i++) {
+            robotIDs[i] = signals[i].getRobotID();
+            Direction dir = signals[i].getDirection();
+            dirs[i] = dir == null ? -1 : dir.ordinal();
+        }
+    }
+
+    public SetDirectionBatchSignal(int[] robotIDs, int[] dirs) {
+        this.robotIDs = robotIDs;
+        this.dirs = dirs;
+    }
+
+    public int[] getRobotIDs() {
+        return robotIDs;
+    }
+
+    public int[] getDirs() {
+        return dirs;
+    }
+
+    public int size() {
+        return robotIDs.length;
+    }
+
+    public Signal[] expand() {
+        Signal[] signals = new Signal[robotIDs.length];
+        for (int i = 0; i < signals.length; i++)
+            signals[i] = new SetDirectionSignal(robotIDs[i], dirs[i] < 0 ? null : directions[dirs[i]]);
+        return signals;
+    }
+}
@@ -33,6 +33,11 @@ public class SetDirectionSignal extends Signal {
         this.dir = dir;
     }
 
+    public SetDirectionSignal(int robotID, Direction dir) {
+        this.robotID = robotID;
+        this.dir = dir;
+    }
+
     public int getRobotID() {
         return robotID;
     }
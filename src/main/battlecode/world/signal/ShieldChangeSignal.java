@@ -37,6 +37,14 @@ public class ShieldChangeSignal extends Signal {
         }
     }
 
+    /**
+     * Creates a signal from parallel arrays of robot IDs and shield levels.
+     */
+    public ShieldChangeSignal(int[] robotIDs, double[] shield) {
+        this.robotIDs = robotIDs;
+        this.shield = shield;
+    }
+
     /**
      * Returns the ID of the robot whose shield just changed.
      *
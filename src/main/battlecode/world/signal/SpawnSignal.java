@@ -76,6 +76,17 @@ public class SpawnSignal extends Signal {
 //        dir = null;
     }
 
+    /**
+     * Creates a spawn signal from already known IDs
+     */
+    public SpawnSignal(int robotID, int parentID, MapLocation loc, RobotType type, Team team) {
+        this.robotID = robotID;
+        this.parentID = parentID;
+        this.loc = loc;
+        this.type = type;
+        this.team = team;
+    }
+
     public int getRobotID() {
         return robotID;
     }
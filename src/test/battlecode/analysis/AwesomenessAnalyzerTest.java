@@ -0,0 +1,195 @@
+package battlecode.analysis;
+
+import battlecode.common.MapLocation;
+import battlecode.common.RobotLevel;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.GameStats;
+import battlecode.serial.MatchFooter;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+import battlecode.server.proxy.MatchInputFactory;
+import battlecode.server.proxy.Proxy;
+import battlecode.server.proxy.ProxyFactory;
+import battlecode.world.signal.AttackSignal;
+import battlecode.world.signal.DeathSignal;
+import battlecode.world.signal.MovementSignal;
+import battlecode.world.signal.SpawnSignal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the analyzer against the output the original analyzer gave, before
+ * smoothing, jitter reduction and the match file writer were rewritten, and
+ * times it on a long game. JMH can't build
+ * benchmarks for the Java 6 target, so the timing is an ordinary test with a
+ * generous limit rather than a microbenchmark.
+ */
+public class AwesomenessAnalyzerTest {
+
+    /**
+     * Two games on a 40x30 map, of 400 and 550 rounds.
+     */
+    private static final String MATCH = "small.rms";
+
+    private static final int LONG_GAME_ROUNDS = 20000;
+
+    private static final long LONG_GAME_MILLIS = 2000;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("analyzer", "");
+        assertTrue(dir.delete() && dir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files)
+                f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void outputMatchesGolden() throws Exception {
+        // read before the analyzer writes its output over the copy
+        List<Object> expected = readAll(copyResource(MATCH + ".analyzed"));
+        File match = copyResource(MATCH);
+        AwesomenessAnalyzer analyzer = new AwesomenessAnalyzer(match.getPath());
+        analyzer.analyze();
+        assertEquals(2, analyzer.getGameCount());
+        analyzer.smoothStats();
+        analyzer.dumpFile();
+
+        List<Object> actual = readAll(new File(match.getPath() + ".analyzed"));
+        assertEquals(expected.size(), actual.size());
+        int rounds = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            Object e = expected.get(i), a = actual.get(i);
+            assertEquals("object " + i, e.getClass(), a.getClass());
+            if (e instanceof RoundDelta) {
+                assertRoundEquals(rounds++, (RoundDelta) e, (RoundDelta) a);
+            }
+        }
+        assertEquals(950, rounds);
+    }
+
+    @Test
+    public void longGameIsFast() throws Exception {
+        File match = new File(dir, "long.rms");
+        writeLongGame(match);
+        AwesomenessAnalyzer analyzer = new AwesomenessAnalyzer(match.getPath());
+        analyzer.analyze();
+
+        // once to warm up, then timed
+        analyzer.smoothStats();
+        long start = System.nanoTime();
+        analyzer.smoothStats();
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.out.println("smoothed " + LONG_GAME_ROUNDS + " rounds in " + millis + " ms");
+        assertTrue("smoothing took " + millis + " ms", millis < LONG_GAME_MILLIS);
+    }
+
+    private static void assertRoundEquals(int round, RoundDelta expected, RoundDelta actual) {
+        Signal[] e = expected.getSignals(), a = actual.getSignals();
+        assertEquals("signals in round " + round, e.length, a.length);
+        for (int i = 0; i < e.length; i++)
+            assertEquals("signal " + i + " of round " + round, e[i].getClass(), a[i].getClass());
+        AwesomenessSignal es = (AwesomenessSignal) e[0], as = (AwesomenessSignal) a[0];
+        assertEquals("awesomeness of round " + round, es.totalAwesomeness, as.totalAwesomeness, 0);
+        assertEquals("relative awesomeness of round " + round, es.relativeAwesomeness, as.relativeAwesomeness, 0);
+        assertEquals("camera x of round " + round, es.centerX, as.centerX, 0);
+        assertEquals("camera y of round " + round, es.centerY, as.centerY, 0);
+        assertEquals("camera radius of round " + round, es.radius, as.radius, 0);
+    }
+
+    /**
+     * Writes a single game on the map of the sample match, with robots
+     * spawning, moving, fighting and dying all over it, so that the camera
+     * path has plenty to smooth.
+     */
+    private void writeLongGame(File f) throws Exception {
+        MatchHeader header = (MatchHeader) readAll(copyResource(MATCH)).get(0);
+        Proxy out = ProxyFactory.createProxyFromFile(f.getPath());
+        out.open();
+        out.writeHeader(header);
+        Random r = new Random(7);
+        List<Integer> alive = new ArrayList<Integer>();
+        int next = 1;
+        for (int round = 0; round < LONG_GAME_ROUNDS; round++) {
+            List<Signal> signals = new ArrayList<Signal>();
+            if (alive.size() < 40) {
+                alive.add(next);
+                signals.add(new SpawnSignal(next++, 0, location(r), RobotType.SOLDIER, r.nextBoolean() ? Team.A : Team.B));
+            }
+            for (int i = 0; i < 5; i++) {
+                int id = alive.get(r.nextInt(alive.size()));
+                int q = r.nextInt(10);
+                if (q < 6)
+                    signals.add(new MovementSignal(id, location(r), true, 1));
+                else if (q < 9)
+                    signals.add(new AttackSignal(id, location(r), RobotLevel.ON_GROUND));
+                else if (alive.remove(Integer.valueOf(id)))
+                    signals.add(new DeathSignal(id));
+            }
+            out.writeRound(new RoundDelta(signals.toArray(new Signal[signals.size()])));
+            out.writeStats(new RoundStats(1, 2, 3, 4));
+        }
+        out.writeObject(new GameStats());
+        out.writeFooter(new MatchFooter(Team.A, new long[2][32]));
+        out.close();
+    }
+
+    private static MapLocation location(Random r) {
+        return new MapLocation(r.nextInt(40), r.nextInt(30));
+    }
+
+    private File copyResource(String name) throws IOException {
+        InputStream in = getClass().getResourceAsStream(name);
+        assertNotNull("missing test resource " + name, in);
+        File f = new File(dir, name);
+        try {
+            OutputStream out = new FileOutputStream(f);
+            try {
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) >= 0)
+                    out.write(buf, 0, n);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        return f;
+    }
+
+    private static List<Object> readAll(File f) throws IOException, ClassNotFoundException {
+        List<Object> objects = new ArrayList<Object>();
+        ObjectInputStream in = MatchInputFactory.createInput(f);
+        try {
+            Object o;
+            while ((o = in.readObject()) != null)
+                objects.add(o);
+        } catch (EOFException e) {
+            // end of the match file
+        } finally {
+            in.close();
+        }
+        return objects;
+    }
+}
@@ -0,0 +1,326 @@
+package battlecode.serial.io;
+
+import battlecode.common.*;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.*;
+import battlecode.world.signal.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes a match with keyframes and checks that seeking to every round, by
+ * loading the keyframe before it and replaying the deltas after that, gives
+ * the same state as replaying the whole match up to that round.
+ */
+public class IndexedMatchReaderTest {
+
+    private static final int ROUNDS = 300;
+
+    private static final int KEYFRAME_INTERVAL = 25;
+
+    private static final int WIDTH = 20, HEIGHT = 20;
+
+    private static class TestMap implements GenericGameMap {
+
+        private static final long serialVersionUID = 1L;
+
+        public int getMaxRounds() {
+            return ROUNDS;
+        }
+    }
+
+    private static class Robot {
+        RobotType type;
+        Team team;
+        MapLocation location;
+        Direction direction;
+        double energon;
+        double shield;
+        long controlBits;
+        String[] indicatorStrings = new String[GameConstants.NUMBER_OF_INDICATOR_STRINGS];
+
+        public String toString() {
+            return type + " " + team + " " + location + " " + direction + " " + energon + " " + shield + " "
+                    + controlBits + " " + Arrays.toString(indicatorStrings);
+        }
+    }
+
+    /**
+     * Everything a keyframe holds, built up by applying rounds.
+     */
+    private static class State {
+        final SortedMap<Integer, Robot> robots = new TreeMap<Integer, Robot>();
+        final Map<MapLocation, Team> mines = new HashMap<MapLocation, Team>();
+        double[] resources = new double[2];
+        double[][] research = new double[2][5];
+
+        void apply(RoundDelta delta) {
+            for (Signal s : delta.getSignals()) {
+                if (s instanceof SpawnSignal) {
+                    SpawnSignal spawn = (SpawnSignal) s;
+                    Robot r = new Robot();
+                    r.type = spawn.getType();
+                    r.team = spawn.getTeam();
+                    r.location = spawn.getLoc();
+                    robots.put(spawn.getRobotID(), r);
+                } else if (s instanceof MovementSignal)
+                    robots.get(((MovementSignal) s).getRobotID()).location = ((MovementSignal) s).getNewLoc();
+                else if (s instanceof SetDirectionSignal)
+                    robots.get(((SetDirectionSignal) s).getRobotID()).direction = ((SetDirectionSignal) s).getDirection();
+                else if (s instanceof ControlBitsSignal)
+                    robots.get(((ControlBitsSignal) s).getRobotID()).controlBits = ((ControlBitsSignal) s).getControlBits();
+                else if (s instanceof IndicatorStringSignal) {
+                    IndicatorStringSignal is = (IndicatorStringSignal) s;
+                    robots.get(is.getRobotID()).indicatorStrings[is.getStringIndex()] = is.getNewString();
+                } else if (s instanceof IndicatorStringBatchSignal) {
+                    IndicatorStringBatchSignal batch = (IndicatorStringBatchSignal) s;
+                    for (int i = 0; i < batch.size(); i++)
+                        robots.get(batch.getRobotIDs()[i]).indicatorStrings[batch.getStringIndices()[i]] = batch.getNewStrings()[i];
+                } else if (s instanceof EnergonChangeSignal) {
+                    EnergonChangeSignal e = (EnergonChangeSignal) s;
+                    for (int i = 0; i < e.getRobotIDs().length; i++)
+                        robots.get(e.getRobotIDs()[i]).energon = e.getEnergon()[i];
+                } else if (s instanceof ShieldChangeSignal) {
+                    ShieldChangeSignal e = (ShieldChangeSignal) s;
+                    for (int i = 0; i < e.getRobotIDs().length; i++)
+                        robots.get(e.getRobotIDs()[i]).shield = e.getShield()[i];
+                } else if (s instanceof DeathSignal)
+                    robots.remove(((DeathSignal) s).getObjectID());
+                else if (s instanceof MineSignal) {
+                    MineSignal m = (MineSignal) s;
+                    if (m.shouldAdd())
+                        mines.put(m.getMineLoc(), m.getMineTeam());
+                    else
+                        mines.remove(m.getMineLoc());
+                } else if (s instanceof FluxChangeSignal)
+                    resources = ((FluxChangeSignal) s).getFlux().clone();
+                else if (s instanceof ResearchChangeSignal) {
+                    double[][] progress = ((ResearchChangeSignal) s).progress;
+                    research = new double[progress.length][];
+                    for (int t = 0; t < progress.length; t++)
+                        research[t] = progress[t].clone();
+                } else
+                    fail("unexpected signal " + s);
+            }
+        }
+
+        void load(RoundKeyframe k) {
+            robots.clear();
+            for (int i = 0; i < k.getRobotCount(); i++) {
+                Robot r = new Robot();
+                r.type = k.getRobotType(i);
+                r.team = k.getRobotTeam(i);
+                r.location = k.getRobotLocation(i);
+                r.direction = k.getDirection(i);
+                r.energon = k.getEnergon(i);
+                r.shield = k.getShield(i);
+                r.controlBits = k.getControlBits(i);
+                r.indicatorStrings = k.getIndicatorStrings(i).clone();
+                robots.put(k.getRobotID(i), r);
+            }
+            mines.clear();
+            for (int i = 0; i < k.getMineCount(); i++)
+                mines.put(k.getMineLocation(i), k.getMineTeam(i));
+            resources = k.getResources().clone();
+            research = k.getResearch();
+        }
+
+        RoundKeyframe keyframe(int round) {
+            int n = robots.size();
+            int[] ids = new int[n], types = new int[n], teams = new int[n], x = new int[n], y = new int[n];
+            int[] directions = new int[n];
+            double[] energon = new double[n], shield = new double[n];
+            long[] controlBits = new long[n];
+            String[][] strings = new String[n][];
+            int i = 0;
+            for (Map.Entry<Integer, Robot> e : robots.entrySet()) {
+                Robot r = e.getValue();
+                ids[i] = e.getKey();
+                types[i] = r.type.ordinal();
+                teams[i] = r.team.ordinal();
+                x[i] = r.location.x;
+                y[i] = r.location.y;
+                directions[i] = r.direction == null ? -1 : r.direction.ordinal();
+                energon[i] = r.energon;
+                shield[i] = r.shield;
+                controlBits[i] = r.controlBits;
+                strings[i] = r.indicatorStrings.clone();
+                i++;
+            }
+            int m = mines.size();
+            int[] mineX = new int[m], mineY = new int[m], mineTeams = new int[m];
+            i = 0;
+            for (Map.Entry<MapLocation, Team> e : mines.entrySet()) {
+                mineX[i] = e.getKey().x;
+                mineY[i] = e.getKey().y;
+                mineTeams[i] = e.getValue().ordinal();
+                i++;
+            }
+            return new RoundKeyframe(round, ids, types, teams, x, y, directions, energon, shield,
+                    controlBits, strings, mineX, mineY, mineTeams, new int[0], new int[0], new int[0],
+                    resources.clone(), research);
+        }
+
+        public String toString() {
+            SortedMap<String, Team> sortedMines = new TreeMap<String, Team>();
+            for (Map.Entry<MapLocation, Team> e : mines.entrySet())
+                sortedMines.put(e.getKey().toString(), e.getValue());
+            return robots + "\n" + sortedMines + "\n" + Arrays.toString(resources) + "\n" + Arrays.deepToString(research);
+        }
+    }
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("match", ".rmi");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void seekMatchesSequentialReplay() throws IOException {
+        List<String> expected = writeMatch(file);
+
+        IndexedMatchReader reader = new IndexedMatchReader(file);
+        try {
+            assertEquals(1, reader.getMatchCount());
+            assertEquals(ROUNDS, reader.getRoundCount(0));
+
+            State sequential = new State();
+            for (int round = 0; round < ROUNDS; round++) {
+                sequential.apply(reader.getRound(0, round));
+                assertEquals("sequential replay to round " + round, expected.get(round), sequential.toString());
+
+                IndexedMatchReader.Seek seek = reader.seek(0, round);
+                State sought = new State();
+                if (round < KEYFRAME_INTERVAL - 1)
+                    assertNull("keyframe before round " + round, seek.getKeyframe());
+                if (seek.getKeyframe() != null) {
+                    assertEquals(seek.getFirstRound() - 1, seek.getKeyframe().getRound());
+                    assertTrue(round - seek.getKeyframe().getRound() <= KEYFRAME_INTERVAL);
+                    sought.load(seek.getKeyframe());
+                } else
+                    assertEquals(0, seek.getFirstRound());
+                assertEquals(round - seek.getFirstRound() + 1, seek.getDeltas().length);
+                for (RoundDelta delta : seek.getDeltas())
+                    sought.apply(delta);
+                assertEquals("seek to round " + round, sequential.toString(), sought.toString());
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void keyframeAsRoundMatchesKeyframe() throws IOException {
+        writeMatch(file);
+        IndexedMatchReader reader = new IndexedMatchReader(file);
+        try {
+            for (int k = 0; k < ROUNDS / KEYFRAME_INTERVAL; k++) {
+                RoundKeyframe keyframe = reader.getKeyframe(0, k);
+                State loaded = new State();
+                loaded.load(keyframe);
+                State replayed = new State();
+                replayed.apply(keyframe.toRoundDelta());
+                assertEquals("keyframe " + k, loaded.toString(), replayed.toString());
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Writes a match of robots spawning, moving, turning, setting control
+     * bits and indicator strings, changing energon and shields and dying,
+     * with mines coming and going, and a keyframe at the end of every
+     * KEYFRAME_INTERVAL rounds.
+     *
+     * @return the state at the end of each round
+     */
+    private static List<String> writeMatch(File f) throws IOException {
+        List<String> states = new ArrayList<String>();
+        State state = new State();
+        Random random = new Random(11);
+        RobotType[] types = {RobotType.SOLDIER, RobotType.HQ, RobotType.ARTILLERY, RobotType.MEDBAY};
+        Direction[] directions = Direction.values();
+        List<Integer> alive = new ArrayList<Integer>();
+        int nextID = 1;
+
+        IndexedMatchWriter writer = new IndexedMatchWriter(new FileOutputStream(f));
+        writer.write(new MatchHeader(new TestMap(), new long[2][GameConstants.TEAM_MEMORY_LENGTH], 0, 1));
+        for (int round = 0; round < ROUNDS; round++) {
+            List<Signal> signals = new ArrayList<Signal>();
+            if (alive.size() < 30 && random.nextInt(3) > 0) {
+                signals.add(new SpawnSignal(nextID, 0, location(random), types[random.nextInt(types.length)],
+                        random.nextBoolean() ? Team.A : Team.B));
+                alive.add(nextID++);
+            }
+            List<Integer> dying = new ArrayList<Integer>();
+            for (int i = 0; i < 6 && !alive.isEmpty(); i++) {
+                int id = alive.get(random.nextInt(alive.size()));
+                switch (random.nextInt(7)) {
+                    case 0:
+                        signals.add(new MovementSignal(id, location(random), true, 1));
+                        break;
+                    case 1:
+                        signals.add(new SetDirectionSignal(id, directions[random.nextInt(directions.length)]));
+                        break;
+                    case 2:
+                        signals.add(new ControlBitsSignal(id, random.nextLong()));
+                        break;
+                    case 3:
+                        signals.add(new IndicatorStringSignal(id, random.nextInt(GameConstants.NUMBER_OF_INDICATOR_STRINGS),
+                                "round " + round));
+                        break;
+                    case 4:
+                        signals.add(new EnergonChangeSignal(new int[]{id}, new double[]{random.nextInt(200)}));
+                        break;
+                    case 5:
+                        signals.add(new ShieldChangeSignal(new int[]{id}, new double[]{random.nextInt(50)}));
+                        break;
+                    default:
+                        if (random.nextInt(4) == 0 && !dying.contains(id))
+                            dying.add(id);
+                }
+            }
+            for (Integer id : dying) {
+                signals.add(new DeathSignal(id));
+                alive.remove(id);
+            }
+            MapLocation mine = location(random);
+            signals.add(new MineSignal(mine, random.nextBoolean() ? Team.A : Team.NEUTRAL, random.nextInt(3) > 0));
+            signals.add(new FluxChangeSignal(new double[]{round, 2 * round}));
+            double[][] progress = new double[2][5];
+            progress[round % 2][round % 5] = round / (double) ROUNDS;
+            signals.add(new ResearchChangeSignal(progress));
+
+            RoundDelta delta = new RoundDelta(signals.toArray(new Signal[signals.size()]));
+            state.apply(delta);
+            states.add(state.toString());
+            writer.write(delta);
+            writer.write(new RoundStats(round, round, 0, 0));
+            if (round % KEYFRAME_INTERVAL == KEYFRAME_INTERVAL - 1)
+                writer.write(state.keyframe(round));
+        }
+        writer.write(new GameStats());
+        writer.write(new MatchFooter(Team.A, new long[2][GameConstants.TEAM_MEMORY_LENGTH]));
+        writer.close();
+        return states;
+    }
+
+    private static MapLocation location(Random random) {
+        return new MapLocation(random.nextInt(WIDTH), random.nextInt(HEIGHT));
+    }
+}
@@ -0,0 +1,135 @@
+package battlecode.server;
+
+import battlecode.serial.notification.RunNotification;
+import battlecode.serial.notification.StartNotification;
+import battlecode.server.controller.Controller;
+import battlecode.server.controller.ControllerFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Steps a server through rounds with run notifications sent by a client over
+ * a loopback socket, the way the client steps a match in debug mode, and
+ * checks that the match thread sleeps until each step arrives and wakes
+ * because of it. No match or players are run: the test thread stands in for
+ * the match thread by waiting for each round.
+ */
+public class ServerWakeupTest {
+
+    private static final int STEPS = 20;
+
+    /**
+     * How long to wait for something that should happen at once; only a
+     * hung server takes this long.
+     */
+    private static final long PATIENCE_MILLIS = 5000;
+
+    private ServerSocket listener;
+
+    private Socket client;
+
+    private Socket accepted;
+
+    private ObjectOutputStream out;
+
+    private Controller controller;
+
+    private Server server;
+
+    @Before
+    public void setUp() throws Exception {
+        listener = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        client = new Socket(listener.getInetAddress(), listener.getLocalPort());
+        client.setTcpNoDelay(true);
+        accepted = listener.accept();
+
+        // the controller reads the stream header as soon as it is created
+        out = new ObjectOutputStream(client.getOutputStream());
+        out.flush();
+        Config options = new Config(new String[0]);
+        options.setBoolean("bc.server.output-xml", false);
+        controller = ControllerFactory.createTCPController(accepted.getInputStream(), options);
+        server = new Server(options, Server.Mode.TCP, controller);
+        controller.addObserver(server);
+
+        send(StartNotification.INSTANCE);
+        controller.start();
+        assertEquals(State.READY, server.getState());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (controller != null)
+            controller.finish();
+        client.close();
+        accepted.close();
+        listener.close();
+    }
+
+    @Test(timeout = 60000)
+    public void wakesWhenARunNotificationArrives() throws Exception {
+        final AtomicInteger reached = new AtomicInteger();
+        final boolean[] waited = new boolean[STEPS];
+        final Semaphore woken = new Semaphore(0);
+        final Throwable[] failure = new Throwable[1];
+        Thread match = new Thread() {
+            public void run() {
+                try {
+                    for (int round = 0; round < STEPS; round++) {
+                        waited[round] = server.awaitRound(round);
+                        reached.set(round + 1);
+                        woken.release();
+                    }
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        };
+        match.start();
+
+        for (int round = 0; round < STEPS; round++) {
+            awaitBlocked(match);
+            assertEquals("the match ran ahead of the steps", round, reached.get());
+            send(new RunNotification(round + 1));
+            assertTrue("step " + round + " didn't wake the match",
+                    woken.tryAcquire(PATIENCE_MILLIS, TimeUnit.MILLISECONDS));
+            assertEquals(round + 1, reached.get());
+        }
+        match.join();
+        assertNull(failure[0]);
+        for (int round = 0; round < STEPS; round++)
+            assertTrue("the match didn't wait for step " + round, waited[round]);
+        assertEquals(State.RUNNING, server.getState());
+    }
+
+    /**
+     * Waits for the match thread to block with no timeout, which it only
+     * does while waiting for a notification; a thread that polls would be
+     * seen sleeping with a timeout instead.
+     */
+    private static void awaitBlocked(Thread match) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + PATIENCE_MILLIS;
+        Thread.State state;
+        while ((state = match.getState()) != Thread.State.WAITING) {
+            if (System.currentTimeMillis() > deadline)
+                fail("the match thread is " + state + " rather than waiting for a step");
+            Thread.sleep(1);
+        }
+    }
+
+    private void send(Object o) throws Exception {
+        out.writeObject(o);
+        out.flush();
+    }
+}
@@ -0,0 +1,78 @@
+package battlecode.tournament;
+
+import battlecode.common.Team;
+import battlecode.serial.MatchResult;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class SpeculativeSeriesTest {
+
+    private MatchJob job;
+
+    private SpeculativeSeries series;
+
+    @Before
+    public void setUp() {
+        job = new MatchJob("s", "a", "b", new String[]{"m1", "m2", "m3"}, 3, new File("series"));
+        series = new SpeculativeSeries(job, false);
+    }
+
+    private MatchJob win(int map, Team winner) {
+        MatchJob part = series.getParts()[map];
+        part.setResults(new MatchResult[]{new MatchResult("a", "b", "m" + (map + 1), winner, 100, null)});
+        return part;
+    }
+
+    private MatchJob fail(int map) {
+        MatchJob part = series.getParts()[map];
+        part.setFailure("crashed");
+        return part;
+    }
+
+    @Test
+    public void failureInsideTheDecidingMapsForfeits() {
+        assertFalse(series.accept(win(0, Team.A)));
+        assertTrue(series.accept(fail(1)));
+        assertTrue(series.isDecided());
+        assertNull(job.getResults());
+        assertNotNull(job.getFailure());
+        assertTrue(job.getFailure().contains("m2"));
+        assertTrue(series.getParts()[2].isCancelled());
+    }
+
+    @Test
+    public void failureBeyondTheDecidingMapsIsIgnored() {
+        // map 3 fails before maps 1 and 2, which decide the series
+        assertFalse(series.accept(fail(2)));
+        assertFalse(series.isDecided());
+        assertFalse(series.accept(win(1, Team.A)));
+        assertTrue(series.accept(win(0, Team.A)));
+        assertNull(job.getFailure());
+        assertEquals(2, job.getResults().length);
+        assertEquals("a", job.getResults()[1].getWinnerName());
+    }
+
+    @Test
+    public void failureWaitsUntilTheEarlierMapsAreIn() {
+        assertFalse(series.accept(fail(2)));
+        assertFalse(series.accept(win(0, Team.A)));
+        assertFalse(series.isDecided());
+        // 1 - 1 after two maps, so the third map is needed and it failed
+        assertTrue(series.accept(win(1, Team.B)));
+        assertNull(job.getResults());
+        assertTrue(job.getFailure().contains("m3"));
+    }
+
+    @Test
+    public void laterResultsAfterTheDecisionAreIgnored() {
+        assertFalse(series.accept(win(0, Team.B)));
+        assertTrue(series.accept(win(1, Team.B)));
+        assertFalse(series.accept(fail(2)));
+        assertNull(job.getFailure());
+        assertEquals(2, job.getResults().length);
+    }
+}
@@ -0,0 +1,130 @@
+package battlecode.tournament;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class SpoolTest {
+
+    private File dir;
+
+    private Spool spool;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("spool", "");
+        dir.delete();
+        spool = new Spool(dir);
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children)
+                delete(child);
+        }
+        f.delete();
+    }
+
+    private File output(String name) throws IOException {
+        File f = spool.temp(name);
+        FileWriter out = new FileWriter(f);
+        try {
+            out.write(name);
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+
+    private boolean publish(String id) throws IOException {
+        return spool.publish(id, output(id + ".rms"), output(id + ".result"), output(id + ".log"), null);
+    }
+
+    @Test
+    public void publishesClaimedJob() throws IOException {
+        spool.submit("t-a-vs-b", new Properties());
+        assertNotNull(spool.claim("t-a-vs-b"));
+        assertTrue(publish("t-a-vs-b"));
+        assertTrue(spool.done("t-a-vs-b", ".result").exists());
+        assertTrue(spool.done("t-a-vs-b", ".rms").exists());
+        assertEquals(0, spool.requeueStale(-1));
+    }
+
+    @Test
+    public void withdrawnJobIsNotPublished() throws IOException {
+        spool.submit("t-a-vs-b", new Properties());
+        assertNotNull(spool.claim("t-a-vs-b"));
+        spool.withdraw("t-a-vs-b");
+        assertFalse(publish("t-a-vs-b"));
+        assertFalse(spool.done("t-a-vs-b", ".result").exists());
+        assertFalse(spool.done("t-a-vs-b", ".log").exists());
+    }
+
+    @Test
+    public void requeuedJobIsNotPublished() throws IOException {
+        spool.submit("t-a-vs-b", new Properties());
+        assertNotNull(spool.claim("t-a-vs-b"));
+        assertEquals(1, spool.requeueStale(-1));
+        assertFalse(publish("t-a-vs-b"));
+        assertFalse(spool.done("t-a-vs-b", ".result").exists());
+        assertEquals(Arrays.asList("t-a-vs-b"), Arrays.asList(spool.waiting()));
+    }
+
+    @Test
+    public void withdrawRemovesPublishedFiles() throws IOException {
+        spool.submit("t-a-vs-b", new Properties());
+        assertNotNull(spool.claim("t-a-vs-b"));
+        assertTrue(publish("t-a-vs-b"));
+        spool.withdraw("t-a-vs-b");
+        for (String suffix : new String[]{".rms", ".result", ".log"})
+            assertFalse(suffix, spool.done("t-a-vs-b", suffix).exists());
+    }
+
+    @Test
+    public void staleClaimIsToldByItsHeartbeatNotItsClock() throws Exception {
+        spool.submit("t-a-vs-b", new Properties());
+        assertNotNull(spool.claim("t-a-vs-b"));
+        File claimed = new File(new File(dir, "claimed"), "t-a-vs-b.job");
+        // a worker whose clock is an hour behind
+        long modified = System.currentTimeMillis() - 3600 * 1000;
+        assertTrue(claimed.setLastModified(modified));
+        assertEquals(0, spool.requeueStale(200));
+
+        // heartbeats keep the claim
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(100);
+            modified += 1000;
+            assertTrue(claimed.setLastModified(modified));
+            assertEquals(0, spool.requeueStale(200));
+        }
+
+        // and a claim that stops beating is put back
+        Thread.sleep(300);
+        assertEquals(1, spool.requeueStale(200));
+        assertEquals(Arrays.asList("t-a-vs-b"), Arrays.asList(spool.waiting()));
+    }
+
+    @Test
+    public void interruptedPublishIsRequeued() throws IOException {
+        spool.submit("t-a-vs-b", new Properties());
+        assertNotNull(spool.claim("t-a-vs-b"));
+        File claimed = new File(new File(dir, "claimed"), "t-a-vs-b.job");
+        Spool.rename(claimed, new File(claimed.getParentFile(), "t-a-vs-b.publishing"));
+        assertEquals(1, spool.requeueStale(-1));
+        assertEquals(Arrays.asList("t-a-vs-b"), Arrays.asList(spool.waiting()));
+    }
+}
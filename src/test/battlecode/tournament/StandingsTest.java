@@ -0,0 +1,75 @@
+package battlecode.tournament;
+
+import battlecode.common.Team;
+import battlecode.serial.MatchResult;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class StandingsTest {
+
+    private static final String[] TEAMS = {"a", "b", "c"};
+
+    private static MatchJob job(String teamA, String teamB) {
+        return new MatchJob(teamA + "-vs-" + teamB, teamA, teamB, new String[]{"m1", "m2", "m3"}, 3, new File("series"));
+    }
+
+    private static Series played(String teamA, String teamB, Team... winners) {
+        MatchJob job = job(teamA, teamB);
+        MatchResult[] results = new MatchResult[winners.length];
+        for (int i = 0; i < winners.length; i++)
+            results[i] = new MatchResult(teamA, teamB, "m" + (i + 1), winners[i], 100, null);
+        job.setResults(results);
+        return new Series(job);
+    }
+
+    private static Series forfeited(String teamA, String teamB) {
+        MatchJob job = job(teamA, teamB);
+        job.setFailure("crashed");
+        return new Series(job);
+    }
+
+    @Test
+    public void forfeitHasNoWinner() {
+        Series series = forfeited("a", "b");
+        assertTrue(series.isForfeit());
+        assertNull(series.getWinner());
+        assertNull(series.getLoser());
+    }
+
+    @Test
+    public void levelSeriesGoesToTeamA() {
+        Series series = played("a", "b", Team.A, Team.B);
+        assertEquals("a", series.getWinner());
+        assertEquals("b", series.getLoser());
+    }
+
+    @Test
+    public void onlyDecidingResultsFinishASeries() {
+        assertFalse(Series.decides(job("a", "b"), null));
+        assertFalse(Series.decides(job("a", "b"), played("a", "b").getJob().getResults()));
+        assertFalse(Series.decides(job("a", "b"), played("a", "b", Team.A).getJob().getResults()));
+        assertFalse(Series.decides(job("a", "b"), played("a", "b", Team.A, Team.B).getJob().getResults()));
+        assertTrue(Series.decides(job("a", "b"), played("a", "b", Team.B, Team.B).getJob().getResults()));
+        assertTrue(Series.decides(job("a", "b"), played("a", "b", Team.A, Team.B, Team.NEUTRAL).getJob().getResults()));
+    }
+
+    @Test
+    public void forfeitCountsForNeitherTeam() {
+        Standings standings = new Standings(TEAMS, new File("standings.txt"));
+        standings.add(forfeited("a", "c"), false);
+        standings.add(played("b", "c", Team.A, Team.A), false);
+        assertEquals(Arrays.asList("b", "a", "c"), standings.ranking());
+    }
+
+    @Test
+    public void forfeitEliminatesNobody() {
+        Standings standings = new Standings(TEAMS, new File("standings.txt"));
+        standings.add(forfeited("a", "b"), true);
+        standings.add(played("a", "c", Team.B, Team.B), true);
+        assertEquals(Arrays.asList("c", "b", "a"), standings.ranking());
+    }
+}
@@ -0,0 +1,228 @@
+package battlecode.world;
+
+import battlecode.common.GameConstants;
+import battlecode.common.MapLocation;
+import battlecode.common.Team;
+import battlecode.common.TerrainTile;
+import battlecode.world.XMLMapHandler.MineData;
+import battlecode.world.XMLMapHandler.NodeData;
+import battlecode.world.XMLMapHandler.RobotData;
+import battlecode.world.XMLMapHandler.SymbolData;
+import battlecode.world.XMLMapHandler.TerrainData;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes maps in binary form and reads them back, and checks that they
+ * describe the same squares, and create the same worlds, as the XML maps
+ * they were made from.
+ */
+public class BinaryMapTest {
+
+    private static final String ROBOT_SYMBOLS =
+            "<symbol team=\"A\" type=\"HQ\" character=\"A\"/>\n"
+                    + "<symbol team=\"B\" type=\"HQ\" character=\"B\"/>\n"
+                    + "<symbol team=\"A\" type=\"SOLDIER\" character=\"s\" mine=\"B\"/>\n"
+                    + "<symbol team=\"B\" type=\"ARTILLERY\" character=\"t\"/>\n";
+
+    private static final String SYMBOLS =
+            "<symbol terrain=\"LAND\" type=\"TERRAIN\" character=\".\"/>\n"
+                    + "<symbol terrain=\"VOID\" type=\"TERRAIN\" character=\"#\"/>\n"
+                    + "<symbol team=\"NEUTRAL\" type=\"MINE\" character=\"m\"/>\n"
+                    + "<symbol team=\"A\" type=\"MINE\" character=\"n\"/>\n"
+                    + "<symbol team=\"NEUTRAL\" type=\"ENCAMPMENT\" character=\"e\"/>\n"
+                    + "<symbol team=\"NEUTRAL\" type=\"ENCAMPMENT\" character=\"a\" mine=\"NEUTRAL\"/>\n";
+
+    private static String xml(int width, int height, String symbols, char[][] rows, String links) {
+        StringBuilder b = new StringBuilder();
+        b.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        b.append("<map height=\"").append(height).append("\" width=\"").append(width).append("\">\n");
+        b.append("<game seed=\"3\" rounds=\"2000\"/>\n");
+        b.append("<symbols>\n").append(symbols).append("</symbols>\n");
+        b.append("<data>\n<![CDATA[\n");
+        for (char[] row : rows)
+            b.append(row).append('\n');
+        b.append("]]>\n</data>\n");
+        if (links != null)
+            b.append("<nodelinks>\n").append(links).append("</nodelinks>\n");
+        b.append("</map>\n");
+        return b.toString();
+    }
+
+    private static char[][] fill(int width, int height, char c) {
+        char[][] rows = new char[height][width];
+        for (char[] row : rows)
+            Arrays.fill(row, c);
+        return rows;
+    }
+
+    private static XMLMapHandler parse(String xml) throws Exception {
+        return XMLMapHandler.parseMap("test.xml", new ByteArrayInputStream(xml.getBytes("UTF-8")));
+    }
+
+    private static XMLMapHandler roundTrip(XMLMapHandler handler) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryMap.write(handler, out);
+        return BinaryMap.read("test" + BinaryMap.EXTENSION, ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    private static String describe(SymbolData d) {
+        if (d instanceof TerrainData)
+            return "terrain " + ((TerrainData) d).tile;
+        if (d instanceof MineData)
+            return "mine " + ((MineData) d).team;
+        if (d instanceof RobotData)
+            return "robot " + d;
+        NodeData n = (NodeData) d;
+        return "node " + n.team + ":" + n.mine;
+    }
+
+    private static void assertSameSymbols(XMLMapHandler xml, XMLMapHandler binary) {
+        assertEquals(xml.mapWidth, binary.mapWidth);
+        assertEquals(xml.mapHeight, binary.mapHeight);
+        assertEquals(xml.mapProperties, binary.mapProperties);
+        for (int x = 0; x < xml.mapWidth; x++) {
+            for (int y = 0; y < xml.mapHeight; y++)
+                assertEquals("symbol at " + x + "," + y, describe(xml.map[x][y]), describe(binary.map[x][y]));
+        }
+    }
+
+    private static void assertSameLinks(XMLMapHandler xml, XMLMapHandler binary) {
+        assertEquals(xml.nodeLinks.size(), binary.nodeLinks.size());
+        for (int i = 0; i < xml.nodeLinks.size(); i++)
+            assertArrayEquals("link " + i, xml.nodeLinks.get(i), binary.nodeLinks.get(i));
+    }
+
+    private static GameWorld createGameWorld(XMLMapHandler handler) {
+        return handler.createGameWorld("a", "b", new long[2][GameConstants.TEAM_MEMORY_LENGTH]);
+    }
+
+    /**
+     * Compares the terrain, mines and encampments of a game on each map;
+     * the maps must not have robots, since those would load players.
+     */
+    private static void assertSameWorld(XMLMapHandler xml, XMLMapHandler binary) {
+        GameWorld fromXML = createGameWorld(xml);
+        GameWorld fromBinary = createGameWorld(binary);
+        GameMap xmlMap = fromXML.getGameMap(), binaryMap = fromBinary.getGameMap();
+        assertEquals(xmlMap.getMapOrigin(), binaryMap.getMapOrigin());
+        MapLocation origin = xmlMap.getMapOrigin();
+        for (int x = 0; x < xml.mapWidth; x++) {
+            for (int y = 0; y < xml.mapHeight; y++) {
+                MapLocation loc = new MapLocation(origin.x + x, origin.y + y);
+                assertEquals("terrain at " + loc, xmlMap.getTerrainTile(loc), binaryMap.getTerrainTile(loc));
+                assertEquals("mine at " + loc, fromXML.getMine(loc), fromBinary.getMine(loc));
+            }
+        }
+        assertEquals(fromXML.getEncampmentMap(), fromBinary.getEncampmentMap());
+        assertEquals(fromXML.getAllGameObjects().length, fromBinary.getAllGameObjects().length);
+    }
+
+    @Test
+    public void longRunsAndOneWayLinks() throws Exception {
+        int width = GameConstants.MAP_MAX_WIDTH, height = GameConstants.MAP_MAX_HEIGHT;
+        char[][] rows = fill(width, height, '.');
+        rows[0][0] = '#';
+        rows[1][1] = 'e';
+        rows[5][3] = 'e';
+        rows[2][5] = 'a';
+        rows[7][2] = 'm';
+        rows[8][2] = 'n';
+        rows[height - 1][4] = '#';
+        rows[30][40] = 'e';
+        String links = "<nodelink from=\"1,1\" to=\"3,5\"/>\n"
+                + "<nodelink from=\"3,5\" to=\"5,2\" oneway=\"true\"/>\n"
+                + "<nodelink from=\"5,2\" to=\"40,30\"/>\n";
+        XMLMapHandler xml = parse(xml(width, height, SYMBOLS, rows, links));
+        XMLMapHandler binary = roundTrip(xml);
+
+        assertSameSymbols(xml, binary);
+        assertSameLinks(xml, binary);
+        assertEquals(2, binary.nodeLinks.get(0).length);
+        assertEquals(3, binary.nodeLinks.get(1).length);
+        assertSameWorld(xml, binary);
+    }
+
+    /**
+     * No map file may be big enough for a run of more than 0xffff squares,
+     * so the map is made without one.
+     */
+    @Test
+    public void runsLongerThanAShort() throws Exception {
+        XMLMapHandler handler = new XMLMapHandler();
+        int width = handler.mapWidth = 300;
+        int height = handler.mapHeight = 250;
+        handler.mapProperties.put(GameMap.MapProperties.WIDTH, width);
+        handler.mapProperties.put(GameMap.MapProperties.HEIGHT, height);
+        handler.mapProperties.put(GameMap.MapProperties.SEED, 3);
+        handler.map = new SymbolData[width][height];
+        SymbolData land = new TerrainData(TerrainTile.LAND);
+        for (SymbolData[] column : handler.map)
+            Arrays.fill(column, land);
+        handler.map[0][0] = new TerrainData(TerrainTile.VOID);
+        handler.map[2][7] = new MineData(Team.NEUTRAL);
+        handler.map[width - 1][height - 1] = new NodeData(Team.NEUTRAL, null);
+        assertTrue((width - 3) * height > 0xffff);
+
+        XMLMapHandler binary = roundTrip(handler);
+        assertSameSymbols(handler, binary);
+        assertSameWorld(handler, binary);
+    }
+
+    @Test
+    public void wideSymbolTable() throws Exception {
+        // every character is a symbol of its own, even where it means the
+        // same as another, so there are more than 256 of them
+        int symbols = 300;
+        StringBuilder table = new StringBuilder();
+        for (int i = 0; i < symbols; i++) {
+            char c = (char) (0x100 + i);
+            switch (i % 5) {
+                case 0:
+                case 1:
+                    table.append("<symbol terrain=\"LAND\" type=\"TERRAIN\" character=\"").append(c).append("\"/>\n");
+                    break;
+                case 2:
+                    table.append("<symbol terrain=\"VOID\" type=\"TERRAIN\" character=\"").append(c).append("\"/>\n");
+                    break;
+                case 3:
+                    table.append("<symbol team=\"").append(i % 2 == 0 ? "NEUTRAL" : "B").append("\" type=\"MINE\" character=\"").append(c).append("\"/>\n");
+                    break;
+                default:
+                    table.append("<symbol team=\"NEUTRAL\" type=\"ENCAMPMENT\" character=\"").append(c).append("\"/>\n");
+            }
+        }
+        int width = 30, height = 25;
+        char[][] rows = new char[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++)
+                rows[y][x] = (char) (0x100 + (x * 7 + y * 3) % symbols);
+        }
+        XMLMapHandler xml = parse(xml(width, height, table.toString(), rows, null));
+        XMLMapHandler binary = roundTrip(xml);
+
+        assertSameSymbols(xml, binary);
+        assertSameWorld(xml, binary);
+        assertEquals(0, binary.nodeLinks.size());
+    }
+
+    @Test
+    public void robotSymbols() throws Exception {
+        int width = 20, height = 20;
+        char[][] rows = fill(width, height, '.');
+        rows[1][1] = 'A';
+        rows[6][10] = 'B';
+        rows[3][4] = 's';
+        rows[4][4] = 's';
+        rows[3][7] = 't';
+        rows[2][2] = 'e';
+        XMLMapHandler xml = parse(xml(width, height, SYMBOLS + ROBOT_SYMBOLS, rows, null));
+        assertSameSymbols(xml, roundTrip(xml));
+    }
+}
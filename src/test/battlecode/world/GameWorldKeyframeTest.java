@@ -0,0 +1,63 @@
+package battlecode.world;
+
+import battlecode.common.*;
+import battlecode.serial.RoundKeyframe;
+import battlecode.world.signal.ControlBitsSignal;
+import battlecode.world.signal.IndicatorStringSignal;
+import battlecode.world.signal.MineSignal;
+import battlecode.world.signal.SetDirectionSignal;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a keyframe holds everything about a robot that the signals of
+ * a round can change. Robots are created directly, so no players are run.
+ */
+public class GameWorldKeyframeTest {
+
+    private static GameWorld world() {
+        Map<GameMap.MapProperties, Integer> properties = new HashMap<GameMap.MapProperties, Integer>();
+        properties.put(GameMap.MapProperties.WIDTH, 10);
+        properties.put(GameMap.MapProperties.HEIGHT, 10);
+        TerrainTile[][] tiles = new TerrainTile[10][10];
+        for (TerrainTile[] column : tiles)
+            Arrays.fill(column, TerrainTile.LAND);
+        return new GameWorld(new GameMap(properties, tiles), "a", "b", new long[2][GameConstants.TEAM_MEMORY_LENGTH]);
+    }
+
+    @Test
+    public void keyframeHoldsRobotState() {
+        GameWorld world = world();
+        InternalRobot turned = new InternalRobot(world, RobotType.SOLDIER, new MapLocation(3, 4), Team.A, false);
+        InternalRobot idle = new InternalRobot(world, RobotType.HQ, new MapLocation(7, 7), Team.B, false);
+        world.visitSignal(new SetDirectionSignal(turned.getID(), Direction.EAST));
+        world.visitSignal(new ControlBitsSignal(turned.getID(), 42));
+        world.visitSignal(new IndicatorStringSignal(turned.getID(), 1, "hello"));
+        world.visitSignal(new MineSignal(new MapLocation(5, 5), Team.NEUTRAL, MineSignal.ADD));
+
+        RoundKeyframe keyframe = world.getKeyframe();
+        assertEquals(2, keyframe.getRobotCount());
+        for (int i = 0; i < keyframe.getRobotCount(); i++) {
+            if (keyframe.getRobotID(i) == turned.getID()) {
+                assertEquals(RobotType.SOLDIER, keyframe.getRobotType(i));
+                assertEquals(Team.A, keyframe.getRobotTeam(i));
+                assertEquals(new MapLocation(3, 4), keyframe.getRobotLocation(i));
+                assertEquals(Direction.EAST, keyframe.getDirection(i));
+                assertEquals(42, keyframe.getControlBits(i));
+                assertEquals(Arrays.asList(null, "hello", null), Arrays.asList(keyframe.getIndicatorStrings(i)));
+            } else {
+                assertEquals(idle.getID(), keyframe.getRobotID(i));
+                assertNull(keyframe.getDirection(i));
+                assertEquals(0, keyframe.getControlBits(i));
+                assertEquals(Arrays.asList(null, null, null), Arrays.asList(keyframe.getIndicatorStrings(i)));
+            }
+        }
+        assertEquals(1, keyframe.getMineCount());
+        assertEquals(new MapLocation(5, 5), keyframe.getMineLocation(0));
+    }
+}
@@ -0,0 +1,106 @@
+package battlecode.world;
+
+import battlecode.common.MapLocation;
+import battlecode.common.RobotType;
+import battlecode.common.TerrainTile;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the bitset map memory, stamped a row at a time, with a plain
+ * boolean[][] of the locations each robot has seen, and with remembering the
+ * same locations one offset at a time.
+ */
+public class MapMemoryTest {
+
+    private static final int WIDTH = 61, HEIGHT = 43;
+
+    /**
+     * How far outside the map the reference grid reaches; more than any
+     * robot can see.
+     */
+    private static final int MARGIN = 100;
+
+    private GameMap map;
+
+    private Map<RobotType, int[][][]> offsets;
+
+    private Map<RobotType, GameMap.VisionStamp[]> stamps;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(5);
+        TerrainTile[][] tiles = new TerrainTile[WIDTH][HEIGHT];
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++)
+                tiles[x][y] = random.nextInt(4) == 0 ? TerrainTile.VOID : TerrainTile.LAND;
+        }
+        Map<GameMap.MapProperties, Integer> properties = new HashMap<GameMap.MapProperties, Integer>();
+        properties.put(GameMap.MapProperties.WIDTH, WIDTH);
+        properties.put(GameMap.MapProperties.HEIGHT, HEIGHT);
+        map = new GameMap(properties, tiles);
+        offsets = GameMap.computeVisibleOffsets();
+        stamps = GameMap.computeVisionStamps();
+    }
+
+    @Test
+    public void stampsMatchBooleanGrid() {
+        GameMap.MapMemory stamped = new GameMap.MapMemory(map);
+        GameMap.MapMemory offset = new GameMap.MapMemory(map);
+        boolean[][] seen = new boolean[WIDTH + 2 * MARGIN][HEIGHT + 2 * MARGIN];
+
+        Random random = new Random(7);
+        RobotType[] types = RobotType.values();
+        for (int k = 0; k < 300; k++) {
+            RobotType type = types[random.nextInt(types.length)];
+            int direction = random.nextInt(8);
+            MapLocation loc = new MapLocation(random.nextInt(WIDTH), random.nextInt(HEIGHT));
+            int[][] visible = offsets.get(type)[direction];
+            stamped.rememberLocations(loc, stamps.get(type)[direction]);
+            offset.rememberLocations(loc, visible[0], visible[1]);
+            for (int i = 0; i < visible[0].length; i++)
+                seen[loc.x + visible[0][i] + MARGIN][loc.y + visible[1][i] + MARGIN] = true;
+        }
+
+        int remembered = 0;
+        for (int x = -MARGIN; x < WIDTH + MARGIN; x++) {
+            for (int y = -MARGIN; y < HEIGHT + MARGIN; y++) {
+                MapLocation loc = new MapLocation(x, y);
+                TerrainTile expected = seen[x + MARGIN][y + MARGIN] ? map.getTerrainTile(loc) : null;
+                assertEquals("stamped memory of " + loc, expected, stamped.recallTerrain(loc));
+                assertEquals("offset memory of " + loc, expected, offset.recallTerrain(loc));
+                if (expected != null)
+                    remembered++;
+            }
+        }
+        // enough robots that most of the map, and some of the edge, is seen
+        assertTrue(remembered > WIDTH * HEIGHT / 2);
+    }
+
+    @Test
+    public void eachStampMatchesItsOffsets() {
+        for (RobotType type : RobotType.values()) {
+            for (int direction = 0; direction < 8; direction++) {
+                GameMap.MapMemory stamped = new GameMap.MapMemory(map);
+                GameMap.MapMemory offset = new GameMap.MapMemory(map);
+                MapLocation corner = new MapLocation(0, HEIGHT - 1);
+                int[][] visible = offsets.get(type)[direction];
+                stamped.rememberLocations(corner, stamps.get(type)[direction]);
+                offset.rememberLocations(corner, visible[0], visible[1]);
+                for (int x = -MARGIN; x < WIDTH + MARGIN; x++) {
+                    for (int y = -MARGIN; y < HEIGHT + MARGIN; y++) {
+                        MapLocation loc = new MapLocation(x, y);
+                        assertEquals(type + " facing " + direction + " at " + loc,
+                                offset.recallTerrain(loc), stamped.recallTerrain(loc));
+                    }
+                }
+            }
+        }
+    }
+}